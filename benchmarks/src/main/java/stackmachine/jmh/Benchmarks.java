@@ -0,0 +1,94 @@
+package stackmachine.jmh;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks with the GC profiler, so that every result comes with
+// its allocation rate, and then prints the scaling curves: for each benchmark
+// and synthetic input size, the operations per second, the size units (blocks,
+// terms or variables) per second and the bytes allocated per unit. A linear
+// benchmark keeps the units per second and the bytes per unit flat.
+//
+// Takes the options of the JMH command line, for instance
+// java -jar benchmarks/target/benchmarks.jar Frontend -rf csv -rff frontend.csv
+// The options that list or explain instead of running, -h, -l, -lp, -lprof
+// and -lrf, are left to the JMH main.
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        printScaling(results);
+    }
+
+    private static void printScaling(Collection<RunResult> results) {
+        List<RunResult> synthetic = new ArrayList<RunResult>();
+
+        for (RunResult result : results)
+            if (Inputs.size(result.getParams().getParam("input")) > 0)
+                synthetic.add(result);
+
+        if (synthetic.isEmpty())
+            return;
+
+        synthetic.sort(Comparator
+                .comparing((RunResult result) -> result.getParams().getBenchmark())
+                .thenComparing(result -> result.getParams().getParam("input"), Comparator
+                        .comparing((String input) -> input.substring(0, input.lastIndexOf('_')))
+                        .thenComparingInt(Inputs::size)));
+
+        System.out.println();
+        System.out.println("Scaling");
+        System.out.println();
+        System.out.printf("%-42s %-18s %14s %14s %12s%n", "benchmark", "input", "ops/s", "units/s", "B/unit");
+
+        for (RunResult result : synthetic) {
+            BenchmarkParams params = result.getParams();
+            // class and method, without the package
+            String benchmark = params.getBenchmark().substring(Benchmarks.class.getPackage().getName().length() + 1);
+            int size = Inputs.size(params.getParam("input"));
+            double score = result.getPrimaryResult().getScore();
+            double allocated = allocatedPerOperation(result.getSecondaryResults());
+
+            System.out.printf("%-42s %-18s %14.1f %14.1f %12s%n",
+                    benchmark, params.getParam("input"), score, score * size,
+                    Double.isNaN(allocated) ? "-" : String.format("%.1f", allocated / size));
+        }
+    }
+
+    // bytes allocated per operation, as measured by the GC profiler, whose key
+    // is "gc.alloc.rate.norm" with or without a leading dot depending on the version
+    private static double allocatedPerOperation(Map<String, Result> secondary) {
+        for (Map.Entry<String, Result> entry : secondary.entrySet())
+            if (entry.getKey().endsWith("gc.alloc.rate.norm"))
+                return entry.getValue().getScore();
+
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,61 @@
+package stackmachine.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.frontend.SyntaxAnalyzer;
+
+// Compiles a program with stackmachine.frontend.SyntaxAnalyzer, lexical
+// analysis included, and renders the intermediate code and the symbol table
+// of a compiled program. The recursive descent parser recurses once per
+// statement, hence the stack of the forked JVM.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class FrontendBenchmarks {
+
+    @Param({ "program_1", "program_2", "program_3", "program_4", "program_5", "program_6",
+             "blocks_10", "blocks_100", "blocks_1000", "blocks_10000" })
+    public String input;
+
+    private String program;
+    private SyntaxAnalyzer compiled;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.program = Inputs.read(this.input);
+        this.compiled = new SyntaxAnalyzer(new LexicalAnalyzer(this.program));
+        this.compiled.compile();
+    }
+
+    @Benchmark
+    public boolean compile() {
+        return new SyntaxAnalyzer(new LexicalAnalyzer(this.program)).compile();
+    }
+
+    @Benchmark
+    public String intermediateCode() {
+        return this.compiled.intermediateCode();
+    }
+
+    @Benchmark
+    public String symbolTable() {
+        return this.compiled.symbolTable();
+    }
+}
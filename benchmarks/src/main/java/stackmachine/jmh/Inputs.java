@@ -0,0 +1,43 @@
+package stackmachine.jmh;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import stackmachine.bench.SyntheticPrograms;
+
+// Inputs of the benchmarks, named by their @Param value: program_N is the
+// sample src/program_N.txt and the synthetic inputs are a generator and a size,
+// blocks_N, expression_N or declarations_N. The samples are read from the
+// working directory, which must be the root of the repository, the lexical
+// analyzer reads lexicon.txt from there as well.
+final class Inputs {
+
+    private Inputs() {
+    }
+
+    static String read(String input) throws IOException {
+        if (input.startsWith("program_"))
+            return new String(Files.readAllBytes(Paths.get("src", input + ".txt")), StandardCharsets.UTF_8);
+
+        int size = size(input);
+
+        if (input.startsWith("blocks_"))
+            return SyntheticPrograms.repeatedBlocks(size);
+        else if (input.startsWith("expression_"))
+            return SyntheticPrograms.expression(size);
+        else if (input.startsWith("declarations_"))
+            return SyntheticPrograms.declarations(size);
+
+        throw new IllegalArgumentException("unknown input: " + input);
+    }
+
+    // size of a synthetic input, 0 for the samples
+    static int size(String input) {
+        if (input.startsWith("program_"))
+            return 0;
+
+        return Integer.parseInt(input.substring(input.lastIndexOf('_') + 1));
+    }
+}
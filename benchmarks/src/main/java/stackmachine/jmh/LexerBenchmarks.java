@@ -0,0 +1,64 @@
+package stackmachine.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.frontend.MappedLexicalAnalyzer;
+import stackmachine.frontend.TokenKind;
+
+// Reads every token of a program with slu.compiler.LexicalAnalyzer.getToken(),
+// and with the cursor of MappedLexicalAnalyzer for comparison.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class LexerBenchmarks {
+
+    @Param({ "program_1", "program_2", "program_3", "program_4", "program_5", "program_6",
+             "blocks_10", "blocks_100", "blocks_1000", "blocks_10000" })
+    public String input;
+
+    private String program;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.program = Inputs.read(this.input);
+    }
+
+    @Benchmark
+    public int getToken() {
+        LexicalAnalyzer lex = new LexicalAnalyzer(this.program);
+        int tokens = 0;
+
+        while (!lex.getToken().getName().equals("end_program"))
+            tokens++;
+
+        return tokens;
+    }
+
+    @Benchmark
+    public int mappedCursor() {
+        MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(this.program);
+        int tokens = 0;
+
+        while (lex.next() != TokenKind.END_PROGRAM)
+            tokens++;
+
+        return tokens;
+    }
+}
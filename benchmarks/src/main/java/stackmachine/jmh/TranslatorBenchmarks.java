@@ -0,0 +1,50 @@
+package stackmachine.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import slu.compiler.LexicalAnalyzer;
+import translator.PostfixTranslator;
+
+// Translates an arithmetic expression to postfix with
+// translator.PostfixTranslator and evaluates it. The translator reads
+// expressions, not programs, so its inputs are synthetic expressions only.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class TranslatorBenchmarks {
+
+    @Param({ "expression_10", "expression_100", "expression_1000", "expression_10000" })
+    public String input;
+
+    private String expression;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.expression = Inputs.read(this.input);
+    }
+
+    @Benchmark
+    public void translateAndEvaluate(Blackhole blackhole) {
+        PostfixTranslator postfix = new PostfixTranslator(new LexicalAnalyzer(this.expression));
+
+        blackhole.consume(postfix.translate());
+        blackhole.consume(postfix.evaluate());
+    }
+}
@@ -0,0 +1,50 @@
+package stackmachine.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import slu.compiler.LexicalAnalyzer;
+import variables.SyntaxAnalyzer;
+
+// Compiles the declarations of a program with variables.SyntaxAnalyzer and
+// renders its symbol table. That parser reads declarations only, so its
+// inputs are synthetic programs of declarations.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class VariablesBenchmarks {
+
+    @Param({ "declarations_10", "declarations_100", "declarations_1000", "declarations_10000" })
+    public String input;
+
+    private String program;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.program = Inputs.read(this.input);
+    }
+
+    @Benchmark
+    public String compile() {
+        SyntaxAnalyzer parser = new SyntaxAnalyzer(new LexicalAnalyzer(this.program));
+
+        parser.compile();
+
+        return parser.symbolTable();
+    }
+}
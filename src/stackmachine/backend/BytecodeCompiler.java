@@ -0,0 +1,602 @@
+package stackmachine.backend;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.OperandStack;
+import stackmachine.ir.Program;
+
+// Compiles intermediate code to JVM bytecode and loads it as a hidden class,
+// see CompiledProgram. The stack machine maps almost one to one onto the JVM:
+//
+//      push c, fpush c     iconst, bipush, sipush, fconst or ldc
+//      rvalue x            iload or fload
+//      lvalue x  ... =     istore or fstore
+//      + - * / %           iadd ... irem, f+ ... f% fadd ... frem
+//      < ... !=            if_icmp<not op>, f< ... f!= fcmp<l|g> if<not op>, when a gofalse follows
+//      i2f, i2f 1, f2i     i2f, swap i2f swap, f2i
+//      gofalse L           ifeq
+//      goto L, halt        goto, return
+//      print x, fprint x   PrintStream.println(int) or println(float)
+//
+// The code is typed, so each variable is one local of the type the program
+// gives it. The stack map frames still need the types of the values on the
+// stack at each label, so the code is analyzed first, like the verifier does,
+// following them along every path. Programs where the stack does not have the
+// same types on every path into a label, or where an instruction gets values
+// of another type than its own, are not supported and compile throws
+// UnsupportedProgramException, the interpreter runs them instead. So do
+// programs too large for a single method. Invalid programs, where the stack
+// underflows or an instruction gets an address instead of a value, throw
+// IllegalArgumentException.
+public class BytecodeCompiler {
+
+    // types of values, also the verification types of the stack map frames
+    private static final int INT = 1;
+    private static final int FLOAT = 2;
+
+    private static final String CLASS_NAME = "stackmachine/backend/CompiledCode";
+    private static final String PRINT_STREAM = "java/io/PrintStream";
+    private static final String THIS_CLASS = "stackmachine/backend/BytecodeCompiler";
+
+    // JVM opcodes
+    private static final int ICONST_0 = 3;
+    private static final int FCONST_0 = 11;
+    private static final int BIPUSH = 16;
+    private static final int SIPUSH = 17;
+    private static final int LDC = 18;
+    private static final int LDC_W = 19;
+    private static final int ILOAD = 21;
+    private static final int FLOAD = 23;
+    private static final int ALOAD_0 = 42;
+    private static final int ISTORE = 54;
+    private static final int FSTORE = 56;
+    private static final int SWAP = 95;
+    private static final int IADD = 96;
+    private static final int I2F = 134;
+    private static final int F2I = 139;
+    private static final int FCMPL = 149;
+    private static final int FCMPG = 150;
+    private static final int IFEQ = 153;
+    private static final int IFNE = 154;
+    private static final int IFLT = 155;
+    private static final int IFGE = 156;
+    private static final int IFGT = 157;
+    private static final int IFLE = 158;
+    private static final int IF_ICMPEQ = 159;
+    private static final int IF_ICMPNE = 160;
+    private static final int IF_ICMPLT = 161;
+    private static final int IF_ICMPGE = 162;
+    private static final int IF_ICMPGT = 163;
+    private static final int IF_ICMPLE = 164;
+    private static final int GOTO = 167;
+    private static final int RETURN = 177;
+    private static final int INVOKEVIRTUAL = 182;
+    private static final int INVOKESTATIC = 184;
+    private static final int WIDE = 196;
+
+    private Program program;
+    private int size;
+    private State[] states;
+
+    private ClassWriter writer;
+    private ClassWriter.Bytes code;
+    private ClassWriter.Bytes frames;
+    private int frameCount;
+    private int lastFrame;
+
+    // bytecode offset of each instruction, and the jumps to fix up once they are all known
+    private int[] offsets;
+    private int[] jumps;
+    private int[] jumpTargets;
+    private int jumpCount;
+
+    public CompiledProgram compile(Program program) {
+        byte[] classFile = toClassFile(program);
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(void.class, PrintStream.class));
+
+            return new CompiledProgram(lookup.lookupClass(), run);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // class file with a public static void run(PrintStream) method that executes the program
+    public byte[] toClassFile(Program program) {
+        this.program = program;
+        this.size = program.size();
+        this.states = analyze();
+
+        this.writer = new ClassWriter(CLASS_NAME);
+        this.code = new ClassWriter.Bytes();
+        this.frames = new ClassWriter.Bytes();
+        this.frameCount = 0;
+        this.lastFrame = -1;
+        this.offsets = new int[this.size + 1];
+        this.jumps = new int[16];
+        this.jumpTargets = new int[16];
+        this.jumpCount = 0;
+
+        generate();
+
+        if (this.code.size() > 0xFFFF)
+            throw new UnsupportedProgramException("program too large for a single method");
+
+        for (int i = 0; i < this.jumpCount; i++) {
+            int offset = this.offsets[this.jumpTargets[i]] - this.jumps[i];
+
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                throw new UnsupportedProgramException("jump too far");
+
+            this.code.setU2(this.jumps[i] + 1, offset);
+        }
+
+        this.writer.method(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, "run", "(Ljava/io/PrintStream;)V",
+                maxStack(), 1 + program.getVariables().length, this.code, this.frameCount > 0 ? this.frames : null, this.frameCount);
+
+        return this.writer.toByteArray();
+    }
+
+    // called by the compiled code for relational operators whose result is a value
+
+    static int compare(int x, int y, int opcode) {
+        return OperandStack.compare(opcode, x, y) ? 1 : 0;
+    }
+
+    static int compare(float x, float y, int opcode) {
+        return OperandStack.compare(opcode, x, y) ? 1 : 0;
+    }
+
+    // analysis
+
+    private State[] analyze() {
+        State[] states = new State[this.size + 1];
+
+        int[] worklist = new int[this.size + 1];
+        boolean[] queued = new boolean[this.size + 1];
+        int count = 0;
+
+        states[0] = new State(new int[0]);
+        worklist[count++] = 0;
+        queued[0] = true;
+
+        while (count > 0) {
+            int i = worklist[--count];
+            queued[i] = false;
+
+            if (i == this.size)
+                continue;
+
+            State state = states[i].copy();
+            int opcode = this.program.opcode(i);
+            int operand = this.program.operand(i);
+            int next = i + 1;
+
+            switch (opcode) {
+                case Opcode.PUSH:
+                    state.push(INT);
+                    break;
+
+                case Opcode.FLOAT_PUSH:
+                    state.push(FLOAT);
+                    break;
+
+                case Opcode.RVALUE:
+                    state.push(variableType(operand));
+                    break;
+
+                case Opcode.LVALUE:
+                    state.push(-operand - 1);
+                    break;
+
+                case Opcode.ASSIGN: {
+                    int value = state.pop(i);
+                    int variable = state.pop(i);
+
+                    if (value < 0 || variable >= 0)
+                        throw invalid("assignment to a value that is not a variable", i);
+
+                    expect(value, variableType(-variable - 1), i);
+                    break;
+                }
+
+                case Opcode.PRINT:
+                    expect(variableType(operand), INT, i);
+                    break;
+
+                case Opcode.FLOAT_PRINT:
+                    expect(variableType(operand), FLOAT, i);
+                    break;
+
+                case Opcode.INT_TO_FLOAT: {
+                    int slot = state.stack.length - 1 - operand;
+
+                    if (slot < 0)
+                        throw invalid("stack underflow", i);
+
+                    expect(state.stack[slot], INT, i);
+                    state.stack[slot] = FLOAT;
+                    break;
+                }
+
+                case Opcode.FLOAT_TO_INT:
+                    expect(state.pop(i), FLOAT, i);
+                    state.push(INT);
+                    break;
+
+                case Opcode.GOFALSE:
+                    expect(state.pop(i), INT, i);
+                    count = flow(states, worklist, queued, count, operand, state, i);
+                    break;
+
+                case Opcode.GOTO:
+                    count = flow(states, worklist, queued, count, operand, state, i);
+                    next = -1;
+                    break;
+
+                case Opcode.HALT:
+                    next = -1;
+                    break;
+
+                case Opcode.LABEL:
+                    break;
+
+                default: {
+                    int type = Opcode.isFloat(opcode) ? FLOAT : INT;
+
+                    expect(state.pop(i), type, i);
+                    expect(state.pop(i), type, i);
+                    state.push(Opcode.isArithmetic(opcode) ? type : INT);
+                }
+            }
+
+            if (next >= 0)
+                count = flow(states, worklist, queued, count, next, state, i);
+        }
+
+        return states;
+    }
+
+    private int variableType(int variable) {
+        return this.program.isRealVariable(variable) ? FLOAT : INT;
+    }
+
+    private void expect(int type, int expected, int instruction) {
+        if (type < 0)
+            throw invalid("operand is not a value", instruction);
+        if (type != expected)
+            throw unsupported("operand of the wrong type", instruction);
+    }
+
+    // merges a state into the state of a successor, returns the new worklist count
+    private int flow(State[] states, int[] worklist, boolean[] queued, int count, int target, State state, int from) {
+        if (states[target] != null) {
+            if (!Arrays.equals(states[target].stack, state.stack))
+                throw unsupported("the stack differs on the paths into instruction " + target, from);
+
+            return count;
+        }
+
+        states[target] = state.copy();
+
+        if (!queued[target]) {
+            queued[target] = true;
+            worklist[count++] = target;
+        }
+
+        return count;
+    }
+
+    private UnsupportedProgramException unsupported(String message, int instruction) {
+        return new UnsupportedProgramException(message + " at instruction " + instruction + ", "
+                + Opcode.mnemonic(this.program.opcode(instruction)));
+    }
+
+    private IllegalArgumentException invalid(String message, int instruction) {
+        return new IllegalArgumentException(message + " at instruction " + instruction + ", "
+                + Opcode.mnemonic(this.program.opcode(instruction)));
+    }
+
+    // code generation
+
+    private void generate() {
+        int variables = this.program.getVariables().length;
+
+        // every local always holds a value of its type, so all the frames have the same locals
+        for (int v = 0; v < variables; v++) {
+            if (this.program.isRealVariable(v)) {
+                this.code.u1(FCONST_0);
+                local(FSTORE, local(v));
+            }
+            else {
+                this.code.u1(ICONST_0);
+                local(ISTORE, local(v));
+            }
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            this.offsets[i] = this.code.size();
+
+            State state = this.states[i];
+
+            if (state == null)
+                continue;
+
+            int opcode = this.program.opcode(i);
+            int operand = this.program.operand(i);
+
+            switch (opcode) {
+                case Opcode.PUSH:
+                    push(this.program.integerConstant(operand), false);
+                    break;
+
+                case Opcode.FLOAT_PUSH:
+                    push(this.program.getConstants()[operand], true);
+                    break;
+
+                case Opcode.RVALUE:
+                    local(this.program.isRealVariable(operand) ? FLOAD : ILOAD, local(operand));
+                    break;
+
+                case Opcode.LVALUE:
+                    break;
+
+                case Opcode.LABEL:
+                    frame(state);
+                    break;
+
+                case Opcode.ASSIGN: {
+                    int variable = -state.stack[state.stack.length - 2] - 1;
+
+                    local(this.program.isRealVariable(variable) ? FSTORE : ISTORE, local(variable));
+                    break;
+                }
+
+                case Opcode.PRINT:
+                    this.code.u1(ALOAD_0);
+                    local(ILOAD, local(operand));
+                    invoke(INVOKEVIRTUAL, PRINT_STREAM, "println", "(I)V");
+                    break;
+
+                case Opcode.FLOAT_PRINT:
+                    this.code.u1(ALOAD_0);
+                    local(FLOAD, local(operand));
+                    invoke(INVOKEVIRTUAL, PRINT_STREAM, "println", "(F)V");
+                    break;
+
+                case Opcode.INT_TO_FLOAT:
+                    if (operand == 0) {
+                        this.code.u1(I2F);
+                    }
+                    else {
+                        this.code.u1(SWAP);
+                        this.code.u1(I2F);
+                        this.code.u1(SWAP);
+                    }
+                    break;
+
+                case Opcode.FLOAT_TO_INT:
+                    this.code.u1(F2I);
+                    break;
+
+                case Opcode.GOFALSE:
+                    jump(IFEQ, operand);
+                    break;
+
+                case Opcode.GOTO:
+                    jump(GOTO, operand);
+                    break;
+
+                case Opcode.HALT:
+                    this.code.u1(RETURN);
+                    break;
+
+                default: {
+                    int type = Opcode.isFloat(opcode) ? FLOAT : INT;
+                    int operator = Opcode.intVersion(opcode);
+
+                    if (Opcode.isArithmetic(opcode)) {
+                        // iadd, ladd, fadd, dadd, isub ... follow the order of the opcodes
+                        this.code.u1(IADD + 4 * (operator - Opcode.ADD) + (type == FLOAT ? 2 : 0));
+                    }
+                    else if (i + 1 < this.size && this.program.opcode(i + 1) == Opcode.GOFALSE) {
+                        // jump when the comparison is false
+                        i++;
+                        this.offsets[i] = this.code.size();
+                        compareAndJump(operator, type, this.program.operand(i));
+                    }
+                    else {
+                        push(operator, false);
+                        invoke(INVOKESTATIC, THIS_CLASS, "compare", type == INT ? "(III)I" : "(FFI)I");
+                    }
+                }
+            }
+        }
+
+        this.offsets[this.size] = this.code.size();
+
+        // running off the end halts
+        if (this.states[this.size] != null)
+            this.code.u1(RETURN);
+    }
+
+    private void compareAndJump(int opcode, int type, int target) {
+        if (type == INT) {
+            switch (opcode) {
+                case Opcode.LESS_THAN:      jump(IF_ICMPGE, target); break;
+                case Opcode.LESS_EQUALS:    jump(IF_ICMPGT, target); break;
+                case Opcode.GREATER_THAN:   jump(IF_ICMPLE, target); break;
+                case Opcode.GREATER_EQUALS: jump(IF_ICMPLT, target); break;
+                case Opcode.EQUALS:         jump(IF_ICMPNE, target); break;
+                default:                    jump(IF_ICMPEQ, target); break;
+            }
+        }
+        else {
+            // fcmpg gives 1 and fcmpl -1 for NaN, chosen so that NaN jumps like a false comparison
+            switch (opcode) {
+                case Opcode.LESS_THAN:      this.code.u1(FCMPG); jump(IFGE, target); break;
+                case Opcode.LESS_EQUALS:    this.code.u1(FCMPG); jump(IFGT, target); break;
+                case Opcode.GREATER_THAN:   this.code.u1(FCMPL); jump(IFLE, target); break;
+                case Opcode.GREATER_EQUALS: this.code.u1(FCMPL); jump(IFLT, target); break;
+                case Opcode.EQUALS:         this.code.u1(FCMPL); jump(IFNE, target); break;
+                default:                    this.code.u1(FCMPL); jump(IFEQ, target); break;
+            }
+        }
+    }
+
+    private void push(int bits, boolean real) {
+        if (real) {
+            if (bits == Float.floatToRawIntBits(0f) || bits == Float.floatToRawIntBits(1f)
+                    || bits == Float.floatToRawIntBits(2f))
+                this.code.u1(FCONST_0 + (int) Float.intBitsToFloat(bits));
+            else
+                ldc(this.writer.floatConstant(bits));
+        }
+        else if (bits >= -1 && bits <= 5) {
+            this.code.u1(ICONST_0 + bits);
+        }
+        else if (bits >= Byte.MIN_VALUE && bits <= Byte.MAX_VALUE) {
+            this.code.u1(BIPUSH);
+            this.code.u1(bits);
+        }
+        else if (bits >= Short.MIN_VALUE && bits <= Short.MAX_VALUE) {
+            this.code.u1(SIPUSH);
+            this.code.u2(bits);
+        }
+        else {
+            ldc(this.writer.integerConstant(bits));
+        }
+    }
+
+    private void ldc(int constant) {
+        if (constant <= 0xFF) {
+            this.code.u1(LDC);
+            this.code.u1(constant);
+        }
+        else {
+            this.code.u1(LDC_W);
+            this.code.u2(constant);
+        }
+    }
+
+    private void local(int opcode, int local) {
+        if (local <= 0xFF) {
+            this.code.u1(opcode);
+            this.code.u1(local);
+        }
+        else {
+            this.code.u1(WIDE);
+            this.code.u1(opcode);
+            this.code.u2(local);
+        }
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor) {
+        this.code.u1(opcode);
+        this.code.u2(this.writer.methodConstant(owner, name, descriptor));
+    }
+
+    private void jump(int opcode, int target) {
+        if (this.jumpCount == this.jumps.length) {
+            this.jumps = Arrays.copyOf(this.jumps, 2 * this.jumpCount);
+            this.jumpTargets = Arrays.copyOf(this.jumpTargets, 2 * this.jumpCount);
+        }
+
+        this.jumps[this.jumpCount] = this.code.size();
+        this.jumpTargets[this.jumpCount] = target;
+        this.jumpCount++;
+
+        this.code.u1(opcode);
+        this.code.u2(0);
+    }
+
+    // local 0 is the PrintStream, then one local for each variable
+    private static int local(int variable) {
+        return 1 + variable;
+    }
+
+    private int maxStack() {
+        int max = 0;
+
+        for (State state : this.states)
+            if (state != null)
+                max = Math.max(max, state.stack.length);
+
+        // println needs the PrintStream and a value, compare the opcode
+        return max + 2;
+    }
+
+    // full stack map frame at the current offset, for a label
+    private void frame(State state) {
+        int offset = this.code.size();
+
+        if (offset == this.lastFrame)
+            return;
+
+        int variables = this.program.getVariables().length;
+
+        this.frames.u1(255);
+        this.frames.u2(this.lastFrame < 0 ? offset : offset - this.lastFrame - 1);
+
+        this.frames.u2(1 + variables);
+        this.frames.u1(7);
+        this.frames.u2(this.writer.classConstant(PRINT_STREAM));
+
+        for (int v = 0; v < variables; v++)
+            this.frames.u1(variableType(v));
+
+        // the variable of an lvalue is not on the JVM stack, = stores into it,
+        // such as the one of an assigned logic expression, whose 1 and 0 meet
+        // at a label
+        int values = 0;
+
+        for (int type : state.stack)
+            if (type >= 0)
+                values++;
+
+        this.frames.u2(values);
+
+        for (int type : state.stack)
+            if (type >= 0)
+                this.frames.u1(type);
+
+        this.lastFrame = offset;
+        this.frameCount++;
+    }
+
+    // types on the stack, a variable of an lvalue is -variable - 1
+    private static final class State {
+        int[] stack;
+
+        State(int[] stack) {
+            this.stack = stack;
+        }
+
+        State copy() {
+            return new State(this.stack.clone());
+        }
+
+        void push(int type) {
+            this.stack = Arrays.copyOf(this.stack, this.stack.length + 1);
+            this.stack[this.stack.length - 1] = type;
+        }
+
+        int pop(int instruction) {
+            if (this.stack.length == 0)
+                throw new IllegalArgumentException("stack underflow at instruction " + instruction);
+
+            int type = this.stack[this.stack.length - 1];
+            this.stack = Arrays.copyOf(this.stack, this.stack.length - 1);
+
+            return type;
+        }
+    }
+}
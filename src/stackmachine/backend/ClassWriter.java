@@ -0,0 +1,250 @@
+package stackmachine.backend;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Minimal class file writer, just enough for BytecodeCompiler: a constant pool,
+// and static methods with a Code attribute and an optional StackMapTable. See
+// chapter 4 of the Java Virtual Machine Specification.
+class ClassWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // class file version of Java 8, the first that requires stack map frames
+    private static final int MAJOR_VERSION = 52;
+
+    private final Bytes constantPool;
+    private int constantCount;
+    private final Map<String, Integer> constants;
+
+    private final Bytes methods;
+    private int methodCount;
+
+    private final int thisClass;
+    private final int superClass;
+
+    ClassWriter(String name) {
+        this.constantPool = new Bytes();
+        this.constantCount = 1;
+        this.constants = new HashMap<String, Integer>();
+        this.methods = new Bytes();
+        this.methodCount = 0;
+        this.thisClass = classConstant(name);
+        this.superClass = classConstant("java/lang/Object");
+    }
+
+    // constant pool
+
+    int utf8(String value) {
+        Integer index = this.constants.get("U" + value);
+
+        if (index != null)
+            return index;
+
+        this.constantPool.u1(1);
+        this.constantPool.utf(value);
+
+        return add("U" + value, 1);
+    }
+
+    int classConstant(String name) {
+        Integer index = this.constants.get("C" + name);
+
+        if (index != null)
+            return index;
+
+        int utf8 = utf8(name);
+        this.constantPool.u1(7);
+        this.constantPool.u2(utf8);
+
+        return add("C" + name, 1);
+    }
+
+    int integerConstant(int value) {
+        Integer index = this.constants.get("I" + value);
+
+        if (index != null)
+            return index;
+
+        this.constantPool.u1(3);
+        this.constantPool.u4(value);
+
+        return add("I" + value, 1);
+    }
+
+    int floatConstant(int bits) {
+        Integer index = this.constants.get("F" + bits);
+
+        if (index != null)
+            return index;
+
+        this.constantPool.u1(4);
+        this.constantPool.u4(bits);
+
+        return add("F" + bits, 1);
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        String key = "M" + owner + "." + name + descriptor;
+        Integer index = this.constants.get(key);
+
+        if (index != null)
+            return index;
+
+        int ownerClass = classConstant(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        this.constantPool.u1(10);
+        this.constantPool.u2(ownerClass);
+        this.constantPool.u2(nameAndType);
+
+        return add(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = this.constants.get(key);
+
+        if (index != null)
+            return index;
+
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        this.constantPool.u1(12);
+        this.constantPool.u2(nameIndex);
+        this.constantPool.u2(descriptorIndex);
+
+        return add(key, 1);
+    }
+
+    private int add(String key, int slots) {
+        int index = this.constantCount;
+
+        this.constants.put(key, index);
+        this.constantCount += slots;
+
+        if (this.constantCount > 0xFFFF)
+            throw new UnsupportedProgramException("too many constants");
+
+        return index;
+    }
+
+    // methods
+
+    // stackMapTable holds the frames, without the attribute header, or is null
+    void method(int access, String name, String descriptor, int maxStack, int maxLocals,
+                Bytes code, Bytes stackMapTable, int frames) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        int stackMapAttribute = stackMapTable != null ? utf8("StackMapTable") : 0;
+
+        int stackMapLength = stackMapTable != null ? 6 + 2 + stackMapTable.size() : 0;
+
+        this.methods.u2(access);
+        this.methods.u2(nameIndex);
+        this.methods.u2(descriptorIndex);
+        this.methods.u2(1);
+
+        this.methods.u2(codeAttribute);
+        this.methods.u4(2 + 2 + 4 + code.size() + 2 + 2 + stackMapLength);
+        this.methods.u2(maxStack);
+        this.methods.u2(maxLocals);
+        this.methods.u4(code.size());
+        this.methods.bytes(code);
+        this.methods.u2(0);
+
+        if (stackMapTable != null) {
+            this.methods.u2(1);
+            this.methods.u2(stackMapAttribute);
+            this.methods.u4(2 + stackMapTable.size());
+            this.methods.u2(frames);
+            this.methods.bytes(stackMapTable);
+        }
+        else {
+            this.methods.u2(0);
+        }
+
+        this.methodCount++;
+    }
+
+    byte[] toByteArray() {
+        Bytes out = new Bytes();
+
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(MAJOR_VERSION);
+        out.u2(this.constantCount);
+        out.bytes(this.constantPool);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.u2(this.thisClass);
+        out.u2(this.superClass);
+        out.u2(0);
+        out.u2(0);
+        out.u2(this.methodCount);
+        out.bytes(this.methods);
+        out.u2(0);
+
+        return out.toByteArray();
+    }
+
+    // growable big endian byte buffer
+    static class Bytes {
+        private byte[] data = new byte[256];
+        private int size = 0;
+
+        int size() {
+            return this.size;
+        }
+
+        void u1(int value) {
+            ensure(1);
+            this.data[this.size++] = (byte) value;
+        }
+
+        void u2(int value) {
+            ensure(2);
+            this.data[this.size++] = (byte) (value >>> 8);
+            this.data[this.size++] = (byte) value;
+        }
+
+        void u4(int value) {
+            ensure(4);
+            this.data[this.size++] = (byte) (value >>> 24);
+            this.data[this.size++] = (byte) (value >>> 16);
+            this.data[this.size++] = (byte) (value >>> 8);
+            this.data[this.size++] = (byte) value;
+        }
+
+        // overwrites two bytes written before
+        void setU2(int position, int value) {
+            this.data[position] = (byte) (value >>> 8);
+            this.data[position + 1] = (byte) value;
+        }
+
+        void bytes(Bytes other) {
+            ensure(other.size);
+            System.arraycopy(other.data, 0, this.data, this.size, other.size);
+            this.size += other.size;
+        }
+
+        // modified UTF-8, the names written here are plain ASCII
+        void utf(String value) {
+            u2(value.length());
+
+            for (int i = 0; i < value.length(); i++)
+                u1(value.charAt(i));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.data, this.size);
+        }
+
+        private void ensure(int bytes) {
+            if (this.size + bytes > this.data.length)
+                this.data = Arrays.copyOf(this.data, Math.max(2 * this.data.length, this.size + bytes));
+        }
+    }
+}
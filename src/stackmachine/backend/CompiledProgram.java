@@ -0,0 +1,32 @@
+package stackmachine.backend;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+
+// Intermediate code compiled to a hidden class by BytecodeCompiler. The class
+// has a single static method, run(PrintStream), which HotSpot compiles to
+// native code like any other hot method.
+public class CompiledProgram {
+    private final Class<?> compiledClass;
+    private final MethodHandle run;
+
+    CompiledProgram(Class<?> compiledClass, MethodHandle run) {
+        this.compiledClass = compiledClass;
+        this.run = run;
+    }
+
+    public Class<?> getCompiledClass() {
+        return this.compiledClass;
+    }
+
+    // runs the program from the start, print instructions write to out
+    public void run(PrintStream out) {
+        try {
+            this.run.invokeExact(out);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package stackmachine.backend;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+
+// Executes the intermediate code produced by stackmachine.frontend.SyntaxAnalyzer.
+//
+// The program is linked once, when the interpreter is created: labels are
+// removed, jumps point straight at the next instruction to execute, and the
+// values of push instructions are copied out of the constant pool into the
+// code. Instructions without an operand take one int, the others two. The
+// dispatch loop is then a switch over those ints.
+//
+// The linker can also replace frequent sequences of instructions with
+// superinstructions, see Superinstruction, which do the work of the whole
+// sequence in one dispatch. The count returned by run is then the number of
+// dispatches, which is lower than the number of intermediate code instructions.
+//
+// The code is typed, see Opcode: stack slots and variables hold the bits of
+// their values, and each instruction knows whether they are ints or floats, so
+// no value carries a tag. Variables start at 0.
+//
+// Profiler runs programs with the same semantics and counts what they do.
+public class Interpreter {
+
+    // superinstructions, in the order of Superinstruction, after the opcodes of the intermediate code
+    private static final int INCREMENT = Opcode.COUNT;
+    private static final int STORE_BINARY = Opcode.COUNT + 1;
+    private static final int BRANCH_CONSTANT = Opcode.COUNT + 2;
+    private static final int BRANCH_VARIABLES = Opcode.COUNT + 3;
+    private static final int STORE_CONSTANT = Opcode.COUNT + 4;
+    private static final int MOVE = Opcode.COUNT + 5;
+    private static final int BINARY_VARIABLES = Opcode.COUNT + 6;
+    private static final int BINARY_CONSTANT = Opcode.COUNT + 7;
+
+    private final Program program;
+    private final int[] code;
+
+    private int[] stack;
+    private int[] variables;
+
+    public Interpreter(Program program) {
+        this(program, EnumSet.noneOf(Superinstruction.class));
+    }
+
+    public Interpreter(Program program, Set<Superinstruction> superinstructions) {
+        this.program = program;
+        this.code = link(program, superinstructions);
+        this.stack = new int[64];
+        this.variables = new int[program.getVariables().length];
+    }
+
+    // runs the program from the start, returns the number of instructions executed
+    public long run(PrintStream out) {
+        int[] code = this.code;
+        int[] stack = this.stack;
+        int[] variables = this.variables;
+
+        Arrays.fill(variables, 0);
+
+        int pc = 0;
+        int sp = 0;
+        long executed = 0;
+
+        while (true) {
+            executed++;
+
+            switch (code[pc]) {
+                case Opcode.HALT:
+                    return executed;
+
+                case Opcode.PUSH:
+                case Opcode.LVALUE:
+                    if (sp == stack.length)
+                        this.stack = stack = Arrays.copyOf(stack, 2 * sp);
+                    stack[sp++] = code[pc + 1];
+                    pc += 2;
+                    break;
+
+                case Opcode.RVALUE:
+                    if (sp == stack.length)
+                        this.stack = stack = Arrays.copyOf(stack, 2 * sp);
+                    stack[sp++] = variables[code[pc + 1]];
+                    pc += 2;
+                    break;
+
+                case Opcode.ASSIGN:
+                    sp -= 2;
+                    variables[stack[sp]] = stack[sp + 1];
+                    pc++;
+                    break;
+
+                case Opcode.PRINT:
+                    out.println(variables[code[pc + 1]]);
+                    pc += 2;
+                    break;
+
+                case Opcode.FLOAT_PRINT:
+                    out.println(Float.intBitsToFloat(variables[code[pc + 1]]));
+                    pc += 2;
+                    break;
+
+                case Opcode.ADD:
+                case Opcode.SUBTRACT:
+                case Opcode.MULTIPLY:
+                case Opcode.DIVIDE:
+                case Opcode.REMAINDER:
+                case Opcode.LESS_THAN:
+                case Opcode.LESS_EQUALS:
+                case Opcode.GREATER_THAN:
+                case Opcode.GREATER_EQUALS:
+                case Opcode.EQUALS:
+                case Opcode.NOT_EQUALS:
+                    sp--;
+                    stack[sp - 1] = binary(code[pc], stack[sp - 1], stack[sp]);
+                    pc++;
+                    break;
+
+                case Opcode.FLOAT_ADD:
+                case Opcode.FLOAT_SUBTRACT:
+                case Opcode.FLOAT_MULTIPLY:
+                case Opcode.FLOAT_DIVIDE:
+                case Opcode.FLOAT_REMAINDER:
+                case Opcode.FLOAT_LESS_THAN:
+                case Opcode.FLOAT_LESS_EQUALS:
+                case Opcode.FLOAT_GREATER_THAN:
+                case Opcode.FLOAT_GREATER_EQUALS:
+                case Opcode.FLOAT_EQUALS:
+                case Opcode.FLOAT_NOT_EQUALS:
+                    sp--;
+                    stack[sp - 1] = floatBinary(code[pc], stack[sp - 1], stack[sp]);
+                    pc++;
+                    break;
+
+                case Opcode.INT_TO_FLOAT: {
+                    int slot = sp - 1 - code[pc + 1];
+                    stack[slot] = Float.floatToRawIntBits((float) stack[slot]);
+                    pc += 2;
+                    break;
+                }
+
+                case Opcode.FLOAT_TO_INT:
+                    stack[sp - 1] = (int) Float.intBitsToFloat(stack[sp - 1]);
+                    pc++;
+                    break;
+
+                case Opcode.GOTO:
+                    pc = code[pc + 1];
+                    break;
+
+                case Opcode.GOFALSE:
+                    sp--;
+                    if (stack[sp] == 0)
+                        pc = code[pc + 1];
+                    else
+                        pc += 2;
+                    break;
+
+                case INCREMENT:
+                    variables[code[pc + 1]] += code[pc + 2];
+                    pc += 3;
+                    break;
+
+                case STORE_BINARY:
+                    variables[code[pc + 1]] = apply(code[pc + 4], variables[code[pc + 2]], variables[code[pc + 3]]);
+                    pc += 5;
+                    break;
+
+                case BRANCH_CONSTANT:
+                    pc = binary(code[pc + 3], variables[code[pc + 1]], code[pc + 2]) != 0 ? pc + 5 : code[pc + 4];
+                    break;
+
+                case BRANCH_VARIABLES:
+                    pc = apply(code[pc + 3], variables[code[pc + 1]], variables[code[pc + 2]]) != 0 ? pc + 5 : code[pc + 4];
+                    break;
+
+                case STORE_CONSTANT:
+                    variables[code[pc + 1]] = code[pc + 2];
+                    pc += 3;
+                    break;
+
+                case MOVE:
+                    variables[code[pc + 1]] = variables[code[pc + 2]];
+                    pc += 3;
+                    break;
+
+                case BINARY_VARIABLES:
+                    if (sp == stack.length)
+                        this.stack = stack = Arrays.copyOf(stack, 2 * sp);
+                    stack[sp++] = apply(code[pc + 3], variables[code[pc + 1]], variables[code[pc + 2]]);
+                    pc += 4;
+                    break;
+
+                case BINARY_CONSTANT:
+                    if (sp == stack.length)
+                        this.stack = stack = Arrays.copyOf(stack, 2 * sp);
+                    stack[sp++] = binary(code[pc + 3], variables[code[pc + 1]], code[pc + 2]);
+                    pc += 4;
+                    break;
+
+                default:
+                    throw new IllegalStateException("invalid opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    // an int or float arithmetic or relational operator applied to the bits of two values
+    static int apply(int opcode, int a, int b) {
+        return Opcode.isFloat(opcode) ? floatBinary(opcode, a, b) : binary(opcode, a, b);
+    }
+
+    private static int binary(int opcode, int a, int b) {
+        switch (opcode) {
+            case Opcode.ADD:            return a + b;
+            case Opcode.SUBTRACT:       return a - b;
+            case Opcode.MULTIPLY:       return a * b;
+            case Opcode.DIVIDE:         return a / b;
+            case Opcode.REMAINDER:      return a % b;
+            case Opcode.LESS_THAN:      return a < b ? 1 : 0;
+            case Opcode.LESS_EQUALS:    return a <= b ? 1 : 0;
+            case Opcode.GREATER_THAN:   return a > b ? 1 : 0;
+            case Opcode.GREATER_EQUALS: return a >= b ? 1 : 0;
+            case Opcode.EQUALS:         return a == b ? 1 : 0;
+            default:                    return a != b ? 1 : 0;
+        }
+    }
+
+    // the bits of the result of a float operator, relational operators give an int
+    private static int floatBinary(int opcode, int bitsA, int bitsB) {
+        float a = Float.intBitsToFloat(bitsA);
+        float b = Float.intBitsToFloat(bitsB);
+
+        switch (opcode) {
+            case Opcode.FLOAT_ADD:            return Float.floatToRawIntBits(a + b);
+            case Opcode.FLOAT_SUBTRACT:       return Float.floatToRawIntBits(a - b);
+            case Opcode.FLOAT_MULTIPLY:       return Float.floatToRawIntBits(a * b);
+            case Opcode.FLOAT_DIVIDE:         return Float.floatToRawIntBits(a / b);
+            case Opcode.FLOAT_REMAINDER:      return Float.floatToRawIntBits(a % b);
+            case Opcode.FLOAT_LESS_THAN:      return a < b ? 1 : 0;
+            case Opcode.FLOAT_LESS_EQUALS:    return a <= b ? 1 : 0;
+            case Opcode.FLOAT_GREATER_THAN:   return a > b ? 1 : 0;
+            case Opcode.FLOAT_GREATER_EQUALS: return a >= b ? 1 : 0;
+            case Opcode.FLOAT_EQUALS:         return a == b ? 1 : 0;
+            default:                          return a != b ? 1 : 0;
+        }
+    }
+
+    // value of a variable after the program ran, as it would be printed
+    public String value(String variable) {
+        String[] names = this.program.getVariables();
+
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equals(variable))
+                return this.program.isRealVariable(i) ? String.valueOf(Float.intBitsToFloat(this.variables[i]))
+                        : String.valueOf(this.variables[i]);
+
+        throw new IllegalArgumentException("unknown variable " + variable);
+    }
+
+    // resolves labels and constants once, before the program runs
+    private static int[] link(Program program, Set<Superinstruction> superinstructions) {
+        int size = program.size();
+        int[] address = new int[size + 1];
+        Superinstruction[] fused = new Superinstruction[size];
+        int length = 0;
+
+        // address of every instruction in the linked code, a label gets the address of what follows it
+        for (int i = 0; i < size; i++) {
+            address[i] = length;
+
+            int opcode = program.opcode(i);
+
+            if (opcode == Opcode.LABEL)
+                continue;
+
+            fused[i] = superinstruction(program, i, superinstructions);
+
+            if (fused[i] != null) {
+                length += linkedLength(fused[i]);
+
+                // the other instructions of the sequence are never jumped to
+                for (int j = i + 1; j < i + fused[i].length(); j++)
+                    address[j] = length;
+
+                i += fused[i].length() - 1;
+            }
+            else {
+                length += hasOperand(opcode) ? 2 : 1;
+            }
+        }
+
+        address[size] = length;
+
+        int[] code = new int[length + 1];
+        int pc = 0;
+
+        for (int i = 0; i < size; i++) {
+            int opcode = program.opcode(i);
+            int operand = program.operand(i);
+
+            if (fused[i] != null) {
+                pc = linkSuperinstruction(program, i, fused[i], address, code, pc);
+                i += fused[i].length() - 1;
+                continue;
+            }
+
+            switch (opcode) {
+                case Opcode.LABEL:
+                    break;
+
+                case Opcode.PUSH:
+                case Opcode.FLOAT_PUSH:
+                    // the bits of an int or a float, pushed alike
+                    code[pc++] = Opcode.PUSH;
+                    code[pc++] = program.getConstants()[operand];
+                    break;
+
+                case Opcode.GOTO:
+                case Opcode.GOFALSE:
+                    code[pc++] = opcode;
+                    code[pc++] = address[operand];
+                    break;
+
+                default:
+                    code[pc++] = opcode;
+                    if (hasOperand(opcode))
+                        code[pc++] = operand;
+            }
+        }
+
+        // running off the end of the code halts
+        code[pc] = Opcode.HALT;
+
+        return code;
+    }
+
+    // the longest enabled superinstruction that starts at an instruction, or null
+    private static Superinstruction superinstruction(Program program, int i, Set<Superinstruction> superinstructions) {
+        Superinstruction longest = null;
+
+        for (Superinstruction superinstruction : superinstructions)
+            if ((longest == null || superinstruction.length() > longest.length()) && superinstruction.matches(program, i))
+                longest = superinstruction;
+
+        return longest;
+    }
+
+    private static int linkedLength(Superinstruction superinstruction) {
+        switch (superinstruction) {
+            case STORE_BINARY:
+            case BRANCH_CONSTANT:
+            case BRANCH_VARIABLES:
+                return 5;
+            case BINARY_VARIABLES:
+            case BINARY_CONSTANT:
+                return 4;
+            default:
+                return 3;
+        }
+    }
+
+    // writes a superinstruction at pc, returns the address after it
+    private static int linkSuperinstruction(Program program, int i, Superinstruction superinstruction,
+                                            int[] address, int[] code, int pc) {
+        code[pc++] = INCREMENT + superinstruction.ordinal();
+
+        switch (superinstruction) {
+            case INCREMENT: {
+                int constant = program.integerConstant(program.operand(i + 2));
+                code[pc++] = program.operand(i);
+                code[pc++] = program.opcode(i + 3) == Opcode.ADD ? constant : -constant;
+                break;
+            }
+
+            case STORE_BINARY:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.operand(i + 1);
+                code[pc++] = program.operand(i + 2);
+                code[pc++] = program.opcode(i + 3);
+                break;
+
+            case BRANCH_CONSTANT:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.integerConstant(program.operand(i + 1));
+                code[pc++] = program.opcode(i + 2);
+                code[pc++] = address[program.operand(i + 3)];
+                break;
+
+            case BRANCH_VARIABLES:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.operand(i + 1);
+                code[pc++] = program.opcode(i + 2);
+                code[pc++] = address[program.operand(i + 3)];
+                break;
+
+            case STORE_CONSTANT:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.integerConstant(program.operand(i + 1));
+                break;
+
+            case MOVE:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.operand(i + 1);
+                break;
+
+            case BINARY_VARIABLES:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.operand(i + 1);
+                code[pc++] = program.opcode(i + 2);
+                break;
+
+            case BINARY_CONSTANT:
+                code[pc++] = program.operand(i);
+                code[pc++] = program.integerConstant(program.operand(i + 1));
+                code[pc++] = program.opcode(i + 2);
+                break;
+        }
+
+        return pc;
+    }
+
+    private static boolean hasOperand(int opcode) {
+        return Opcode.isPush(opcode) || opcode == Opcode.INT_TO_FLOAT || Opcode.hasVariable(opcode) || Opcode.isJump(opcode);
+    }
+}
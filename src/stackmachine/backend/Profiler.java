@@ -0,0 +1,315 @@
+package stackmachine.backend;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+
+// Runs a program like Interpreter does, counting as it goes: how often each
+// intermediate code instruction executes, how often each backward jump is
+// taken, that is how many iterations each loop makes, and how much time goes
+// to each line of the source, from the line table of the program.
+//
+// The profiler has its own dispatch loop, over the intermediate code itself,
+// without linking and without superinstructions, so that every count belongs
+// to one instruction of the program. The interpreter is left as it is, a
+// program that is not profiled pays nothing for it.
+//
+// The time of a line is measured when the line changes, it runs from the
+// first instruction of the line to the first instruction of another one. The
+// clock is read at every change, which slows the program down, the times are
+// meant to be compared with each other.
+//
+// writeReport prints the counts, writeCollapsedStacks prints the times in the
+// collapsed stack format of flame graph tools, one line per stack of loops
+// and source line: main;loop at line 4;line 6 120400
+public class Profiler {
+
+    private final Program program;
+
+    // executions of each instruction
+    private final long[] counts;
+
+    // taken backward jumps, by the index of their target label
+    private final long[] backEdges;
+
+    // nanoseconds spent from each instruction that started a line until the
+    // line changed
+    private final long[] nanos;
+
+    private int[] stack;
+    private int[] variables;
+
+    public Profiler(Program program) {
+        this.program = program;
+        this.counts = new long[program.size()];
+        this.backEdges = new long[program.size()];
+        this.nanos = new long[program.size()];
+        this.stack = new int[64];
+        this.variables = new int[program.getVariables().length];
+    }
+
+    // runs the program from the start, adding to the counts of earlier runs,
+    // returns the number of instructions executed, labels aside
+    public long run(PrintStream out) {
+        Program program = this.program;
+        int[] constants = program.getConstants();
+        long[] counts = this.counts;
+        long[] backEdges = this.backEdges;
+        long[] nanos = this.nanos;
+        int[] stack = this.stack;
+        int[] variables = this.variables;
+
+        Arrays.fill(variables, 0);
+
+        int pc = 0;
+        int sp = 0;
+        long executed = 0;
+
+        // the instruction that started the current line, and when
+        int started = 0;
+        int line = program.line(0);
+        long time = System.nanoTime();
+
+        while (true) {
+            int opcode = program.opcode(pc);
+
+            if (opcode == Opcode.LABEL) {
+                pc++;
+                continue;
+            }
+
+            if (program.line(pc) != line) {
+                long now = System.nanoTime();
+                nanos[started] += now - time;
+                started = pc;
+                line = program.line(pc);
+                time = now;
+            }
+
+            counts[pc]++;
+            executed++;
+
+            switch (opcode) {
+                case Opcode.HALT:
+                    nanos[started] += System.nanoTime() - time;
+                    return executed;
+
+                case Opcode.PUSH:
+                case Opcode.FLOAT_PUSH:
+                case Opcode.RVALUE:
+                case Opcode.LVALUE: {
+                    if (sp == stack.length)
+                        this.stack = stack = Arrays.copyOf(stack, 2 * sp);
+                    int operand = program.operand(pc);
+                    if (Opcode.isPush(opcode))
+                        stack[sp++] = constants[operand];
+                    else if (opcode == Opcode.RVALUE)
+                        stack[sp++] = variables[operand];
+                    else
+                        stack[sp++] = operand;
+                    pc++;
+                    break;
+                }
+
+                case Opcode.ASSIGN:
+                    sp -= 2;
+                    variables[stack[sp]] = stack[sp + 1];
+                    pc++;
+                    break;
+
+                case Opcode.PRINT:
+                    out.println(variables[program.operand(pc)]);
+                    pc++;
+                    break;
+
+                case Opcode.FLOAT_PRINT:
+                    out.println(Float.intBitsToFloat(variables[program.operand(pc)]));
+                    pc++;
+                    break;
+
+                case Opcode.INT_TO_FLOAT: {
+                    int slot = sp - 1 - program.operand(pc);
+                    stack[slot] = Float.floatToRawIntBits((float) stack[slot]);
+                    pc++;
+                    break;
+                }
+
+                case Opcode.FLOAT_TO_INT:
+                    stack[sp - 1] = (int) Float.intBitsToFloat(stack[sp - 1]);
+                    pc++;
+                    break;
+
+                case Opcode.GOTO: {
+                    int target = program.operand(pc);
+                    if (target < pc)
+                        backEdges[target]++;
+                    pc = target;
+                    break;
+                }
+
+                case Opcode.GOFALSE: {
+                    sp--;
+                    if (stack[sp] == 0) {
+                        int target = program.operand(pc);
+                        if (target < pc)
+                            backEdges[target]++;
+                        pc = target;
+                    }
+                    else {
+                        pc++;
+                    }
+                    break;
+                }
+
+                default:
+                    if (!Opcode.isArithmetic(opcode) && !Opcode.isRelational(opcode))
+                        throw new IllegalStateException("invalid opcode " + opcode + " at " + pc);
+                    sp--;
+                    stack[sp - 1] = Interpreter.apply(opcode, stack[sp - 1], stack[sp]);
+                    pc++;
+            }
+        }
+    }
+
+    // executions of an instruction of the program
+    public long count(int instruction) {
+        return this.counts[instruction];
+    }
+
+    // iterations of the loop that starts at a label instruction, the number of
+    // backward jumps taken to it
+    public long iterations(int label) {
+        return this.backEdges[label];
+    }
+
+    // nanoseconds spent on a line of the source
+    public long nanos(int line) {
+        long total = 0;
+
+        for (int i = 0; i < this.nanos.length; i++)
+            if (this.program.line(i) == line)
+                total += this.nanos[i];
+
+        return total;
+    }
+
+    public void writeReport(Appendable out) throws IOException {
+        long[] opcodes = new long[Opcode.COUNT];
+        long executed = 0;
+
+        for (int i = 0; i < this.counts.length; i++) {
+            opcodes[this.program.opcode(i)] += this.counts[i];
+            executed += this.counts[i];
+        }
+
+        out.append(String.format("%d instructions executed%n", executed));
+
+        out.append(String.format("%nopcode           count       %%%n"));
+
+        Integer[] order = new Integer[Opcode.COUNT];
+
+        for (int opcode = 0; opcode < Opcode.COUNT; opcode++)
+            order[opcode] = opcode;
+
+        Arrays.sort(order, Comparator.comparingLong((Integer opcode) -> -opcodes[opcode]));
+
+        for (int opcode : order)
+            if (opcodes[opcode] > 0)
+                out.append(String.format("%-10s %12d %6.1f%n",
+                        Opcode.mnemonic(opcode), opcodes[opcode], 100.0 * opcodes[opcode] / executed));
+
+        out.append(String.format("%nloop         line   iterations%n"));
+
+        for (int i = 0; i < this.backEdges.length; i++)
+            if (this.backEdges[i] > 0)
+                out.append(String.format("label_%-6d %5d %12d%n",
+                        this.program.operand(i), loopLine(i), this.backEdges[i]));
+
+        if (!this.program.hasLines())
+            return;
+
+        // lines by time, with the instructions executed on them
+        Map<Integer, long[]> lines = new TreeMap<Integer, long[]>();
+
+        for (int i = 0; i < this.counts.length; i++) {
+            long[] line = lines.computeIfAbsent(this.program.line(i), key -> new long[2]);
+            line[0] += this.nanos[i];
+            line[1] += this.counts[i];
+        }
+
+        List<Map.Entry<Integer, long[]>> sorted = new ArrayList<Map.Entry<Integer, long[]>>(lines.entrySet());
+        sorted.sort(Comparator.comparingLong((Map.Entry<Integer, long[]> entry) -> -entry.getValue()[0]));
+
+        long total = 0;
+
+        for (Map.Entry<Integer, long[]> entry : sorted)
+            total += entry.getValue()[0];
+
+        out.append(String.format("%nline        time (us)       %%   instructions%n"));
+
+        for (Map.Entry<Integer, long[]> entry : sorted)
+            if (entry.getValue()[1] > 0)
+                out.append(String.format("%5d %14.1f %7.1f %14d%n", entry.getKey(), entry.getValue()[0] / 1000.0,
+                        total == 0 ? 0 : 100.0 * entry.getValue()[0] / total, entry.getValue()[1]));
+    }
+
+    // The times by stack of enclosing loops and line. A loop spans the code
+    // from its label to the last backward jump to it, its frame is named after
+    // the line of its first instruction.
+    public void writeCollapsedStacks(Appendable out) throws IOException {
+        int size = this.program.size();
+
+        // end of the loop that starts at each label, -1 if none
+        int[] end = new int[size];
+        Arrays.fill(end, -1);
+
+        for (int i = 0; i < size; i++)
+            if (Opcode.isJump(this.program.opcode(i)) && this.program.operand(i) < i)
+                end[this.program.operand(i)] = i;
+
+        Map<String, Long> stacks = new TreeMap<String, Long>();
+        List<Integer> loops = new ArrayList<Integer>();
+
+        for (int i = 0; i < size; i++) {
+            // leave the loops that ended, enter the one that starts here
+            while (!loops.isEmpty() && end[loops.get(loops.size() - 1)] < i)
+                loops.remove(loops.size() - 1);
+
+            if (end[i] >= 0)
+                loops.add(i);
+
+            if (this.nanos[i] == 0)
+                continue;
+
+            StringBuilder frames = new StringBuilder("main");
+
+            for (int loop : loops)
+                frames.append(";loop at line ").append(loopLine(loop));
+
+            if (this.program.hasLines())
+                frames.append(";line ").append(this.program.line(i));
+
+            stacks.merge(frames.toString(), this.nanos[i], Long::sum);
+        }
+
+        for (Map.Entry<String, Long> stack : stacks.entrySet())
+            out.append(stack.getKey()).append(' ').append(String.valueOf(stack.getValue())).append('\n');
+    }
+
+    // line of a loop, the one of the first instruction after its label
+    private int loopLine(int label) {
+        for (int i = label; i < this.program.size(); i++)
+            if (this.program.opcode(i) != Opcode.LABEL)
+                return this.program.line(i);
+
+        return this.program.line(label);
+    }
+}
@@ -0,0 +1,106 @@
+package stackmachine.backend;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+
+// Sequences of intermediate code instructions that the interpreter can link
+// into a single instruction, so the sequence costs one dispatch instead of one
+// per instruction. The constants are ints, pushed with push, and the
+// operators may be the int or the float versions: since the code is typed,
+// the operands of a matched operator are already of its type and a store
+// needs no conversion. A sequence never contains a label, so jumps still land
+// on the first instruction of a superinstruction.
+//
+// SuperinstructionProfile counts how often each one occurs in a corpus of
+// programs, to choose the ones worth enabling.
+public enum Superinstruction {
+
+    // lvalue x  rvalue x  push c  + or -  =
+    INCREMENT(5),
+
+    // lvalue x  rvalue a  rvalue b  op  =
+    STORE_BINARY(5),
+
+    // rvalue a  push c  relational  gofalse L
+    BRANCH_CONSTANT(4),
+
+    // rvalue a  rvalue b  relational  gofalse L
+    BRANCH_VARIABLES(4),
+
+    // lvalue x  push c  =
+    STORE_CONSTANT(3),
+
+    // lvalue x  rvalue y  =
+    MOVE(3),
+
+    // rvalue a  rvalue b  op
+    BINARY_VARIABLES(3),
+
+    // rvalue a  push c  op
+    BINARY_CONSTANT(3);
+
+    // number of intermediate code instructions it replaces
+    private final int length;
+
+    Superinstruction(int length) {
+        this.length = length;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    // whether the sequence starts at an instruction of a program
+    public boolean matches(Program program, int i) {
+        if (i + this.length > program.size())
+            return false;
+
+        switch (this) {
+            case INCREMENT:
+                return is(program, i, Opcode.LVALUE) && is(program, i + 1, Opcode.RVALUE)
+                        && program.operand(i) == program.operand(i + 1)
+                        && intConstant(program, i + 2)
+                        && (is(program, i + 3, Opcode.ADD)
+                            || (is(program, i + 3, Opcode.SUBTRACT) && program.integerConstant(program.operand(i + 2)) != Integer.MIN_VALUE))
+                        && is(program, i + 4, Opcode.ASSIGN);
+
+            case STORE_BINARY:
+                return is(program, i, Opcode.LVALUE) && is(program, i + 1, Opcode.RVALUE) && is(program, i + 2, Opcode.RVALUE)
+                        && binary(program, i + 3) && is(program, i + 4, Opcode.ASSIGN);
+
+            case BRANCH_CONSTANT:
+                return is(program, i, Opcode.RVALUE) && intConstant(program, i + 1)
+                        && Opcode.isRelational(program.opcode(i + 2)) && !Opcode.isFloat(program.opcode(i + 2))
+                        && is(program, i + 3, Opcode.GOFALSE);
+
+            case BRANCH_VARIABLES:
+                return is(program, i, Opcode.RVALUE) && is(program, i + 1, Opcode.RVALUE)
+                        && Opcode.isRelational(program.opcode(i + 2)) && is(program, i + 3, Opcode.GOFALSE);
+
+            case STORE_CONSTANT:
+                return is(program, i, Opcode.LVALUE) && intConstant(program, i + 1) && is(program, i + 2, Opcode.ASSIGN);
+
+            case MOVE:
+                return is(program, i, Opcode.LVALUE) && is(program, i + 1, Opcode.RVALUE) && is(program, i + 2, Opcode.ASSIGN);
+
+            case BINARY_VARIABLES:
+                return is(program, i, Opcode.RVALUE) && is(program, i + 1, Opcode.RVALUE) && binary(program, i + 2);
+
+            default:
+                return is(program, i, Opcode.RVALUE) && intConstant(program, i + 1) && binary(program, i + 2)
+                        && !Opcode.isFloat(program.opcode(i + 2));
+        }
+    }
+
+    private static boolean is(Program program, int i, int opcode) {
+        return program.opcode(i) == opcode;
+    }
+
+    private static boolean intConstant(Program program, int i) {
+        return program.opcode(i) == Opcode.PUSH;
+    }
+
+    private static boolean binary(Program program, int i) {
+        return Opcode.isArithmetic(program.opcode(i)) || Opcode.isRelational(program.opcode(i));
+    }
+}
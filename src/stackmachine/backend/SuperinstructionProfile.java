@@ -0,0 +1,80 @@
+package stackmachine.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import stackmachine.ir.Program;
+
+// Counts how often each superinstruction occurs in a corpus of programs, and
+// how many dispatches it would save, one less than its length per occurrence.
+// Occurrences may overlap, the counts tell which sequences are frequent, not
+// exactly what the linker will pick. select then chooses the superinstructions
+// worth giving to the interpreter.
+public class SuperinstructionProfile {
+    private final long[] counts;
+    private long instructions;
+
+    public SuperinstructionProfile() {
+        this.counts = new long[Superinstruction.values().length];
+        this.instructions = 0;
+    }
+
+    public void add(Program program) {
+        for (int i = 0; i < program.size(); i++)
+            for (Superinstruction superinstruction : Superinstruction.values())
+                if (superinstruction.matches(program, i))
+                    this.counts[superinstruction.ordinal()]++;
+
+        this.instructions += program.size();
+    }
+
+    // instructions in all the programs added
+    public long instructions() {
+        return this.instructions;
+    }
+
+    public long count(Superinstruction superinstruction) {
+        return this.counts[superinstruction.ordinal()];
+    }
+
+    public long saved(Superinstruction superinstruction) {
+        return count(superinstruction) * (superinstruction.length() - 1);
+    }
+
+    // superinstructions that occur at all, the ones that save the most first
+    public List<Superinstruction> ranking() {
+        List<Superinstruction> ranking = new ArrayList<Superinstruction>();
+
+        for (Superinstruction superinstruction : Superinstruction.values())
+            if (count(superinstruction) > 0)
+                ranking.add(superinstruction);
+
+        ranking.sort(Comparator.comparingLong(this::saved).reversed());
+
+        return ranking;
+    }
+
+    // the superinstructions that save at least a share, between 0 and 1, of the instructions of the corpus
+    public Set<Superinstruction> select(double share) {
+        Set<Superinstruction> selected = EnumSet.noneOf(Superinstruction.class);
+
+        for (Superinstruction superinstruction : ranking())
+            if (saved(superinstruction) >= share * this.instructions)
+                selected.add(superinstruction);
+
+        return selected;
+    }
+
+    public void write(Appendable out) throws IOException {
+        out.append(String.format("%-18s %10s %10s %8s%n", "superinstruction", "count", "saved", "share"));
+
+        for (Superinstruction superinstruction : ranking())
+            out.append(String.format("%-18s %,10d %,10d %7.1f%%%n", superinstruction.name().toLowerCase(),
+                    count(superinstruction), saved(superinstruction),
+                    100.0 * saved(superinstruction) / Math.max(this.instructions, 1)));
+    }
+}
@@ -0,0 +1,65 @@
+package stackmachine.backend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.frontend.SyntaxAnalyzer;
+import stackmachine.ir.Disassembler;
+import stackmachine.ir.Program;
+import stackmachine.optimizer.ConstantPropagation;
+import stackmachine.optimizer.PartialEvaluator;
+
+// usage: TestProgram [profile | residual [steps]], profile runs the program in
+// the profiler and prints its report and the collapsed stacks, residual
+// evaluates the program at compile time, within a budget of steps, and prints
+// and runs the residual program
+public class TestProgram {
+
+    public static void main(String[] args) throws IOException {
+        String program = "src/program_5.txt";
+
+        SyntaxAnalyzer parser = new SyntaxAnalyzer(new LexicalAnalyzer(program, StandardCharsets.UTF_8));
+
+        if (parser.compile()) {
+            ConstantPropagation optimizer = new ConstantPropagation();
+            Program code = optimizer.optimize(parser.compiledProgram());
+
+            if (args.length > 0 && args[0].equals("profile")) {
+                Profiler profiler = new Profiler(code);
+
+                profiler.run(System.out);
+
+                System.out.println();
+                profiler.writeReport(System.out);
+                System.out.println();
+                profiler.writeCollapsedStacks(System.out);
+                return;
+            }
+
+            if (args.length > 0 && args[0].equals("residual")) {
+                long steps = args.length > 1 ? Long.parseLong(args[1]) : PartialEvaluator.DEFAULT_STEPS;
+                PartialEvaluator evaluator = new PartialEvaluator(steps);
+                Program residual = evaluator.optimize(parser.compiledProgram());
+
+                Disassembler.write(residual, System.out);
+
+                System.out.println("\n" + evaluator.steps() + " steps evaluated at compile time"
+                        + (evaluator.isComplete() ? "" : ", the budget ran out"));
+                System.out.println(residual.size() + " instructions in the residual program\n");
+
+                new Interpreter(residual).run(System.out);
+                return;
+            }
+
+            Interpreter interpreter = new Interpreter(code);
+
+            long executed = interpreter.run(System.out);
+
+            System.out.println("\n" + optimizer.eliminated() + " instructions eliminated by the optimizer");
+            System.out.println(executed + " instructions executed");
+        } else {
+            System.out.println(parser.output());
+        }
+    }
+}
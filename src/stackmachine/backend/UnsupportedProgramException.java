@@ -0,0 +1,11 @@
+package stackmachine.backend;
+
+// Thrown by BytecodeCompiler for a valid program that it cannot compile, one
+// too large for a single method or whose stack does not have the same types
+// on every path. The interpreter runs such programs instead.
+public class UnsupportedProgramException extends RuntimeException {
+
+    public UnsupportedProgramException(String message) {
+        super(message);
+    }
+}
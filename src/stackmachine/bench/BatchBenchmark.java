@@ -0,0 +1,63 @@
+package stackmachine.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import stackmachine.frontend.BatchCompiler;
+
+// Measures how the batch compiler scales with the number of threads, on
+// generated programs written to a temporary directory. Nothing is written
+// back, only parsing and code generation are timed.
+//
+// usage: BatchBenchmark [files] [blocks per file]
+public class BatchBenchmark {
+
+    private static double filesPerSecond(List<Path> files, int threads) throws Exception {
+        BatchCompiler compiler = new BatchCompiler(null, threads, false);
+
+        // warm up
+        compiler.compile(files);
+
+        long start = System.nanoTime();
+        compiler.compile(files);
+
+        return files.size() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int blocks = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Path directory = Files.createTempDirectory("programs_");
+        directory.toFile().deleteOnExit();
+
+        List<Path> files = new ArrayList<Path>();
+        byte[] program = SyntheticPrograms.repeatedBlocks(blocks).getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < count; i++) {
+            Path file = directory.resolve("program_" + i + ".txt");
+            Files.write(file, program);
+            file.toFile().deleteOnExit();
+            files.add(file);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+
+        // 1, 2, 4 ... threads, and all the cores last
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            double rate = filesPerSecond(files, threads);
+
+            if (threads == 1)
+                single = rate;
+
+            System.out.printf("%2d threads  %,10.0f files/s  %.2fx%n", threads, rate, rate / single);
+
+            if (threads == cores)
+                break;
+        }
+    }
+}
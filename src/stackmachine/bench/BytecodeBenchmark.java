@@ -0,0 +1,65 @@
+package stackmachine.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import stackmachine.backend.BytecodeCompiler;
+import stackmachine.backend.CompiledProgram;
+import stackmachine.backend.Interpreter;
+import stackmachine.ir.Program;
+
+// Compares the interpreter with the bytecode compiler on the factorial loops
+// of program_5.txt and program_6.txt repeated in an outer loop. Both run the
+// same intermediate code, the times include neither parsing nor compiling.
+//
+// usage: BytecodeBenchmark [outer iterations] [runs]
+public class BytecodeBenchmark {
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private static double interpreted(Program program, int runs) {
+        Interpreter interpreter = new Interpreter(program);
+
+        // warm up
+        for (int i = 0; i < runs; i++)
+            interpreter.run(NO_OUTPUT);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < runs; i++)
+            interpreter.run(NO_OUTPUT);
+
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static double compiled(Program program, int runs) {
+        CompiledProgram compiled = new BytecodeCompiler().compile(program);
+
+        // warm up
+        for (int i = 0; i < runs; i++)
+            compiled.run(NO_OUTPUT);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < runs; i++)
+            compiled.run(NO_OUTPUT);
+
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static void run(String name, Program program, int runs) {
+        double interpreted = interpreted(program, runs);
+        double compiled = compiled(program, runs);
+
+        System.out.printf("%-20s interpreter %.3f s, bytecode %.3f s, %.1fx faster%n",
+                name, interpreted, compiled, interpreted / compiled);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        run("while (program_5)", InterpreterBenchmark.compile(SyntheticPrograms.factorialLoops(iterations, false)), runs);
+        run("do while (program_6)", InterpreterBenchmark.compile(SyntheticPrograms.factorialLoops(iterations, true)), runs);
+    }
+}
@@ -0,0 +1,238 @@
+package stackmachine.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.backend.BytecodeCompiler;
+import stackmachine.backend.Interpreter;
+import stackmachine.backend.Superinstruction;
+import stackmachine.backend.UnsupportedProgramException;
+import stackmachine.frontend.ISyntaxAnalyzer;
+import stackmachine.frontend.IncrementalCompiler;
+import stackmachine.frontend.SyntaxAnalyzer;
+import stackmachine.frontend.TableDrivenSyntaxAnalyzer;
+import stackmachine.ir.Program;
+import stackmachine.optimizer.ConstantPropagation;
+import stackmachine.optimizer.LoopOptimizer;
+import stackmachine.optimizer.PartialEvaluator;
+import stackmachine.optimizer.PeepholeOptimizer;
+
+// Differential checks of the compiler on programs of ProgramGenerator, with
+// bounded loops so that they can be run, some of them with errors:
+//
+// the recursive and the table driven parser give the same intermediate code,
+// line table and diagnostics,
+//
+// edits compiled by IncrementalCompiler give the same results as compiling
+// the edited program,
+//
+// the optimizers and the backends do not change the output of a program: the
+// peephole optimizer, constant propagation, the partial evaluator within a few
+// budgets, the loop optimizer, the superinstructions and the bytecode
+// compiler, against the interpreter.
+//
+// Every failed check is printed with the seed of its program, and the check
+// exits with status 1, so that it can run in the build.
+//
+// usage: DifferentialCheck [programs [first seed]]
+public class DifferentialCheck {
+
+    // the recursive parser recurses once per statement
+    private static final long STACK_SIZE = 1L << 28;
+
+    private static final int PROGRAM_SIZE = 1500;
+    private static final int LOOP_BOUND = 3;
+    private static final int EDITS = 20;
+    private static final long[] BUDGETS = { 0, 50, PartialEvaluator.DEFAULT_STEPS };
+
+    // statements inserted by the edits, some of them with errors
+    private static final String[] STATEMENTS = {
+            "   v0 = v0 + 1;\n", "   print(v1);\n", "   int w;\n", "   if (v0 < v1) v2 = 1; else v2 = 2;\n",
+            "   k2 = 0;\n   while (k2 < 2 && v0 > 0) { k2 = k2 + 1; }\n", "   float f = 1.5;\n", "   v3 = ;\n",
+            "   undeclared = 1;\n", "   {\n", "   }\n" };
+
+    private final List<String> failures = new ArrayList<String>();
+
+    private void fail(long seed, String check, String details) {
+        this.failures.add("program " + seed + ", " + check + ": " + details);
+    }
+
+    private void check(long seed) {
+        double errorRate = seed % 4 == 0 ? 0.05 : 0;
+        String text = new ProgramGenerator(seed, 3, 2, 16, errorRate, true, LOOP_BOUND).generate(PROGRAM_SIZE);
+
+        String recursive = result(new SyntaxAnalyzer(new LexicalAnalyzer(text)));
+        String tableDriven = result(new TableDrivenSyntaxAnalyzer(new LexicalAnalyzer(text)));
+
+        if (!recursive.equals(tableDriven))
+            fail(seed, "parsers", "the recursive and the table driven parser differ");
+
+        checkEdits(seed, text);
+
+        ISyntaxAnalyzer parser = new TableDrivenSyntaxAnalyzer(new LexicalAnalyzer(text));
+
+        if (parser.compile())
+            checkOutputs(seed, parser.compiledProgram());
+    }
+
+    // what a compilation gives, for comparing two of them
+    private static String result(ISyntaxAnalyzer parser) {
+        boolean compiled = parser.compile();
+        String result = compiled + "\n" + parser.output() + "\n" + parser.symbolTable();
+
+        if (compiled)
+            result += "\n" + parser.intermediateCode() + Arrays.toString(parser.compiledProgram().getLines());
+
+        return result;
+    }
+
+    // Edits the program, a statement inserted at the start of a line, a line
+    // removed or a digit changed, and compares each incremental compilation
+    // with a compilation of the edited program
+    private void checkEdits(long seed, String text) {
+        Random random = new Random(seed);
+        IncrementalCompiler compiler = new IncrementalCompiler(text);
+
+        compiler.compile();
+
+        for (int edit = 0; edit < EDITS; edit++) {
+            String current = compiler.text();
+            int start = current.indexOf('\n') + 1;
+            int end = current.lastIndexOf('}');
+
+            // the start of a line of the body of main
+            int line = start + random.nextInt(Math.max(end - start, 1));
+            line = current.lastIndexOf('\n', line - 1) + 1;
+
+            if (line < start || line >= end)
+                continue;
+
+            int offset = line;
+            int length = 0;
+            String replacement = "";
+
+            switch (random.nextInt(3)) {
+                case 0:
+                    replacement = STATEMENTS[random.nextInt(STATEMENTS.length)];
+                    break;
+
+                case 1:
+                    length = current.indexOf('\n', line) + 1 - line;
+                    break;
+
+                default:
+                    for (int i = line; i < end && current.charAt(i) != '\n'; i++) {
+                        if (Character.isDigit(current.charAt(i)) && !Character.isLetter(current.charAt(i - 1))) {
+                            offset = i;
+                            length = 1;
+                            replacement = String.valueOf(random.nextInt(10));
+                            break;
+                        }
+                    }
+            }
+
+            compiler.edit(offset, length, replacement);
+
+            String incremental = result(compiler);
+            String whole = result(new TableDrivenSyntaxAnalyzer(new LexicalAnalyzer(compiler.text())));
+
+            if (!incremental.equals(whole)) {
+                fail(seed, "incremental compiler", "edit " + edit + " at " + offset + " differs from a full compile");
+                return;
+            }
+        }
+    }
+
+    private void checkOutputs(long seed, Program program) {
+        String expected = output(program, null);
+        Program propagated = new ConstantPropagation().optimize(program);
+
+        compare(seed, "peephole optimizer", expected, output(new PeepholeOptimizer().optimize(program), null));
+        compare(seed, "constant propagation", expected, output(propagated, null));
+        compare(seed, "loop optimizer", expected, output(new LoopOptimizer().optimize(program), null));
+        compare(seed, "loop optimizer after constant propagation", expected,
+                output(new LoopOptimizer().optimize(propagated), null));
+
+        for (long budget : BUDGETS)
+            compare(seed, "partial evaluator within " + budget + " steps", expected,
+                    output(new PartialEvaluator(budget).optimize(program), null));
+
+        compare(seed, "superinstructions", expected, output(program, EnumSet.allOf(Superinstruction.class)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            new BytecodeCompiler().compile(program).run(new PrintStream(out));
+        } catch (ArithmeticException e) {
+            out.writeBytes("division by zero\n".getBytes());
+        } catch (UnsupportedProgramException e) {
+            // too large for one method
+            return;
+        }
+
+        compare(seed, "bytecode compiler", expected, out.toString());
+    }
+
+    // the output of the interpreter, up to a division by zero
+    private static String output(Program program, EnumSet<Superinstruction> superinstructions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Interpreter interpreter = superinstructions == null
+                ? new Interpreter(program) : new Interpreter(program, superinstructions);
+
+        try {
+            interpreter.run(new PrintStream(out));
+        } catch (ArithmeticException e) {
+            out.writeBytes("division by zero\n".getBytes());
+        }
+
+        return out.toString();
+    }
+
+    private void compare(long seed, String check, String expected, String output) {
+        if (!expected.equals(output))
+            fail(seed, check, "the output differs from the interpreter's");
+    }
+
+    private boolean run(int programs, long first) {
+        for (long seed = first; seed < first + programs; seed++)
+            check(seed);
+
+        for (String failure : this.failures)
+            System.out.println(failure);
+
+        System.out.printf("%d programs checked, %d failures%n", programs, this.failures.size());
+
+        return this.failures.isEmpty();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int programs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long first = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+        boolean[] passed = new boolean[1];
+        Throwable[] failure = new Throwable[1];
+
+        Thread check = new Thread(null, () -> {
+            try {
+                passed[0] = new DifferentialCheck().run(programs, first);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "check", STACK_SIZE);
+
+        check.start();
+        check.join();
+
+        if (failure[0] != null)
+            throw new RuntimeException(failure[0]);
+
+        if (!passed[0])
+            System.exit(1);
+    }
+}
@@ -0,0 +1,86 @@
+package stackmachine.bench;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.frontend.IncrementalCompiler;
+import stackmachine.frontend.TableDrivenSyntaxAnalyzer;
+
+// Compares a compilation of the whole program with an edit of one statement
+// compiled by stackmachine.frontend.IncrementalCompiler, for generated programs
+// of growing size. The edit changes a constant of a statement in the middle of
+// the program and back, so the program stays valid and keeps its size. The
+// time of an edit includes getting its results: the program, the diagnostics
+// and the symbol table.
+//
+// usage: IncrementalBenchmark [iterations] [blocks...]
+public class IncrementalBenchmark {
+
+    private static double wholeProgram(String program, int iterations) {
+        long time = 0;
+
+        for (int i = 0; i < 2 * iterations; i++) {
+            long start = System.nanoTime();
+            TableDrivenSyntaxAnalyzer parser = new TableDrivenSyntaxAnalyzer(new LexicalAnalyzer(program));
+
+            if (!parser.compile())
+                throw new IllegalStateException("generated program does not compile: " + parser.output());
+
+            // the first half warms up
+            if (i >= iterations)
+                time += System.nanoTime() - start;
+        }
+
+        return time / 1e6 / iterations;
+    }
+
+    private static double edits(IncrementalCompiler compiler, int iterations) {
+        String program = compiler.text();
+        int offset = program.indexOf("* 3", program.length() / 2) + 2;
+        long time = 0;
+
+        for (int i = 0; i < 2 * iterations; i++) {
+            long start = System.nanoTime();
+
+            if (!compiler.edit(offset, 1, i % 2 == 0 ? "5" : "3"))
+                throw new IllegalStateException("edited program does not compile: " + compiler.output());
+
+            compiler.compiledProgram();
+            compiler.diagnostics();
+            compiler.symbolTable();
+
+            if (i >= iterations)
+                time += System.nanoTime() - start;
+        }
+
+        return time / 1e6 / iterations;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] sizes = {250, 1000, 4000};
+
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("statements  whole program  first compile  edit + results  regions  parsed again");
+
+        for (int blocks : sizes) {
+            String program = SyntheticPrograms.repeatedBlocks(blocks);
+            IncrementalCompiler compiler = new IncrementalCompiler(program);
+
+            long start = System.nanoTime();
+            compiler.compile();
+            double first = (System.nanoTime() - start) / 1e6;
+
+            double whole = wholeProgram(program, Math.max(1, iterations / 20));
+            double edit = edits(compiler, iterations);
+
+            System.out.printf("%10d  %10.2f ms  %10.2f ms  %11.3f ms  %7d  %12d%n",
+                    blocks * SyntheticPrograms.STATEMENTS_PER_BLOCK, whole, first, edit,
+                    compiler.regionCount(), compiler.regionCount() - compiler.reusedRegions());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package stackmachine.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.backend.Interpreter;
+import stackmachine.frontend.ISyntaxAnalyzer;
+import stackmachine.frontend.TableDrivenSyntaxAnalyzer;
+import stackmachine.ir.Program;
+
+// Measures how many intermediate code instructions per second the stack machine
+// interpreter executes, on the factorial loops of program_5.txt and program_6.txt
+// repeated in an outer loop.
+//
+// usage: InterpreterBenchmark [outer iterations] [runs]
+public class InterpreterBenchmark {
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    static Program compile(String source) throws Exception {
+        String file = SyntheticPrograms.writeTemporary(source).toString();
+        ISyntaxAnalyzer parser = new TableDrivenSyntaxAnalyzer(new LexicalAnalyzer(file, StandardCharsets.UTF_8));
+
+        if (!parser.compile())
+            throw new IllegalStateException("generated program does not compile: " + parser.output());
+
+        return parser.compiledProgram();
+    }
+
+    private static void run(String name, Program program, int runs) {
+        Interpreter interpreter = new Interpreter(program);
+
+        // warm up
+        for (int i = 0; i < runs; i++)
+            interpreter.run(NO_OUTPUT);
+
+        long executed = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < runs; i++)
+            executed += interpreter.run(NO_OUTPUT);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-20s %,d instructions in %.3f s, %,.0f instructions/s%n",
+                name, executed, seconds, executed / seconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        run("while (program_5)", compile(SyntheticPrograms.factorialLoops(iterations, false)), runs);
+        run("do while (program_6)", compile(SyntheticPrograms.factorialLoops(iterations, true)), runs);
+    }
+}
@@ -0,0 +1,121 @@
+package stackmachine.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.frontend.MappedLexicalAnalyzer;
+import stackmachine.frontend.ScannerTables;
+import stackmachine.frontend.TokenKind;
+
+// Compares slu.compiler.LexicalAnalyzer with MappedLexicalAnalyzer, driven by
+// the ScannerTables of lexicon.txt, on the sample programs and on a large
+// generated one. Every run opens the file again, so the times include reading
+// or mapping it. The mapped lexer is timed reading the cursor and creating a
+// Token per token like the slu.compiler analyzer.
+//
+// usage: LexerBenchmark [iterations] [files...]
+public class LexerBenchmark {
+
+    private static long slu(String file) {
+        LexicalAnalyzer lex = new LexicalAnalyzer(file, StandardCharsets.UTF_8);
+        long tokens = 0;
+
+        while (!lex.getToken().getName().equals("end_program"))
+            tokens++;
+
+        return tokens;
+    }
+
+    private static long cursor(Path file) throws IOException {
+        MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(file);
+        long tokens = 0;
+
+        while (lex.next() != TokenKind.END_PROGRAM)
+            tokens++;
+
+        return tokens;
+    }
+
+    private static long tokens(Path file) throws IOException {
+        MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(file);
+        long tokens = 0;
+
+        while (!lex.getToken().getName().equals("end_program"))
+            tokens++;
+
+        return tokens;
+    }
+
+    // nanoseconds per token of each lexer, the first half of the runs warms up
+    private static double[] time(Path file, int iterations) throws IOException {
+        double[] times = new double[3];
+        long count = 0;
+
+        for (int lexer = 0; lexer < 3; lexer++) {
+            long time = 0;
+
+            for (int i = 0; i < 2 * iterations; i++) {
+                long start = System.nanoTime();
+
+                switch (lexer) {
+                    case 0:
+                        count = slu(file.toString());
+                        break;
+                    case 1:
+                        count = cursor(file);
+                        break;
+                    default:
+                        count = tokens(file);
+                }
+
+                if (i >= iterations)
+                    time += System.nanoTime() - start;
+            }
+
+            times[lexer] = (double) time / iterations / Math.max(count, 1);
+        }
+
+        return times;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        List<Path> files = new ArrayList<Path>();
+
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++)
+                files.add(Paths.get(args[i]));
+        }
+        else {
+            for (int i = 1; Files.exists(Paths.get("src/program_" + i + ".txt")); i++)
+                files.add(Paths.get("src/program_" + i + ".txt"));
+
+            files.add(SyntheticPrograms.writeTemporary(SyntheticPrograms.repeatedBlocks(2000)));
+        }
+
+        ScannerTables tables = ScannerTables.standard();
+
+        System.out.println("lexicon.txt         " + tables.tokenCount() + " tokens");
+        System.out.println("operator DFA        " + tables.trieStates() + " trie states, " +
+                tables.operatorStates() + " after minimization");
+        System.out.println();
+        System.out.println("file                                tokens   slu.compiler   cursor     tokens     (ns/token)");
+
+        for (Path file : files) {
+            long tokens = cursor(file);
+
+            // the large files run fewer times
+            int runs = (int) Math.max(2, Math.min(iterations, 2_000_000L * iterations / 2000 / Math.max(tokens, 1)));
+            double[] times = time(file, runs);
+
+            System.out.printf("%-34s %7d   %12.1f   %6.1f     %6.1f%n",
+                    file.getFileName(), tokens, times[0], times[1], times[2]);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package stackmachine.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import stackmachine.backend.Interpreter;
+import stackmachine.ir.Program;
+import stackmachine.optimizer.ConstantPropagation;
+import stackmachine.optimizer.LoopOptimizer;
+
+// Runs generated nested loop programs optimized by constant propagation, with
+// and without the loop optimizer after it, and compares the instructions they
+// execute in the interpreter and the time they take. The outputs must be the
+// same.
+//
+// usage: LoopBenchmark [programs] [depth] [iterations] [runs]
+public class LoopBenchmark {
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    // the output and the instructions executed
+    private static String output(Program program, long[] executed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        executed[0] = new Interpreter(program).run(new PrintStream(out));
+
+        return out.toString();
+    }
+
+    private static double seconds(Program program, int runs) {
+        Interpreter interpreter = new Interpreter(program);
+
+        // warm up
+        for (int i = 0; i < runs; i++)
+            interpreter.run(NO_OUTPUT);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < runs; i++)
+            interpreter.run(NO_OUTPUT);
+
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int programs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        long totalBefore = 0;
+        long totalAfter = 0;
+
+        System.out.printf("%-8s %16s %16s %8s %10s %10s %8s %8s%n",
+                "program", "instructions", "with loops opt", "saved", "time", "with opt", "hoisted", "reduced");
+
+        for (int seed = 1; seed <= programs; seed++) {
+            Program program = InterpreterBenchmark.compile(SyntheticPrograms.nestedLoops(seed, depth, iterations));
+            Program before = new ConstantPropagation().optimize(program);
+
+            LoopOptimizer optimizer = new LoopOptimizer();
+            Program after = optimizer.optimize(before);
+
+            long[] executedBefore = new long[1];
+            long[] executedAfter = new long[1];
+
+            if (!output(before, executedBefore).equals(output(after, executedAfter)))
+                throw new IllegalStateException("the loop optimizer changed the output of program " + seed);
+
+            totalBefore += executedBefore[0];
+            totalAfter += executedAfter[0];
+
+            System.out.printf("%-8d %,16d %,16d %7.1f%% %9.3fs %9.3fs %8d %8d%n",
+                    seed, executedBefore[0], executedAfter[0],
+                    100.0 * (executedBefore[0] - executedAfter[0]) / executedBefore[0],
+                    seconds(before, runs), seconds(after, runs), optimizer.hoisted(), optimizer.reduced());
+        }
+
+        System.out.printf("%-8s %,16d %,16d %7.1f%%%n", "total", totalBefore, totalAfter,
+                100.0 * (totalBefore - totalAfter) / totalBefore);
+    }
+}
@@ -0,0 +1,125 @@
+package stackmachine.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.frontend.ISyntaxAnalyzer;
+import stackmachine.frontend.MappedLexicalAnalyzer;
+import stackmachine.frontend.SyntaxAnalyzer;
+import stackmachine.frontend.TableDrivenSyntaxAnalyzer;
+import stackmachine.frontend.TokenKind;
+
+// Measures the throughput of stackmachine.frontend.SyntaxAnalyzer on large
+// generated programs. The lexical analyzer alone is timed as well, so that the
+// parser's share can be told apart from the time spent reading tokens. With
+// mapped, the tokens are read by MappedLexicalAnalyzer instead of the
+// slu.compiler lexical analyzer.
+//
+// usage: ParserBenchmark [blocks] [iterations] [recursive|table] [mapped]
+public class ParserBenchmark {
+
+    // the recursive descent parser recurses once per statement, the table driven one does not
+    private static final long STACK_SIZE = 1L << 30;
+
+    private static boolean tableDriven;
+    private static boolean mapped;
+
+    private static long lexOnly(String file) throws IOException {
+        long tokens = 0;
+
+        if (mapped) {
+            MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(Paths.get(file));
+
+            while (lex.next() != TokenKind.END_PROGRAM)
+                tokens++;
+        }
+        else {
+            LexicalAnalyzer lex = new LexicalAnalyzer(file, StandardCharsets.UTF_8);
+
+            while (!lex.getToken().getName().equals("end_program"))
+                tokens++;
+        }
+
+        return tokens;
+    }
+
+    private static void compile(String file) throws IOException {
+        ISyntaxAnalyzer parser;
+
+        if (mapped) {
+            MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(Paths.get(file));
+            parser = tableDriven ? new TableDrivenSyntaxAnalyzer(lex) : new SyntaxAnalyzer(lex);
+        }
+        else {
+            LexicalAnalyzer lex = new LexicalAnalyzer(file, StandardCharsets.UTF_8);
+            parser = tableDriven ? new TableDrivenSyntaxAnalyzer(lex) : new SyntaxAnalyzer(lex);
+        }
+
+        if (!parser.compile())
+            throw new IllegalStateException("generated program does not compile: " + parser.output());
+    }
+
+    private static void run(int blocks, int iterations) throws Exception {
+        Path program = SyntheticPrograms.writeTemporary(SyntheticPrograms.repeatedBlocks(blocks));
+        String file = program.toString();
+
+        long tokens = lexOnly(file);
+
+        // warm up
+        for (int i = 0; i < iterations; i++) {
+            lexOnly(file);
+            compile(file);
+        }
+
+        long lexTime = 0;
+        long compileTime = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            lexOnly(file);
+            lexTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            compile(file);
+            compileTime += System.nanoTime() - start;
+        }
+
+        double lexMs = lexTime / 1e6 / iterations;
+        double compileMs = compileTime / 1e6 / iterations;
+
+        System.out.println("parser              " + (tableDriven ? "table driven" : "recursive descent"));
+        System.out.println("lexical analyzer    " + (mapped ? "memory mapped" : "slu.compiler"));
+        System.out.println("statements          " + blocks * SyntheticPrograms.STATEMENTS_PER_BLOCK);
+        System.out.println("tokens              " + tokens);
+        System.out.printf("lexing              %.2f ms%n", lexMs);
+        System.out.printf("lexing and parsing  %.2f ms%n", compileMs);
+        System.out.printf("parser only         %.2f ms%n", compileMs - lexMs);
+        System.out.printf("throughput          %.0f tokens/s%n", tokens / (compileMs / 1000));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        tableDriven = args.length > 2 && args[2].equals("table");
+        mapped = args.length > 3 && args[3].equals("mapped");
+
+        Throwable[] failure = new Throwable[1];
+
+        Thread benchmark = new Thread(null, () -> {
+            try {
+                run(blocks, iterations);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "benchmark", STACK_SIZE);
+
+        benchmark.start();
+        benchmark.join();
+
+        if (failure[0] != null)
+            throw new RuntimeException(failure[0]);
+    }
+}
@@ -0,0 +1,451 @@
+package stackmachine.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Generates random programs by walking the grammar of
+// stackmachine.frontend.SyntaxAnalyzer, for testing the compiler at scale.
+// The same seed and parameters always give the same program. The parameters
+// are the maximum nesting of if, while, do and { } instructions, the maximum
+// nesting of parenthesized and negated subexpressions, the number of
+// identifiers and the rate of errors: the fraction of instructions that are
+// replaced with an erroneous one.
+//
+// Without errors the programs compile: every identifier is declared once,
+// before it is used. The programs are not meant to be run, loops may not end
+// and divisions may divide by zero.
+//
+// Without logic operators, the conditions and values are relational
+// expressions only, no &&, ||, !, true or false.
+//
+// With a loop bound, every while and do runs at most that many times, it
+// counts its iterations in a variable of its level, k2, k3 and so on, that
+// the rest of the program does not touch, and every division is by a
+// nonzero number. The counter is reset in a block with the loop, so that the
+// two can be the single instruction of an if or of another loop. The programs then end and can be run, to compare the output
+// of the optimizers and backends.
+//
+// usage: ProgramGenerator file size [seed [depth [expression depth [identifiers [error rate]]]]]
+// the size is in bytes, with an optional k, m or g suffix
+public class ProgramGenerator {
+
+    private static final String[] TYPES = { "int", "float", "boolean" };
+    private static final String[] RELATIONAL_OPERATORS = { "<", "<=", ">", ">=", "==", "!=" };
+    private static final String[] ADDITIVE_OPERATORS = { "+", "-" };
+    private static final String[] MULTIPLICATIVE_OPERATORS = { "*", "/", "%" };
+
+    private final Random random;
+    private final int depth;
+    private final int expressionDepth;
+    private final int identifiers;
+    private final double errorRate;
+    private final boolean logicOperators;
+    private final int loopBound;
+
+    // identifiers declared so far, v0 to v(declared - 1)
+    private int declared;
+    private int errors;
+    private int undeclared;
+
+    // a loop bound of 0 leaves the loops unbounded
+    public ProgramGenerator(long seed, int depth, int expressionDepth, int identifiers, double errorRate,
+                            boolean logicOperators, int loopBound) {
+        if (identifiers < 1)
+            throw new IllegalArgumentException("at least one identifier is needed");
+        if (loopBound < 0)
+            throw new IllegalArgumentException("the loop bound cannot be negative");
+
+        this.random = new Random(seed);
+        this.depth = depth;
+        this.expressionDepth = expressionDepth;
+        this.identifiers = identifiers;
+        this.errorRate = errorRate;
+        this.logicOperators = logicOperators;
+        this.loopBound = loopBound;
+    }
+
+    public ProgramGenerator(long seed, int depth, int expressionDepth, int identifiers, double errorRate,
+                            boolean logicOperators) {
+        this(seed, depth, expressionDepth, identifiers, errorRate, logicOperators, 0);
+    }
+
+    public ProgramGenerator(long seed, int depth, int expressionDepth, int identifiers, double errorRate) {
+        this(seed, depth, expressionDepth, identifiers, errorRate, true);
+    }
+
+    public ProgramGenerator(long seed) {
+        this(seed, 4, 3, 64, 0);
+    }
+
+    // errors injected in the programs generated so far
+    public int errors() {
+        return this.errors;
+    }
+
+    public String generate(long bytes) {
+        StringBuilder program = new StringBuilder((int) Math.min(bytes + 1024, Integer.MAX_VALUE - 8));
+
+        try {
+            write(program, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return program.toString();
+    }
+
+    // Writes a program of about the given size, it ends at the first top
+    // level instruction that reaches it. Returns the size written.
+    public long write(Appendable out, long bytes) throws IOException {
+        StringBuilder text = new StringBuilder();
+        long written = 0;
+
+        this.declared = 0;
+
+        text.append("void main {\n");
+
+        // the loop counters, for the loops up to the deepest level, each in
+        // the block that resets its counter
+        if (this.loopBound > 0 && this.depth > 0) {
+            indent(text, 1).append("int k2");
+
+            for (int level = 3; level <= this.depth + 1; level++)
+                text.append(", k").append(level);
+
+            text.append(";\n");
+        }
+
+        // a quarter of the identifiers is declared up front, the others by
+        // declarations among the instructions
+        while (this.declared < (this.identifiers + 3) / 4)
+            declaration(text, 1);
+
+        while (written + text.length() < bytes) {
+            out.append(text);
+            written += text.length();
+            text.setLength(0);
+
+            instruction(text, 1);
+        }
+
+        text.append("}\n");
+        out.append(text);
+
+        return written + text.length();
+    }
+
+    // instructions
+
+    private void instruction(StringBuilder text, int level) {
+        if (this.random.nextDouble() < this.errorRate) {
+            error(text, level);
+            return;
+        }
+
+        int choice = this.random.nextInt(100);
+
+        // only simple instructions at the deepest level
+        if (level > this.depth)
+            choice = choice % 60;
+
+        if (choice < 45)
+            assignment(text, level);
+        else if (choice < 52)
+            print(text, level);
+        else if (choice < 60) {
+            if (this.declared < this.identifiers)
+                declaration(text, level);
+            else
+                assignment(text, level);
+        }
+        else if (choice < 72) {
+            indent(text, level).append("if (");
+            logicExpression(text, this.expressionDepth);
+            text.append(")\n");
+            body(text, level);
+        }
+        else if (choice < 80) {
+            indent(text, level).append("if (");
+            logicExpression(text, this.expressionDepth);
+            text.append(")\n");
+            body(text, level);
+            indent(text, level).append("else\n");
+            body(text, level);
+        }
+        else if (choice < 90) {
+            int loop = startLoop(text, level);
+
+            indent(text, loop).append("while (");
+            loopCondition(text, loop);
+            text.append(")\n");
+            loopBody(text, loop);
+            endLoop(text, level);
+        }
+        else if (choice < 96) {
+            int loop = startLoop(text, level);
+
+            indent(text, loop).append("do\n");
+            loopBody(text, loop);
+            indent(text, loop).append("while (");
+            loopCondition(text, loop);
+            text.append(");\n");
+            endLoop(text, level);
+        }
+        else {
+            body(text, level - 1);
+        }
+    }
+
+    // the instruction of an if, while or do, a block of one to three
+    // instructions or, one time in four, a single instruction
+    private void body(StringBuilder text, int level) {
+        if (this.random.nextInt(4) == 0) {
+            instruction(text, level + 1);
+            return;
+        }
+
+        indent(text, level).append("{\n");
+
+        for (int i = 1 + this.random.nextInt(3); i > 0; i--)
+            instruction(text, level + 1);
+
+        indent(text, level).append("}\n");
+    }
+
+    // Opens the block of a bounded loop and resets its counter, returns the
+    // level of the loop
+    private int startLoop(StringBuilder text, int level) {
+        if (this.loopBound == 0)
+            return level;
+
+        indent(text, level).append("{\n");
+        indent(text, level + 1).append('k').append(level + 1).append(" = 0;\n");
+
+        return level + 1;
+    }
+
+    private void endLoop(StringBuilder text, int level) {
+        if (this.loopBound > 0)
+            indent(text, level).append("}\n");
+    }
+
+    // The condition of a while or a do. A bounded loop tests its counter
+    // first, and a logic term, so that no || skips the test.
+    private void loopCondition(StringBuilder text, int level) {
+        if (this.loopBound == 0) {
+            logicExpression(text, this.expressionDepth);
+            return;
+        }
+
+        text.append('k').append(level).append(" < ").append(this.loopBound).append(" && ");
+        logicTerm(text, this.expressionDepth);
+    }
+
+    // the body of a while or a do, that counts the iterations of a bounded loop
+    private void loopBody(StringBuilder text, int level) {
+        if (this.loopBound == 0) {
+            body(text, level);
+            return;
+        }
+
+        indent(text, level).append("{\n");
+        body(text, level + 1);
+        indent(text, level + 1).append('k').append(level).append(" = k").append(level).append(" + 1;\n");
+        indent(text, level).append("}\n");
+    }
+
+    // declares one to eight identifiers not declared yet, some with a value
+    private void declaration(StringBuilder text, int level) {
+        int before = this.declared;
+
+        indent(text, level).append(TYPES[this.random.nextInt(TYPES.length)]).append(' ');
+
+        for (int i = Math.min(1 + this.random.nextInt(8), this.identifiers - this.declared); i > 0; i--) {
+            text.append('v').append(this.declared++);
+
+            // the value is a number or an identifier of an earlier declaration
+            if (this.random.nextInt(3) == 0) {
+                text.append(" = ");
+
+                if (before > 0 && this.random.nextBoolean())
+                    text.append('v').append(this.random.nextInt(before));
+                else
+                    text.append(this.random.nextInt(1000));
+            }
+
+            if (i > 1)
+                text.append(", ");
+        }
+
+        text.append(";\n");
+    }
+
+    private void assignment(StringBuilder text, int level) {
+        indent(text, level).append(identifier()).append(" = ");
+        logicExpression(text, this.expressionDepth);
+        text.append(";\n");
+    }
+
+    private void print(StringBuilder text, int level) {
+        indent(text, level).append("print(").append(identifier()).append(");\n");
+    }
+
+    // an instruction with a syntax error, an undeclared identifier or an
+    // identifier declared twice
+    private void error(StringBuilder text, int level) {
+        this.errors++;
+
+        switch (this.random.nextInt(4)) {
+            case 0:
+                // missing semicolon
+                indent(text, level).append(identifier()).append(" = ");
+                expression(text, 0);
+                text.append('\n');
+                break;
+
+            case 1:
+                // missing closing parenthesis
+                indent(text, level).append("while (");
+                logicExpression(text, 0);
+                text.append('\n');
+                assignment(text, level + 1);
+                break;
+
+            case 2:
+                indent(text, level).append("undeclared").append(this.undeclared++).append(" = ");
+                expression(text, 0);
+                text.append(";\n");
+                break;
+
+            default:
+                indent(text, level).append("int ").append(identifier()).append(";\n");
+        }
+    }
+
+    // expressions, depth is the nesting left for parentheses and negations
+
+    private void logicExpression(StringBuilder text, int depth) {
+        logicTerm(text, depth);
+
+        while (this.logicOperators && this.random.nextInt(5) == 0) {
+            text.append(" || ");
+            logicTerm(text, depth);
+        }
+    }
+
+    private void logicTerm(StringBuilder text, int depth) {
+        logicFactor(text, depth);
+
+        while (this.logicOperators && this.random.nextInt(5) == 0) {
+            text.append(" && ");
+            logicFactor(text, depth);
+        }
+    }
+
+    private void logicFactor(StringBuilder text, int depth) {
+        int choice = this.logicOperators ? this.random.nextInt(20) : 2;
+
+        if (choice == 0 && depth > 0) {
+            text.append('!');
+            logicFactor(text, depth - 1);
+        }
+        else if (choice == 1)
+            text.append(this.random.nextBoolean() ? "true" : "false");
+        else {
+            expression(text, depth);
+
+            if (this.random.nextBoolean()) {
+                text.append(' ').append(RELATIONAL_OPERATORS[this.random.nextInt(RELATIONAL_OPERATORS.length)]).append(' ');
+                expression(text, depth);
+            }
+        }
+    }
+
+    private void expression(StringBuilder text, int depth) {
+        term(text, depth);
+
+        while (this.random.nextInt(3) == 0) {
+            text.append(' ').append(ADDITIVE_OPERATORS[this.random.nextInt(ADDITIVE_OPERATORS.length)]).append(' ');
+            term(text, depth);
+        }
+    }
+
+    private void term(StringBuilder text, int depth) {
+        factor(text, depth);
+
+        while (this.random.nextInt(3) == 0) {
+            String operator = MULTIPLICATIVE_OPERATORS[this.random.nextInt(MULTIPLICATIVE_OPERATORS.length)];
+            text.append(' ').append(operator).append(' ');
+
+            // programs meant to be run divide by nonzero numbers only
+            if (this.loopBound > 0 && !operator.equals("*"))
+                text.append(1 + this.random.nextInt(999));
+            else
+                factor(text, depth);
+        }
+    }
+
+    private void factor(StringBuilder text, int depth) {
+        int choice = this.random.nextInt(10);
+
+        if (choice < 2 && depth > 0) {
+            text.append('(');
+            expression(text, depth - 1);
+            text.append(')');
+        }
+        else if (choice < 7)
+            text.append(identifier());
+        else if (choice < 9)
+            text.append(this.random.nextInt(1000));
+        else
+            text.append(this.random.nextInt(100)).append('.').append(this.random.nextInt(100));
+    }
+
+    private String identifier() {
+        return "v" + this.random.nextInt(this.declared);
+    }
+
+    private static StringBuilder indent(StringBuilder text, int level) {
+        for (int i = 0; i < level; i++)
+            text.append("   ");
+
+        return text;
+    }
+
+    // a size in bytes, with an optional k, m or g suffix
+    public static long parseSize(String size) {
+        char unit = Character.toLowerCase(size.charAt(size.length() - 1));
+        int shift = unit == 'k' ? 10 : unit == 'm' ? 20 : unit == 'g' ? 30 : 0;
+
+        if (shift > 0)
+            size = size.substring(0, size.length() - 1);
+
+        return Long.parseLong(size) << shift;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: ProgramGenerator file size [seed [depth [expression depth [identifiers [error rate]]]]]");
+            return;
+        }
+
+        long bytes = parseSize(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int expressionDepth = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        int identifiers = args.length > 5 ? Integer.parseInt(args[5]) : 64;
+        double errorRate = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+
+        ProgramGenerator generator = new ProgramGenerator(seed, depth, expressionDepth, identifiers, errorRate);
+
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            long written = generator.write(out, bytes);
+            System.out.println(written + " bytes, " + generator.errors() + " errors");
+        }
+    }
+}
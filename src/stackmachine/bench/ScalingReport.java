@@ -0,0 +1,168 @@
+package stackmachine.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import stackmachine.frontend.ISyntaxAnalyzer;
+import stackmachine.frontend.MappedLexicalAnalyzer;
+import stackmachine.frontend.TableDrivenSyntaxAnalyzer;
+import stackmachine.frontend.TokenKind;
+import stackmachine.ir.Program;
+import stackmachine.optimizer.ConstantPropagation;
+import stackmachine.optimizer.PeepholeOptimizer;
+
+// Runs every phase of the compiler on generated programs of increasing size
+// and reports the time per byte of each phase, and the exponent of its growth:
+// the slope of log(time) over log(size), fitted over the sweep. A phase whose
+// exponent passes 1.2 is flagged as super-linear, and the report exits with
+// status 1, so that it can guard against regressions.
+//
+// Each phase keeps the best time of three runs, after five seconds of warm up
+// on the smallest program. The programs are compiled by the table driven
+// parser, whose stack is on the heap, so that sizes up to a gigabyte do not
+// overflow the thread stack like the recursive parser does.
+//
+// usage: ScalingReport [sizes...], in bytes with an optional k, m or g suffix
+public class ScalingReport {
+
+    private static final double SUPER_LINEAR = 1.2;
+    private static final int RUNS = 3;
+    private static final long WARM_UP = 5_000_000_000L;
+
+    private static final String[] PHASES = {
+            "lexing", "compiling", "intermediate code", "peephole", "constant propagation" };
+
+    // nanoseconds of each phase on a program
+    private static long[] measure(Path file) throws IOException {
+        long[] times = new long[PHASES.length];
+
+        for (int run = 0; run < RUNS; run++) {
+            long[] current = new long[PHASES.length];
+
+            long start = System.nanoTime();
+            MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(file);
+            long tokens = 0;
+
+            while (lex.next() != TokenKind.END_PROGRAM)
+                tokens++;
+
+            if (tokens == 0)
+                throw new IllegalStateException("empty program");
+
+            current[0] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ISyntaxAnalyzer parser = new TableDrivenSyntaxAnalyzer(new MappedLexicalAnalyzer(file));
+
+            if (!parser.compile())
+                throw new IllegalStateException("generated program does not compile: " + parser.diagnostics());
+
+            current[1] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+
+            try (Writer out = Writer.nullWriter()) {
+                parser.writeIntermediateCode(out);
+            }
+
+            current[2] = System.nanoTime() - start;
+
+            Program program = parser.compiledProgram();
+
+            start = System.nanoTime();
+            new PeepholeOptimizer().optimize(program);
+            current[3] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new ConstantPropagation().optimize(program);
+            current[4] = System.nanoTime() - start;
+
+            for (int phase = 0; phase < PHASES.length; phase++)
+                times[phase] = run == 0 ? current[phase] : Math.min(times[phase], current[phase]);
+        }
+
+        return times;
+    }
+
+    // least squares slope of log(time) over log(size)
+    private static double exponent(long[] sizes, long[][] times, int phase) {
+        int n = sizes.length;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+
+        for (int i = 0; i < n; i++) {
+            double x = Math.log(sizes[i]);
+            double y = Math.log(Math.max(times[i][phase], 1));
+
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+
+        return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+    }
+
+    private static boolean run(String[] args) throws IOException {
+        String[] arguments = args.length > 0 ? args : new String[] { "64k", "256k", "1m", "4m", "16m" };
+        long[] sizes = new long[arguments.length];
+        Path[] files = new Path[arguments.length];
+
+        for (int i = 0; i < arguments.length; i++) {
+            files[i] = Files.createTempFile("program_", ".txt");
+            files[i].toFile().deleteOnExit();
+
+            try (Writer out = Files.newBufferedWriter(files[i], StandardCharsets.UTF_8)) {
+                sizes[i] = new ProgramGenerator(1).write(out, ProgramGenerator.parseSize(arguments[i]));
+            }
+        }
+
+        if (sizes.length < 2)
+            throw new IllegalArgumentException("at least two sizes are needed");
+
+        // warm up for a few seconds
+        for (long end = System.nanoTime() + WARM_UP; System.nanoTime() < end; )
+            measure(files[0]);
+
+        long[][] times = new long[sizes.length][];
+
+        for (int i = 0; i < sizes.length; i++)
+            times[i] = measure(files[i]);
+
+        System.out.printf("%-22s", "ns/byte");
+
+        for (long size : sizes)
+            System.out.printf("%12s", size >= 1 << 20 ? (size >> 20) + " MB" : (size >> 10) + " KB");
+
+        System.out.printf("%10s%n", "exponent");
+
+        boolean superLinear = false;
+
+        for (int phase = 0; phase < PHASES.length; phase++) {
+            double exponent = exponent(sizes, times, phase);
+
+            System.out.printf("%-22s", PHASES[phase]);
+
+            for (int i = 0; i < sizes.length; i++)
+                System.out.printf("%12.2f", (double) times[i][phase] / sizes[i]);
+
+            System.out.printf("%10.2f", exponent);
+
+            if (exponent > SUPER_LINEAR) {
+                System.out.print("  super-linear");
+                superLinear = true;
+            }
+
+            System.out.println();
+        }
+
+        return superLinear;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (run(args))
+            System.exit(1);
+    }
+}
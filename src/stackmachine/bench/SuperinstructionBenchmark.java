@@ -0,0 +1,86 @@
+package stackmachine.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import stackmachine.backend.Interpreter;
+import stackmachine.backend.Superinstruction;
+import stackmachine.backend.SuperinstructionProfile;
+import stackmachine.ir.Program;
+
+// Profiles the superinstructions over a corpus, the sample programs found in
+// src and synthetic programs, selects the ones that save at least 1% of the
+// instructions, and runs the factorial loops of program_5.txt and program_6.txt
+// with and without them, counting dispatches and measuring time.
+//
+// usage: SuperinstructionBenchmark [outer iterations] [runs]
+public class SuperinstructionBenchmark {
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final double MINIMUM_SHARE = 0.01;
+
+    private static SuperinstructionProfile profile() throws Exception {
+        SuperinstructionProfile profile = new SuperinstructionProfile();
+
+        for (int i = 1; i <= 6; i++) {
+            Path sample = Paths.get("src", "program_" + i + ".txt");
+
+            // some of the samples have errors on purpose
+            if (Files.exists(sample)) {
+                try {
+                    profile.add(InterpreterBenchmark.compile(new String(Files.readAllBytes(sample), "UTF-8")));
+                } catch (IllegalStateException e) {
+                }
+            }
+        }
+
+        profile.add(InterpreterBenchmark.compile(SyntheticPrograms.repeatedBlocks(100)));
+        profile.add(InterpreterBenchmark.compile(SyntheticPrograms.factorialLoops(10, false)));
+        profile.add(InterpreterBenchmark.compile(SyntheticPrograms.factorialLoops(10, true)));
+
+        return profile;
+    }
+
+    private static void run(String name, Program program, Set<Superinstruction> superinstructions, int runs) {
+        Interpreter interpreter = new Interpreter(program, superinstructions);
+
+        // warm up
+        for (int i = 0; i < runs; i++)
+            interpreter.run(NO_OUTPUT);
+
+        long dispatches = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < runs; i++)
+            dispatches += interpreter.run(NO_OUTPUT);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-20s %-20s %,d dispatches in %.3f s%n",
+                name, superinstructions.isEmpty() ? "plain" : "superinstructions", dispatches, seconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        SuperinstructionProfile profile = profile();
+        profile.write(System.out);
+
+        Set<Superinstruction> selected = profile.select(MINIMUM_SHARE);
+        System.out.println("\nselected " + selected + "\n");
+
+        Program whileLoops = InterpreterBenchmark.compile(SyntheticPrograms.factorialLoops(iterations, false));
+        Program doLoops = InterpreterBenchmark.compile(SyntheticPrograms.factorialLoops(iterations, true));
+
+        run("while (program_5)", whileLoops, Set.of(), runs);
+        run("while (program_5)", whileLoops, selected, runs);
+        run("do while (program_6)", doLoops, Set.of(), runs);
+        run("do while (program_6)", doLoops, selected, runs);
+    }
+}
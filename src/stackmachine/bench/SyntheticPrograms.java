@@ -0,0 +1,186 @@
+package stackmachine.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Builds large but valid programs for the benchmarks by repeating a block of
+// statements that exercises every kind of instruction of the grammar.
+public class SyntheticPrograms {
+
+    private static final String BLOCK =
+            "   c = (a + b) * 3 - c % 7;\n" +
+            "   if (c >= 10 && a < 5) {\n" +
+            "      a = a + 1;\n" +
+            "   } else {\n" +
+            "      b = b * 2 % 97;\n" +
+            "   }\n" +
+            "   i = 0;\n" +
+            "   while (i < 3) {\n" +
+            "      i = i + 1;\n" +
+            "   }\n" +
+            "   do {\n" +
+            "      i = i - 1;\n" +
+            "   } while (i > 0);\n" +
+            "   print(c);\n";
+
+    // statements in one repetition of the block, counting the nested ones
+    public static final int STATEMENTS_PER_BLOCK = 10;
+
+    public static String repeatedBlocks(int blocks) {
+        StringBuilder program = new StringBuilder(64 + blocks * BLOCK.length());
+
+        program.append("void main {\n");
+        program.append("   int a = 1, b = 2, c = 3, i = 0;\n");
+
+        for (int i = 0; i < blocks; i++)
+            program.append(BLOCK);
+
+        program.append("}\n");
+
+        return program.toString();
+    }
+
+    // the factorial loop of program_5.txt (while) or program_6.txt (do ... while),
+    // computing 12! over and over in an outer loop of the given number of iterations
+    public static String factorialLoops(int iterations, boolean doWhile) {
+        StringBuilder program = new StringBuilder();
+
+        program.append("void main {\n");
+        program.append("   int n = 0, f = 1, i = 1, total = 0;\n\n");
+        program.append("   while (n < ").append(iterations).append(") {\n");
+        program.append("      f = 1;\n");
+        program.append("      i = 1;\n");
+
+        if (doWhile) {
+            program.append("      do {\n");
+            program.append("         f = f * i;\n");
+            program.append("         i = i + 1;\n");
+            program.append("      } while (i <= 12);\n");
+        }
+        else {
+            program.append("      while (i <= 12) {\n");
+            program.append("         f = f * i;\n");
+            program.append("         i = i + 1;\n");
+            program.append("      }\n");
+        }
+
+        program.append("      total = total + f - n;\n");
+        program.append("      n = n + 1;\n");
+        program.append("   }\n\n");
+        program.append("   print(total);\n");
+        program.append("}\n");
+
+        return program.toString();
+    }
+
+    // Nested while and do loops, for optimizer.LoopOptimizer: every loop
+    // counts from 0 to n by a random step, and its body adds to the sums
+    // expressions of n and of the counters of the loops around it, which do
+    // not change in the loop, and multiples of its own counter by a stride.
+    // n is set by a loop of its own, so that constant propagation does not
+    // fold it. The same seed always gives the same program.
+    public static String nestedLoops(long seed, int depth, int iterations) {
+        Random random = new Random(seed);
+        StringBuilder program = new StringBuilder();
+
+        program.append("void main {\n");
+        program.append("   int n, s0, s1, s2");
+
+        for (int level = 0; level < depth; level++)
+            program.append(", c").append(level);
+
+        program.append(";\n\n");
+        program.append("   do {\n");
+        program.append("      n = n + 1;\n");
+        program.append("   } while (n < ").append(iterations).append(");\n\n");
+
+        nestedLoop(program, random, 0, depth);
+
+        program.append("\n   print(s0);\n");
+        program.append("   print(s1);\n");
+        program.append("   print(s2);\n");
+        program.append("}\n");
+
+        return program.toString();
+    }
+
+    private static void nestedLoop(StringBuilder program, Random random, int level, int depth) {
+        String indent = "   ".repeat(level + 1);
+        String counter = "c" + level;
+        int stride = 2 + random.nextInt(15);
+        boolean doWhile = random.nextBoolean();
+
+        program.append(indent).append(counter).append(" = 0;\n");
+        program.append(indent).append(doWhile ? "do {\n" : "while (" + counter + " < n) {\n");
+
+        for (int sum = 0; sum < 3; sum++) {
+            program.append(indent).append("   s").append(sum).append(" = s").append(sum)
+                    .append(sum == 1 ? " - " : " + ").append(counter).append(" * ").append(stride);
+
+            // an expression of n or of an outer counter
+            int outer = random.nextInt(level + 1);
+            String invariant = outer == level ? "n" : "c" + outer;
+
+            program.append(" + (").append(invariant).append(" * ").append(1 + random.nextInt(9))
+                    .append(" - ").append(1 + random.nextInt(99)).append(") % ").append(2 + random.nextInt(30))
+                    .append(";\n");
+
+            if (sum == 1 && level + 1 < depth)
+                nestedLoop(program, random, level + 1, depth);
+        }
+
+        program.append(indent).append("   ").append(counter).append(" = ").append(counter)
+                .append(" + ").append(1 + random.nextInt(2)).append(";\n");
+        program.append(indent).append(doWhile ? "} while (" + counter + " < n);\n" : "}\n");
+    }
+
+    // an integer expression of the given number of parenthesized terms, for
+    // translator.PostfixTranslator, the divisors are never zero
+    public static String expression(int terms) {
+        StringBuilder expression = new StringBuilder();
+
+        for (int i = 0; i < terms; i++) {
+            if (i > 0)
+                expression.append(i % 2 == 0 ? " + " : " - ");
+
+            expression.append("(").append(i % 10).append(" * 3 - 8 / ").append(i % 4 + 1)
+                    .append(" + ").append(i).append(" % 7)");
+        }
+
+        return expression.toString();
+    }
+
+    // a program of declarations only, for variables.SyntaxAnalyzer, ten names
+    // per declaration of type int, float or boolean in turn
+    public static String declarations(int variables) {
+        String[] types = { "int", "float", "boolean" };
+        StringBuilder program = new StringBuilder();
+
+        program.append("void main {\n");
+
+        for (int i = 0; i < variables; i += 10) {
+            program.append("   ").append(types[i / 10 % 3]).append(' ');
+
+            for (int j = i; j < Math.min(i + 10, variables); j++)
+                program.append(j > i ? ", v" : "v").append(j);
+
+            program.append(";\n");
+        }
+
+        program.append("}\n");
+
+        return program.toString();
+    }
+
+    public static Path writeTemporary(String program) throws IOException {
+        Path file = Files.createTempFile("program_", ".txt");
+        file.toFile().deleteOnExit();
+
+        Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+}
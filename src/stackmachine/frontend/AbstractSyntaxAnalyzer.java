@@ -0,0 +1,322 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.ir.Program;
+
+// Token handling and results shared by the parser engines. Subclasses parse
+// the program and call the semantic actions of the code generator. Tokens are
+// read through a TokenCursor, the attributes of the current token are read
+// from the cursor, so a cursor that creates no Token objects, such as
+// MappedLexicalAnalyzer, parses without allocating per token.
+//
+// Compilations and renderings update CompilerMetrics and are recorded as
+// CompilationEvent and RenderingEvent by the JDK Flight Recorder. When the
+// recorder is off this costs a few clock reads per compilation; the lexing
+// and symbol table times, which need the clock around every token and every
+// identifier, are only measured when the compilation is recorded. That is
+// decided when compile() starts, so a recording started after the parser was
+// created still gets them, all but the first token, read by the constructor.
+//
+// Syntax errors are recovered from in panic mode: after an error the parser
+// reports nothing until it reaches the next instruction of a list, skipping
+// tokens up to a semicolon, which it consumes, a closed curly bracket or a
+// token that starts an instruction. An identifier only starts an instruction
+// at the start of a line, elsewhere it is more likely the rest of the broken
+// one. So one missing token gives one diagnostic, and the rest of the program
+// is still parsed and checked. The diagnostics are bounded, the parse stops at
+// the end of the program once there are as many as setMaxDiagnostics allows.
+public abstract class AbstractSyntaxAnalyzer implements ISyntaxAnalyzer {
+    protected TokenKind kind;
+    protected final TokenCursor cursor;
+
+    // the cursor tokens are read through, a TimedCursor over cursor while the
+    // compilation is recorded
+    private TokenCursor reader;
+    final CodeGenerator generator;
+    private long tokens;
+
+    // line of the token before the current one
+    private int previousLine;
+
+    // panic mode, errors are not reported until the parser synchronizes
+    private boolean recovering;
+
+    // the bound of setMaxDiagnostics, and whether setFailFast lowered it to one
+    private int maxDiagnostics;
+    private boolean failFast;
+
+    protected AbstractSyntaxAnalyzer(LexicalAnalyzer lex) {
+        this(new LexicalAnalyzerCursor(lex));
+    }
+
+    protected AbstractSyntaxAnalyzer(TokenCursor cursor) {
+        this.cursor = cursor;
+        this.reader = cursor;
+        this.generator = new CodeGenerator(this.cursor);
+        this.maxDiagnostics = CodeGenerator.MAX_DIAGNOSTICS;
+        this.failFast = false;
+        nextToken();
+    }
+
+    // parses the whole program
+    protected abstract void parse();
+
+    // Diagnostics to keep, CodeGenerator.MAX_DIAGNOSTICS by default. When they
+    // are reached the parser stops, as if the program ended there. Set before
+    // compiling.
+    public void setMaxDiagnostics(int maxDiagnostics) {
+        this.generator.setMaxDiagnostics(maxDiagnostics);
+        this.maxDiagnostics = maxDiagnostics;
+
+        if (this.failFast)
+            this.generator.setMaxDiagnostics(1);
+    }
+
+    // stops at the first error, turning it off again restores the maximum of
+    // setMaxDiagnostics
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+        this.generator.setMaxDiagnostics(failFast ? 1 : this.maxDiagnostics);
+    }
+
+    @Override
+    public boolean compile() {
+        CompilationEvent event = new CompilationEvent();
+        TimedCursor timed = event.isEnabled() ? new TimedCursor(this.cursor) : null;
+
+        this.reader = timed != null ? timed : this.cursor;
+        this.generator.timeSymbols(timed != null);
+
+        long start = System.nanoTime();
+
+        event.begin();
+        parse();
+        event.end();
+
+        this.reader = this.cursor;
+        this.generator.timeSymbols(false);
+
+        long nanos = System.nanoTime() - start;
+        int diagnostics = this.generator.diagnostics().size();
+        int instructions = this.generator.instructionCount();
+        int symbols = this.generator.symbolCount();
+
+        CompilerMetrics.compiled(diagnostics == 0, this.tokens, instructions, symbols, diagnostics, nanos);
+
+        if (event.shouldCommit()) {
+            long lexingTime = timed != null ? timed.nanos() : 0;
+            long symbolTime = this.generator.symbolNanos();
+
+            event.parser = getClass().getSimpleName();
+            event.compiled = diagnostics == 0;
+            event.tokens = this.tokens;
+            event.lexingTime = lexingTime;
+            event.symbolTime = symbolTime;
+            event.parsingTime = nanos - lexingTime - symbolTime;
+            event.instructions = instructions;
+            event.symbols = symbols;
+            event.diagnostics = diagnostics;
+            event.commit();
+        }
+
+        return diagnostics == 0;
+    }
+
+    @Override
+    public String output() {
+        StringBuilder output = new StringBuilder();
+
+        try {
+            writeOutput(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toString();
+    }
+
+    @Override
+    public String intermediateCode() {
+        StringBuilder code = new StringBuilder();
+
+        try {
+            writeIntermediateCode(code);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return code.toString();
+    }
+
+    @Override
+    public String symbolTable() {
+        StringBuilder symbols = new StringBuilder();
+
+        try {
+            writeSymbolTable(symbols);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return symbols.toString();
+    }
+
+    @Override
+    public void writeOutput(Appendable out) throws IOException {
+        RenderingEvent event = new RenderingEvent();
+        long start = System.nanoTime();
+
+        event.begin();
+        this.generator.writeOutput(out);
+        rendered(event, "output", start);
+    }
+
+    @Override
+    public void writeIntermediateCode(Appendable out) throws IOException {
+        RenderingEvent event = new RenderingEvent();
+        long start = System.nanoTime();
+
+        event.begin();
+        this.generator.writeIntermediateCode(out);
+        rendered(event, "intermediate code", start);
+    }
+
+    @Override
+    public void writeSymbolTable(Appendable out) throws IOException {
+        RenderingEvent event = new RenderingEvent();
+        long start = System.nanoTime();
+
+        event.begin();
+        this.generator.writeSymbolTable(out);
+        rendered(event, "symbol table", start);
+    }
+
+    @Override
+    public List<Diagnostic> diagnostics() {
+        return Collections.unmodifiableList(this.generator.diagnostics());
+    }
+
+    @Override
+    public Program compiledProgram() {
+        return this.generator.program();
+    }
+
+    private static void rendered(RenderingEvent event, String result, long start) {
+        event.end();
+        CompilerMetrics.rendered(System.nanoTime() - start);
+
+        if (event.shouldCommit()) {
+            event.result = result;
+            event.commit();
+        }
+    }
+
+    // reads the next token and its kind, the end of the program once the
+    // compilation stopped
+    protected void nextToken() {
+        if (this.generator.stopped()) {
+            this.kind = TokenKind.END_PROGRAM;
+            this.recovering = true;
+            return;
+        }
+
+        this.previousLine = this.cursor.getLine();
+        this.kind = this.reader.next();
+        this.tokens++;
+    }
+
+    // Java code for the grammar rules and the semantic actions
+    protected void match(TokenKind expected) {
+        if (this.kind == expected)
+            nextToken();
+        else
+            syntaxError(this.cursor.getLexeme(expected.getTokenName()) + " expected", expected);
+    }
+
+    // reports a syntax error at the current token and enters panic mode, the
+    // expected kind is null when several kinds would do
+    protected void syntaxError(String message, TokenKind expected) {
+        if (this.recovering)
+            return;
+
+        this.generator.syntaxError(message, expected, this.kind);
+        this.recovering = true;
+    }
+
+    // Called before each instruction of a list: leaves panic mode at the next
+    // instruction, and reports and skips the tokens that cannot start one.
+    // Returns whether an instruction follows, false at the end of the list.
+    protected boolean nextInstruction() {
+        synchronize();
+
+        while (!startsInstruction(this.kind)
+                && this.kind != TokenKind.CLOSED_CURLY_BRACKET && this.kind != TokenKind.END_PROGRAM) {
+            syntaxError("instruction expected", null);
+            synchronize();
+        }
+
+        return startsInstruction(this.kind);
+    }
+
+    // skips tokens up to the end of the broken instruction, see above; at the
+    // end of the program the parser stays in panic mode, the instructions and
+    // blocks left open are not reported
+    private void synchronize() {
+        if (!this.recovering)
+            return;
+
+        while (true) {
+            switch (this.kind) {
+                case SEMICOLON:
+                    nextToken();
+                    this.recovering = false;
+                    return;
+
+                case END_PROGRAM:
+                    return;
+
+                case ID:
+                    if (this.cursor.getLine() > this.previousLine) {
+                        this.recovering = false;
+                        return;
+                    }
+                    nextToken();
+                    break;
+
+                default:
+                    if (this.kind == TokenKind.CLOSED_CURLY_BRACKET || startsInstruction(this.kind)) {
+                        this.recovering = false;
+                        return;
+                    }
+                    nextToken();
+            }
+        }
+    }
+
+    private static boolean startsInstruction(TokenKind kind) {
+        switch (kind) {
+            case INT:
+            case FLOAT:
+            case BOOLEAN:
+            case ID:
+            case IF:
+            case WHILE:
+            case DO:
+            case PRINT:
+            case OPEN_CURLY_BRACKET:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // string based match, kept for callers that still work with token names
+    protected void match(String tokenName) {
+        match(TokenKind.forName(tokenName));
+    }
+}
@@ -0,0 +1,344 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import slu.compiler.LexicalAnalyzer;
+
+// Compiles many programs at once. Every file gets its own lexical analyzer
+// and parser, created and used by a single thread of a work stealing pool, so
+// nothing is shared between files and the throughput grows with the cores.
+// For each program, the intermediate code and the symbol table are written to
+// <name>.ir and <name>.sym in the output directory, and a summary of the
+// diagnostics and times of all the files is printed at the end. A program
+// that fails to compile has no outputs, those of an earlier build of it are
+// deleted so that they are not taken for its code. The output
+// directory mirrors the directories of the files, from the deepest one that
+// holds them all, so that programs of the same name in different directories
+// do not overwrite each other.
+//
+// usage: BatchCompiler [-o output directory] [-j threads] [-recursive]
+//                      [-cache directory] [-cache-size megabytes] files or directories...
+//
+// Directories are searched for .txt files, recursively. The table driven
+// parser is used unless -recursive is given, it does not overflow the stack on
+// long programs. With -cache, programs that did not change since they were
+// last compiled are taken from a CompilationCache instead.
+public class BatchCompiler {
+
+    // outcome of compiling one file
+    public static class Result {
+        private final Path file;
+        private final boolean compiled;
+        private final List<Diagnostic> diagnostics;
+        private final int instructions;
+        private final long nanos;
+
+        Result(Path file, boolean compiled, List<Diagnostic> diagnostics, int instructions, long nanos) {
+            this.file = file;
+            this.compiled = compiled;
+            this.diagnostics = diagnostics;
+            this.instructions = instructions;
+            this.nanos = nanos;
+        }
+
+        public Path getFile() {
+            return this.file;
+        }
+
+        public boolean isCompiled() {
+            return this.compiled;
+        }
+
+        public List<Diagnostic> getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        public int getInstructions() {
+            return this.instructions;
+        }
+
+        public long getNanos() {
+            return this.nanos;
+        }
+    }
+
+    private final Path output;
+    private final int threads;
+    private final boolean recursive;
+    private final CompilationCache cache;
+
+    // output and cache may be null, then nothing is written or cached
+    public BatchCompiler(Path output, int threads, boolean recursive, CompilationCache cache) {
+        this.output = output;
+        this.threads = threads;
+        this.recursive = recursive;
+        this.cache = cache;
+    }
+
+    public BatchCompiler(Path output, int threads, boolean recursive) {
+        this(output, threads, recursive, null);
+    }
+
+    // the .txt files of a list of files and directories
+    public static List<Path> programs(List<Path> paths) throws IOException {
+        List<Path> programs = new ArrayList<Path>();
+
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    programs.addAll(files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".txt"))
+                            .sorted().collect(Collectors.toList()));
+                }
+            }
+            else {
+                programs.add(path);
+            }
+        }
+
+        return programs;
+    }
+
+    // compiles the files in parallel, the results are in the order of the files
+    public List<Result> compile(List<Path> files) throws IOException, InterruptedException {
+        if (this.output != null)
+            Files.createDirectories(this.output);
+
+        // nothing is written without an output directory
+        List<Path> names = this.output != null ? outputNames(files) : null;
+        ExecutorService pool = Executors.newWorkStealingPool(this.threads);
+
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                Path name = names != null ? names.get(i) : null;
+                futures.add(pool.submit(() -> compile(file, name)));
+            }
+
+            List<Result> results = new ArrayList<Result>();
+
+            for (Future<Result> future : futures)
+                results.add(get(future));
+
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Result get(Future<Result> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // The names of the outputs of the files, their paths from the deepest
+    // directory that holds them all, without the .txt extension. A file
+    // given twice would be written by two threads at once.
+    private static List<Path> outputNames(List<Path> files) {
+        Path root = null;
+        Set<Path> seen = new HashSet<Path>();
+
+        for (Path file : files) {
+            Path path = file.toAbsolutePath().normalize();
+
+            if (!seen.add(path))
+                throw new IllegalArgumentException(file + " is given more than once");
+
+            Path directory = path.getParent();
+
+            if (root == null)
+                root = directory;
+
+            while (!directory.startsWith(root))
+                root = root.getParent();
+        }
+
+        List<Path> names = new ArrayList<Path>();
+
+        for (Path file : files) {
+            Path name = root.relativize(file.toAbsolutePath().normalize());
+            String base = name.getFileName().toString();
+
+            if (base.endsWith(".txt"))
+                name = name.resolveSibling(base.substring(0, base.length() - 4));
+
+            names.add(name);
+        }
+
+        return names;
+    }
+
+    // compiles one file, on the calling thread
+    public Result compile(Path file) {
+        String name = file.getFileName().toString();
+
+        if (name.endsWith(".txt"))
+            name = name.substring(0, name.length() - 4);
+
+        return compile(file, Paths.get(name));
+    }
+
+    // compiles one file, its outputs are named after the given path in the
+    // output directory
+    private Result compile(Path file, Path name) {
+        long start = System.nanoTime();
+
+        ISyntaxAnalyzer parser;
+
+        if (this.cache != null) {
+            parser = new CachingSyntaxAnalyzer(file, this.cache, this.recursive);
+        }
+        else {
+            LexicalAnalyzer lex = new LexicalAnalyzer(file.toString(), StandardCharsets.UTF_8);
+            parser = this.recursive ? new SyntaxAnalyzer(lex) : new TableDrivenSyntaxAnalyzer(lex);
+        }
+
+        boolean compiled = parser.compile();
+        int instructions = compiled ? parser.compiledProgram().size() : 0;
+
+        if (this.output != null) {
+            try {
+                if (compiled)
+                    write(parser, name);
+                else
+                    delete(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return new Result(file, compiled, parser.diagnostics(), instructions, System.nanoTime() - start);
+    }
+
+    private void write(ISyntaxAnalyzer parser, Path name) throws IOException {
+        Path base = this.output.resolve(name);
+
+        if (base.getParent() != null)
+            Files.createDirectories(base.getParent());
+
+        try (Writer out = Files.newBufferedWriter(Paths.get(base + ".ir"), StandardCharsets.UTF_8)) {
+            parser.writeIntermediateCode(out);
+        }
+
+        try (Writer out = Files.newBufferedWriter(Paths.get(base + ".sym"), StandardCharsets.UTF_8)) {
+            parser.writeSymbolTable(out);
+        }
+    }
+
+    // the outputs of an earlier build of a program that no longer compiles
+    private void delete(Path name) throws IOException {
+        Path base = this.output.resolve(name);
+
+        Files.deleteIfExists(Paths.get(base + ".ir"));
+        Files.deleteIfExists(Paths.get(base + ".sym"));
+    }
+
+    // diagnostics of every file that failed, then the totals
+    public static void summary(List<Result> results, long wallNanos, int threads, PrintStream out) {
+        int failed = 0;
+        int diagnostics = 0;
+        long instructions = 0;
+        long nanos = 0;
+
+        for (Result result : results) {
+            if (!result.isCompiled()) {
+                failed++;
+
+                for (Diagnostic diagnostic : result.getDiagnostics())
+                    out.println(result.getFile() + ": " + diagnostic);
+            }
+
+            diagnostics += result.getDiagnostics().size();
+            instructions += result.getInstructions();
+            nanos += result.getNanos();
+        }
+
+        double seconds = wallNanos / 1e9;
+
+        out.println();
+        out.printf("%d files, %d compiled, %d failed, %d diagnostics%n",
+                results.size(), results.size() - failed, failed, diagnostics);
+        out.printf("%,d instructions generated%n", instructions);
+        out.printf("%.3f s on %d threads, %.3f s of compile time, %.1f files/s%n",
+                seconds, threads, nanos / 1e9, results.size() / seconds);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean recursive = false;
+        Path cacheDirectory = null;
+        long cacheSize = 256;
+        List<Path> paths = new ArrayList<Path>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o":
+                    output = Paths.get(args[++i]);
+                    break;
+                case "-j":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-recursive":
+                    recursive = true;
+                    break;
+                case "-cache":
+                    cacheDirectory = Paths.get(args[++i]);
+                    break;
+                case "-cache-size":
+                    cacheSize = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+
+        if (paths.isEmpty()) {
+            System.out.println("usage: BatchCompiler [-o output directory] [-j threads] [-recursive]"
+                    + " [-cache directory] [-cache-size megabytes] files or directories...");
+            return;
+        }
+
+        List<Path> files = programs(paths);
+
+        CompilationCache cache = cacheDirectory != null ? new CompilationCache(cacheDirectory, cacheSize << 20) : null;
+
+        long start = System.nanoTime();
+        List<Result> results = new BatchCompiler(output, threads, recursive, cache).compile(files);
+
+        summary(results, System.nanoTime() - start, threads, System.out);
+
+        if (cache != null)
+            System.out.printf("cache: %d hits, %d misses%n", cache.hits(), cache.misses());
+    }
+}
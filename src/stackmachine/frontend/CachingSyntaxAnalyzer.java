@@ -0,0 +1,146 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.ir.Disassembler;
+import stackmachine.ir.Program;
+
+// Compiles a program file through a CompilationCache. When the cache has an
+// entry for the contents of the file, the program is neither read by the
+// lexical analyzer nor parsed, and all the results come from the entry.
+// Otherwise the bytes that were hashed for the key are compiled as usual, so
+// the results stored always match their key, and the results are stored.
+public class CachingSyntaxAnalyzer implements ISyntaxAnalyzer {
+    private final Path file;
+    private final CompilationCache cache;
+    private final boolean recursive;
+
+    private CompilationCache.Entry entry;
+    private boolean hit;
+
+    public CachingSyntaxAnalyzer(Path file, CompilationCache cache, boolean recursive) {
+        this.file = file;
+        this.cache = cache;
+        this.recursive = recursive;
+    }
+
+    public CachingSyntaxAnalyzer(Path file, CompilationCache cache) {
+        this(file, cache, false);
+    }
+
+    // whether the last compile found the program in the cache
+    public boolean isCacheHit() {
+        return this.hit;
+    }
+
+    @Override
+    public boolean compile() {
+        try {
+            byte[] source = Files.readAllBytes(this.file);
+            String key = CompilationCache.key(source);
+
+            try {
+                this.entry = this.cache.get(key);
+            } catch (IOException e) {
+                // a damaged entry is compiled again and replaced
+                this.entry = null;
+            }
+
+            this.hit = this.entry != null;
+
+            if (!this.hit) {
+                this.entry = compile(source);
+                this.cache.put(key, this.entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return this.entry.isCompiled();
+    }
+
+    private CompilationCache.Entry compile(byte[] source) {
+        LexicalAnalyzer lex = new LexicalAnalyzer(new String(source, StandardCharsets.UTF_8));
+        ISyntaxAnalyzer parser = this.recursive ? new SyntaxAnalyzer(lex) : new TableDrivenSyntaxAnalyzer(lex);
+
+        boolean compiled = parser.compile();
+        Program program;
+
+        try {
+            program = parser.compiledProgram();
+        } catch (IllegalStateException e) {
+            // the code of a program with errors may jump to labels that were never emitted
+            program = null;
+        }
+
+        return new CompilationCache.Entry(compiled, parser.diagnostics(), parser.symbolTable(), program);
+    }
+
+    @Override
+    public String output() {
+        StringBuilder output = new StringBuilder();
+
+        try {
+            writeOutput(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toString();
+    }
+
+    @Override
+    public String intermediateCode() {
+        StringBuilder code = new StringBuilder();
+
+        try {
+            writeIntermediateCode(code);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return code.toString();
+    }
+
+    @Override
+    public String symbolTable() {
+        return this.entry.getSymbolTable();
+    }
+
+    @Override
+    public void writeOutput(Appendable out) throws IOException {
+        for (Diagnostic diagnostic : this.entry.getDiagnostics())
+            out.append('\n').append(diagnostic.toString());
+    }
+
+    @Override
+    public void writeIntermediateCode(Appendable out) throws IOException {
+        if (this.entry.getProgram() != null)
+            Disassembler.write(this.entry.getProgram(), out);
+    }
+
+    @Override
+    public void writeSymbolTable(Appendable out) throws IOException {
+        out.append(this.entry.getSymbolTable());
+    }
+
+    @Override
+    public List<Diagnostic> diagnostics() {
+        return Collections.unmodifiableList(this.entry.getDiagnostics());
+    }
+
+    @Override
+    public Program compiledProgram() {
+        if (this.entry.getProgram() == null)
+            throw new IllegalStateException("no intermediate code for " + this.file);
+
+        return this.entry.getProgram();
+    }
+}
@@ -0,0 +1,689 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.util.*;
+
+import slu.compiler.*;
+import stackmachine.ir.Disassembler;
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+import stackmachine.ir.ProgramBuilder;
+
+// Semantic actions of the grammar documented in SyntaxAnalyzer: symbol table,
+// intermediate code and labels. Expressions are not evaluated while parsing,
+// constants are found by stackmachine.optimizer.ConstantPropagation, which
+// follows the control flow.
+//
+// The intermediate code is typed. The types of the values on the stack are
+// inferred as the code is generated, from the declared types of the variables
+// and the literals: an operator on two ints is an int operator, when either
+// operand is a float the other one is converted with i2f and the float
+// operator is used. Assignments convert the value to the type of the variable,
+// a float is truncated into an int, and a float condition is compared with 0.
+// Undeclared variables are ints.
+//
+// Logic expressions are compiled to jumping code. A logic factor jumps to the
+// false label of its term when it is false and falls through when it is true,
+// so && only goes on with the next factor, and || ends the term with a goto to
+// the true label of the expression and places the false label of the term
+// there, the next term runs when the previous one is false. The right operand
+// of && and || is skipped as soon as the left one decides. ! swaps the targets
+// of its factor and emits nothing, but gofalse is the only conditional jump,
+// so a negated value is compared with 0 first. true and false jump or fall
+// through. The labels are only generated when a jump needs them.
+//
+// The condition of an if, while or do falls through to the instruction when it
+// is true and the false label of its last term is the one that leaves it. An
+// assigned logic expression materializes its value, an int 1 or 0, an
+// expression without logic operators keeps its value and its type.
+//
+// Both parser engines, SyntaxAnalyzer and TableDrivenSyntaxAnalyzer, call these
+// actions in the same order, so they produce the same intermediate code.
+class CodeGenerator {
+    // diagnostics kept by default, the compilation stops when there are that many
+    static final int MAX_DIAGNOSTICS = 100;
+
+    private ILexicalAnalyzer lexicalAnalyzer;
+    private ProgramBuilder code;
+    private List<Diagnostic> diagnostics;
+    private int maxDiagnostics;
+    private int label;
+
+    // variables are numbered by the slot ProgramBuilder gives them when they are
+    // declared, a null type means the variable is not declared
+    private DataType[] types;
+    private int symbols;
+
+    // time spent in the symbol table, only measured when timeSymbols is on,
+    // see AbstractSyntaxAnalyzer
+    private boolean timeSymbols;
+    private long symbolNanos;
+
+    // type of the declaration being parsed
+    private String type;
+
+    // slot of the variable of the assignment being parsed, or -1
+    private int target;
+
+    // types of the values the code leaves on the stack, true for a float
+    private boolean[] stack;
+    private int stackSize;
+
+    // labels of the if, while and do instructions being parsed, innermost on top
+    private int[] labels;
+    private int labelCount;
+
+    // lines of the while and do instructions being parsed, innermost on top,
+    // the jump back to the test belongs to the loop, not to the line after it
+    private int[] loopLines;
+    private int loopCount;
+
+    // The logic expression being parsed, there is one at a time, factors do not
+    // nest logic expressions. The labels it jumps to when it is true and when
+    // its current term is false, or -1 until a jump needs them.
+    private int trueLabel;
+    private int falseLabel;
+
+    // whether the expression has && or || operators
+    private boolean logicOperators;
+
+    // number of ! of the current logic factor
+    private int negations;
+
+    // 1 or 0 when the current logic factor is true or false, -1 when it is a
+    // value on the stack
+    private int literal;
+
+    // declarations and uses of variables in parse order, when the checks of the
+    // symbol table are left to the caller, see deferSymbolChecks
+    private List<SymbolCheck> symbolChecks;
+
+    // types of the variables declared before the code being parsed, with deferSymbolChecks
+    private Map<String, DataType> declared;
+
+    CodeGenerator(ILexicalAnalyzer lex) {
+        this.lexicalAnalyzer = lex;
+        this.code = new ProgramBuilder(lex::getLine);
+        this.diagnostics = new ArrayList<Diagnostic>();
+        this.maxDiagnostics = MAX_DIAGNOSTICS;
+        this.label = 0;
+        this.types = new DataType[16];
+        this.stack = new boolean[16];
+        this.stackSize = 0;
+        this.labels = new int[16];
+        this.labelCount = 0;
+        this.loopLines = new int[16];
+        this.loopCount = 0;
+        this.trueLabel = -1;
+        this.falseLabel = -1;
+        this.literal = -1;
+    }
+
+    // output
+
+    List<Diagnostic> diagnostics() {
+        return this.diagnostics;
+    }
+
+    void writeOutput(Appendable out) throws IOException {
+        for (Diagnostic diagnostic : this.diagnostics)
+            out.append('\n').append(diagnostic.toString());
+    }
+
+    Program program() {
+        return this.code.build();
+    }
+
+    void writeIntermediateCode(Appendable out) throws IOException {
+        Disassembler.write(program(), out);
+    }
+
+    void writeSymbolTable(Appendable out) throws IOException {
+        for (int slot = 0; slot < this.code.variableCount(); slot++)
+            if (this.types[slot] != null)
+                out.append("<'").append(this.code.variableName(slot)).append("', ")
+                        .append(this.types[slot].toString()).append("> \n");
+    }
+
+    int instructionCount() {
+        return this.code.size();
+    }
+
+    // variables declared so far
+    int symbolCount() {
+        return this.symbols;
+    }
+
+    // starts or stops measuring the time spent in the symbol table, from zero
+    void timeSymbols(boolean timeSymbols) {
+        this.timeSymbols = timeSymbols;
+
+        if (timeSymbols)
+            this.symbolNanos = 0;
+    }
+
+    long symbolNanos() {
+        return this.symbolNanos;
+    }
+
+    // number of labels generated so far
+    int generatedLabels() {
+        return this.label;
+    }
+
+    // Declarations and uses are recorded instead of checked against the symbol
+    // table, for IncrementalCompiler, which parses a statement without the
+    // declarations of the statements before it and checks them when it links.
+    // The types of those declarations are given, the code depends on them.
+    void deferSymbolChecks(Map<String, DataType> declared) {
+        this.symbolChecks = new ArrayList<SymbolCheck>();
+        this.declared = declared;
+    }
+
+    List<SymbolCheck> symbolChecks() {
+        return this.symbolChecks;
+    }
+
+    void setMaxDiagnostics(int maxDiagnostics) {
+        if (maxDiagnostics < 1)
+            throw new IllegalArgumentException("at least one diagnostic must be kept");
+
+        this.maxDiagnostics = maxDiagnostics;
+    }
+
+    // true once the maximum number of diagnostics is reached, the parser then
+    // stops and the errors that follow are not recorded
+    boolean stopped() {
+        return this.diagnostics.size() >= this.maxDiagnostics;
+    }
+
+    // records a compiler error at the current line
+    void error(String message) {
+        syntaxError(message, null, null);
+    }
+
+    // records a syntax error at the current line, with the kinds of token
+    // expected and found
+    void syntaxError(String message, TokenKind expected, TokenKind found) {
+        if (!stopped())
+            this.diagnostics.add(new Diagnostic(this.lexicalAnalyzer.getLine(), message, expected, found));
+    }
+
+    // program
+
+    void halt() {
+        // add end to intermediate code
+        this.code.emit(Opcode.HALT);
+    }
+
+    // declarations
+
+    void type(TokenKind type) {
+        this.type = type.getTokenName();
+    }
+
+    // the actions that take the name of an identifier get null when the token is not one
+
+    void declare(String name) {
+        if (name != null)
+            addSymbol(name, new PrimitiveType(this.type));
+    }
+
+    // assignments
+
+    void assignmentTarget(String name) {
+        if (name != null) {
+            this.target = slot(name);
+
+            // add intermediate code
+            this.code.emit(Opcode.LVALUE, this.target);
+        }
+        else {
+            this.target = -1;
+        }
+    }
+
+    void assignment() {
+        value();
+        boolean real = pop();
+
+        // convert the value to the type of the variable
+        if (this.target >= 0)
+            convert(real, isReal(this.target), 0);
+
+        // add intermediate code
+        this.code.emit(Opcode.ASSIGN);
+
+        if (this.target >= 0 && this.symbolChecks != null)
+            check(false, this.code.variableName(this.target), null);
+        else if (this.target >= 0 && this.types[this.target] == null)
+            error("identifier '" + this.code.variableName(this.target) + "' is not declared");
+    }
+
+    // instructions
+
+    void ifCondition() {
+        pushLabel(condition());
+    }
+
+    void elseBranch() {
+        int out = popLabel();
+        int label_else = newLabel();
+        this.code.jump(Opcode.GOTO, label_else);
+        this.code.label(out);
+        pushLabel(label_else);
+    }
+
+    void endElse() {
+        this.code.label(popLabel());
+    }
+
+    void endIf() {
+        this.code.label(popLabel());
+    }
+
+    void whileTest() {
+        int test = newLabel();
+        this.code.label(test);
+        pushLabel(test);
+        pushLoopLine();
+    }
+
+    void whileCondition() {
+        pushLabel(condition());
+    }
+
+    void endWhile() {
+        int out = popLabel();
+        int test = popLabel();
+        this.code.setLine(popLoopLine());
+        this.code.jump(Opcode.GOTO, test);
+        this.code.label(out);
+        this.code.setLine(0);
+    }
+
+    void doTest() {
+        int test = newLabel();
+        this.code.label(test);
+        pushLabel(test);
+        pushLoopLine();
+    }
+
+    void endDo() {
+        int test = popLabel();
+        int out = condition();
+        this.code.setLine(popLoopLine());
+        this.code.jump(Opcode.GOTO, test);
+        this.code.label(out);
+        this.code.setLine(0);
+    }
+
+    void print(String name) {
+        if (name != null) {
+            int slot = slot(name);
+            this.code.emit(isReal(slot) ? Opcode.FLOAT_PRINT : Opcode.PRINT, slot);
+        }
+    }
+
+    // logic expressions
+
+    void not() {
+        this.negations++;
+    }
+
+    void literal(boolean value) {
+        this.literal = value ? 1 : 0;
+    }
+
+    // after the left operand of &&
+    void and() {
+        this.logicOperators = true;
+        branch();
+    }
+
+    // after the left operand of ||
+    void or() {
+        this.logicOperators = true;
+        branch();
+        this.code.jump(Opcode.GOTO, trueLabel());
+
+        // the next term starts where the previous one is false
+        if (this.falseLabel >= 0)
+            this.code.label(this.falseLabel);
+
+        this.falseLabel = -1;
+    }
+
+    // Ends the logic expression of a condition, the code falls through when it
+    // is true, returns the label it jumps to when it is false
+    private int condition() {
+        branch();
+
+        if (this.trueLabel >= 0)
+            this.code.label(this.trueLabel);
+
+        int out = falseLabel();
+        endLogicExpression();
+
+        return out;
+    }
+
+    // Ends the logic expression of an assignment, leaving its value on the stack
+    private void value() {
+        if (!this.logicOperators && this.literal < 0) {
+            // a value, ! makes it an int 1 or 0
+            if (this.negations > 0) {
+                compareWithZero(pop(), negated() ? Opcode.EQUALS : Opcode.NOT_EQUALS);
+                push(false);
+            }
+        }
+        else if (!this.logicOperators) {
+            this.code.pushInteger(negated() ? 1 - this.literal : this.literal);
+            push(false);
+        }
+        else {
+            branch();
+
+            if (this.trueLabel >= 0)
+                this.code.label(this.trueLabel);
+
+            this.code.pushInteger(1);
+
+            if (this.falseLabel >= 0) {
+                int end = newLabel();
+                this.code.jump(Opcode.GOTO, end);
+                this.code.label(this.falseLabel);
+                this.code.pushInteger(0);
+                this.code.label(end);
+            }
+
+            push(false);
+        }
+
+        endLogicExpression();
+    }
+
+    // Ends a logic factor with a jump to the false label of its term when it is
+    // false, gofalse takes an int, a float is compared with 0
+    private void branch() {
+        if (this.literal < 0) {
+            boolean real = pop();
+
+            if (negated())
+                compareWithZero(real, Opcode.EQUALS);
+            else if (real)
+                compareWithZero(true, Opcode.NOT_EQUALS);
+
+            this.code.jump(Opcode.GOFALSE, falseLabel());
+        }
+        else if ((this.literal == 1) == negated()) {
+            this.code.jump(Opcode.GOTO, falseLabel());
+        }
+
+        this.negations = 0;
+        this.literal = -1;
+    }
+
+    // ! swaps the targets of a factor, two of them cancel out
+    private boolean negated() {
+        return this.negations % 2 == 1;
+    }
+
+    private void compareWithZero(boolean real, int opcode) {
+        if (real) {
+            this.code.pushReal(0);
+            this.code.emit(Opcode.floatVersion(opcode));
+        }
+        else {
+            this.code.pushInteger(0);
+            this.code.emit(opcode);
+        }
+    }
+
+    private void endLogicExpression() {
+        this.trueLabel = -1;
+        this.falseLabel = -1;
+        this.logicOperators = false;
+        this.negations = 0;
+        this.literal = -1;
+    }
+
+    // expressions
+
+    void relational(TokenKind operator) {
+        int opcode;
+
+        switch (operator) {
+            case LESS_THAN:
+                opcode = Opcode.LESS_THAN;
+                break;
+            case LESS_EQUALS:
+                opcode = Opcode.LESS_EQUALS;
+                break;
+            case GREATER_THAN:
+                opcode = Opcode.GREATER_THAN;
+                break;
+            case GREATER_EQUALS:
+                opcode = Opcode.GREATER_EQUALS;
+                break;
+            case EQUALS:
+                opcode = Opcode.EQUALS;
+                break;
+            case NOT_EQUALS:
+                opcode = Opcode.NOT_EQUALS;
+                break;
+            default:
+                throw new IllegalArgumentException("not a relational operator: " + operator);
+        }
+
+        // add intermediate code, the result is an int
+        binary(opcode);
+        push(false);
+    }
+
+    void arithmetic(TokenKind operator) {
+        int opcode;
+
+        switch (operator) {
+            case ADD:
+                opcode = Opcode.ADD;
+                break;
+            case SUBTRACT:
+                opcode = Opcode.SUBTRACT;
+                break;
+            case MULTIPLY:
+                opcode = Opcode.MULTIPLY;
+                break;
+            case DIVIDE:
+                opcode = Opcode.DIVIDE;
+                break;
+            case REMAINDER:
+                opcode = Opcode.REMAINDER;
+                break;
+            default:
+                throw new IllegalArgumentException("not an arithmetic operator: " + operator);
+        }
+
+        // add intermediate code, the result has the type of the operands
+        push(binary(opcode));
+    }
+
+    // Emits an operator on the two values on top of the stack, converting the
+    // int one when the other is a float, returns whether it is a float operator
+    private boolean binary(int opcode) {
+        boolean b = pop();
+        boolean a = pop();
+
+        if (a == b) {
+            this.code.emit(a ? Opcode.floatVersion(opcode) : opcode);
+            return a;
+        }
+
+        convert(a, true, 1);
+        convert(b, true, 0);
+        this.code.emit(Opcode.floatVersion(opcode));
+
+        return true;
+    }
+
+    void variable(String name) {
+        int slot = slot(name);
+
+        if (this.symbolChecks != null)
+            check(false, name, null);
+        else if (this.types[slot] == null)
+            error("identifier '" + name + "' is not declared");
+
+        // add intermediate code
+        this.code.emit(Opcode.RVALUE, slot);
+        push(isReal(slot));
+    }
+
+    void integer(int value) {
+        // add intermediate code
+        this.code.pushInteger(value);
+        push(false);
+    }
+
+    void real(float value) {
+        // add intermediate code
+        this.code.pushReal(value);
+        push(true);
+    }
+
+    // types
+
+    // converts the value at a depth of the stack from one type to the other
+    private void convert(boolean from, boolean to, int depth) {
+        if (!from && to)
+            this.code.emit(Opcode.INT_TO_FLOAT, depth);
+        else if (from && !to)
+            this.code.emit(Opcode.FLOAT_TO_INT);
+    }
+
+    private void push(boolean real) {
+        if (this.stackSize == this.stack.length)
+            this.stack = Arrays.copyOf(this.stack, 2 * this.stackSize);
+
+        this.stack[this.stackSize++] = real;
+    }
+
+    // the code of a program with errors may pop values it did not push, they
+    // are taken as ints
+    private boolean pop() {
+        return this.stackSize > 0 && this.stack[--this.stackSize];
+    }
+
+    // whether a variable is a float, the first declaration of a name decides
+    private boolean isReal(int slot) {
+        DataType type = this.types[slot];
+
+        if (this.declared != null && this.declared.containsKey(this.code.variableName(slot)))
+            type = this.declared.get(this.code.variableName(slot));
+
+        return type != null && type.getType().equals(TokenKind.FLOAT.getTokenName());
+    }
+
+    // labels
+
+    // generates a new label for intermediate code
+    private int newLabel() {
+        int newLabel = this.label;
+        this.label++;
+        return newLabel;
+    }
+
+    private int trueLabel() {
+        if (this.trueLabel < 0)
+            this.trueLabel = newLabel();
+
+        return this.trueLabel;
+    }
+
+    private int falseLabel() {
+        if (this.falseLabel < 0)
+            this.falseLabel = newLabel();
+
+        return this.falseLabel;
+    }
+
+    private void pushLabel(int label) {
+        if (this.labelCount == this.labels.length)
+            this.labels = Arrays.copyOf(this.labels, 2 * this.labels.length);
+
+        this.labels[this.labelCount++] = label;
+    }
+
+    private int popLabel() {
+        return this.labels[--this.labelCount];
+    }
+
+    private void pushLoopLine() {
+        if (this.loopCount == this.loopLines.length)
+            this.loopLines = Arrays.copyOf(this.loopLines, 2 * this.loopLines.length);
+
+        this.loopLines[this.loopCount++] = this.lexicalAnalyzer.getLine();
+    }
+
+    private int popLoopLine() {
+        return this.loopLines[--this.loopCount];
+    }
+
+    // symbols
+
+    // slot of a variable, undeclared variables get one too so the code stays well formed
+    private int slot(String name) {
+        if (!this.timeSymbols)
+            return lookUp(name);
+
+        long start = System.nanoTime();
+        int slot = lookUp(name);
+        this.symbolNanos += System.nanoTime() - start;
+
+        return slot;
+    }
+
+    private int lookUp(String name) {
+        int slot = this.code.variable(name);
+
+        if (slot == this.types.length)
+            this.types = Arrays.copyOf(this.types, 2 * slot);
+
+        return slot;
+    }
+
+    private void addSymbol(String name, PrimitiveType type) {
+        int slot = slot(name);
+
+        if (this.symbolChecks != null)
+            check(true, name, type);
+
+        if (this.types[slot] == null) {
+            this.types[slot] = type;
+            this.symbols++;
+            this.code.setReal(slot, isReal(slot));
+        }
+        else if (this.symbolChecks == null) {
+            error("identifier '" + name + "' is already declared");
+        }
+    }
+
+    private void check(boolean declaration, String name, DataType type) {
+        this.symbolChecks.add(new SymbolCheck(declaration, name, type, this.lexicalAnalyzer.getLine()));
+    }
+
+    // a declaration or a use of a variable, with the line where it was parsed
+    static class SymbolCheck {
+        final boolean declaration;
+        final String name;
+        final DataType type;
+        final int line;
+
+        SymbolCheck(boolean declaration, String name, DataType type, int line) {
+            this.declaration = declaration;
+            this.name = name;
+            this.type = type;
+            this.line = line;
+        }
+    }
+}
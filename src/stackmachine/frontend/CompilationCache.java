@@ -0,0 +1,371 @@
+package stackmachine.frontend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import stackmachine.ir.Program;
+
+// On disk cache of compiled programs. An entry is keyed by the SHA-256 of the
+// source bytes and COMPILER_VERSION, and holds the intermediate code, the
+// symbol table and the diagnostics in a binary file named after the key.
+//
+// Reading an entry updates its modification time, and when the entries take
+// more than the maximum size the least recently used ones are deleted, down to
+// nine tenths of it. The total size is counted in memory from a scan of the
+// directory when the cache is opened, so only an eviction lists the entries
+// again. Entries are written to a temporary file and moved in place, so
+// several threads or processes can share a cache directory; the scan of an
+// eviction also takes in the entries of the others.
+public class CompilationCache {
+
+    // change whenever the compiler produces different code or diagnostics, old entries then no longer match
+    public static final String COMPILER_VERSION = "stackmachine 25";
+
+    private static final int MAGIC = 0x534D4334; // SMC4
+    private static final String SUFFIX = ".smc";
+    private static final TokenKind[] KINDS = TokenKind.values();
+
+    // a compiled program as stored in the cache
+    public static class Entry {
+        private final boolean compiled;
+        private final List<Diagnostic> diagnostics;
+        private final String symbolTable;
+        private final Program program;
+
+        public Entry(boolean compiled, List<Diagnostic> diagnostics, String symbolTable, Program program) {
+            this.compiled = compiled;
+            this.diagnostics = diagnostics;
+            this.symbolTable = symbolTable;
+            this.program = program;
+        }
+
+        public boolean isCompiled() {
+            return this.compiled;
+        }
+
+        public List<Diagnostic> getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        public String getSymbolTable() {
+            return this.symbolTable;
+        }
+
+        // null when no intermediate code could be built
+        public Program getProgram() {
+            return this.program;
+        }
+    }
+
+    private final Path directory;
+    private final long maximumSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // bytes taken by the entries
+    private final AtomicLong size = new AtomicLong();
+
+    public CompilationCache(Path directory, long maximumSize) throws IOException {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+
+        Files.createDirectories(directory);
+
+        long size = 0;
+
+        for (long[] entry : entries(list()))
+            size += entry[2];
+
+        this.size.set(size);
+    }
+
+    public long hits() {
+        return this.hits.get();
+    }
+
+    public long misses() {
+        return this.misses.get();
+    }
+
+    // key of a program, as a hexadecimal string
+    public static String key(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(COMPILER_VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source);
+
+            StringBuilder key = new StringBuilder();
+
+            for (byte b : digest.digest())
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the entry of a key, or null
+    public Entry get(String key) throws IOException {
+        Path file = this.directory.resolve(key + SUFFIX);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            Entry entry = read(new DataInputStream(in));
+
+            if (entry == null) {
+                this.misses.incrementAndGet();
+                return null;
+            }
+
+            // most recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            this.hits.incrementAndGet();
+
+            return entry;
+        } catch (NoSuchFileException e) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, Entry entry) throws IOException {
+        Path file = this.directory.resolve(key + SUFFIX);
+        Path temporary = Files.createTempFile(this.directory, key, ".tmp");
+
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                write(entry, new DataOutputStream(out));
+            }
+
+            long added = Files.size(temporary);
+
+            try {
+                added -= Files.size(file);
+            } catch (NoSuchFileException e) {
+                // a new entry
+            }
+
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (this.size.addAndGet(added) > this.maximumSize)
+                evict();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private List<Path> list() throws IOException {
+        try (Stream<Path> entries = Files.list(this.directory)) {
+            return entries.filter(path -> path.toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+    }
+
+    // modification time, index and size of each of the files that still exist
+    private static List<long[]> entries(List<Path> files) throws IOException {
+        List<long[]> entries = new ArrayList<long[]>();
+
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                entries.add(new long[] { Files.getLastModifiedTime(files.get(i)).toMillis(), i, Files.size(files.get(i)) });
+            } catch (NoSuchFileException e) {
+                // evicted by someone else
+            }
+        }
+
+        return entries;
+    }
+
+    // Deletes the least recently used entries until the cache takes nine
+    // tenths of its maximum size, so that the next evictions are some puts
+    // away. The sizes come from the directory, which also counts the entries
+    // that other processes put.
+    private synchronized void evict() throws IOException {
+        if (this.size.get() <= this.maximumSize)
+            return;
+
+        List<Path> files = list();
+        List<long[]> times = entries(files);
+        long size = 0;
+
+        for (long[] time : times)
+            size += time[2];
+
+        Collections.sort(times, (a, b) -> Long.compare(a[0], b[0]));
+
+        long target = this.maximumSize / 10 * 9;
+
+        for (long[] time : times) {
+            if (size <= target)
+                break;
+
+            Files.deleteIfExists(files.get((int) time[1]));
+            size -= time[2];
+        }
+
+        this.size.set(size);
+    }
+
+    // binary format
+
+    private static void write(Entry entry, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeBoolean(entry.compiled);
+
+        out.writeInt(entry.diagnostics.size());
+
+        for (Diagnostic diagnostic : entry.diagnostics) {
+            out.writeInt(diagnostic.getLine());
+            writeString(diagnostic.getMessage(), out);
+            out.writeByte(kind(diagnostic.getExpected()));
+            out.writeByte(kind(diagnostic.getFound()));
+        }
+
+        writeString(entry.symbolTable, out);
+
+        Program program = entry.program;
+        out.writeBoolean(program != null);
+
+        if (program != null) {
+            int[] code = program.getCode();
+            out.writeInt(code.length);
+
+            for (int value : code)
+                out.writeInt(value);
+
+            int[] constants = program.getConstants();
+            out.writeInt(constants.length);
+
+            for (int i = 0; i < constants.length; i++) {
+                out.writeInt(constants[i]);
+                out.writeBoolean(program.isReal(i));
+            }
+
+            String[] variables = program.getVariables();
+            out.writeInt(variables.length);
+
+            for (int i = 0; i < variables.length; i++) {
+                writeString(variables[i], out);
+                out.writeBoolean(program.isRealVariable(i));
+            }
+
+            // the line table, one line per instruction, or -1 when there is none
+            out.writeInt(program.hasLines() ? program.size() : -1);
+
+            for (int i = 0; program.hasLines() && i < program.size(); i++)
+                out.writeInt(program.line(i));
+        }
+    }
+
+    // null when the file is not an entry of this format
+    private static Entry read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            return null;
+
+        boolean compiled = in.readBoolean();
+
+        int count = in.readInt();
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>(count);
+
+        for (int i = 0; i < count; i++) {
+            int line = in.readInt();
+            String message = readString(in);
+            byte expected = in.readByte();
+            byte found = in.readByte();
+
+            if (!isKind(expected) || !isKind(found))
+                return null;
+
+            diagnostics.add(new Diagnostic(line, message, kind(expected), kind(found)));
+        }
+
+        String symbolTable = readString(in);
+        Program program = null;
+
+        if (in.readBoolean()) {
+            int[] code = new int[in.readInt()];
+
+            for (int i = 0; i < code.length; i++)
+                code[i] = in.readInt();
+
+            int[] constants = new int[in.readInt()];
+            boolean[] realConstants = new boolean[constants.length];
+
+            for (int i = 0; i < constants.length; i++) {
+                constants[i] = in.readInt();
+                realConstants[i] = in.readBoolean();
+            }
+
+            String[] variables = new String[in.readInt()];
+            boolean[] realVariables = new boolean[variables.length];
+
+            for (int i = 0; i < variables.length; i++) {
+                variables[i] = readString(in);
+                realVariables[i] = in.readBoolean();
+            }
+
+            int lineCount = in.readInt();
+            int[] lines = lineCount < 0 ? null : new int[lineCount];
+
+            for (int i = 0; i < lineCount; i++)
+                lines[i] = in.readInt();
+
+            program = new Program(code, constants, realConstants, variables, realVariables, lines);
+        }
+
+        return new Entry(compiled, diagnostics, symbolTable, program);
+    }
+
+    // kinds of the diagnostics by ordinal, -1 for none; the compiler version
+    // changes with the order of TokenKind
+    private static int kind(TokenKind kind) {
+        return kind == null ? -1 : kind.ordinal();
+    }
+
+    private static boolean isKind(byte ordinal) {
+        return ordinal >= -1 && ordinal < KINDS.length;
+    }
+
+    private static TokenKind kind(byte ordinal) {
+        return ordinal < 0 ? null : KINDS[ordinal];
+    }
+
+    // UTF-8 with an int length, writeUTF is limited to 64 KB
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,52 @@
+package stackmachine.frontend;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// JDK Flight Recorder event of a compilation, from the start to the end of
+// compile(). The times spent in the lexical analyzer and in the symbol table
+// are only measured while the event is recorded, see AbstractSyntaxAnalyzer.
+@Name("stackmachine.Compilation")
+@Label("Compilation")
+@Category({ "Stack Machine", "Frontend" })
+@Description("Parsing and code generation of a program")
+class CompilationEvent extends jdk.jfr.Event {
+
+    @Label("Parser")
+    String parser;
+
+    @Label("Compiled")
+    @Description("The program has no errors")
+    boolean compiled;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Lexing Time")
+    @Description("Time spent reading tokens, part of the duration of the compilation")
+    @Timespan(Timespan.NANOSECONDS)
+    long lexingTime;
+
+    @Label("Symbol Time")
+    @Description("Time spent looking up and adding identifiers in the symbol table, part of the duration of the compilation")
+    @Timespan(Timespan.NANOSECONDS)
+    long symbolTime;
+
+    @Label("Parsing Time")
+    @Description("Duration of the compilation without the lexing and symbol times")
+    @Timespan(Timespan.NANOSECONDS)
+    long parsingTime;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Symbols")
+    @Description("Variables in the symbol table")
+    int symbols;
+
+    @Label("Diagnostics")
+    int diagnostics;
+}
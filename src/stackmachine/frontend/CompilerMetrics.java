@@ -0,0 +1,133 @@
+package stackmachine.frontend;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of the compilations of this process, updated once per compilation
+// and per rendering, never per token, so they are always on. Every parse by
+// SyntaxAnalyzer or TableDrivenSyntaxAnalyzer counts, including the statements
+// IncrementalCompiler parses on their own. The counters can be read from any
+// thread, a snapshot is not atomic across counters.
+public final class CompilerMetrics {
+
+    private static final LongAdder COMPILATIONS = new LongAdder();
+    private static final LongAdder FAILURES = new LongAdder();
+    private static final LongAdder TOKENS = new LongAdder();
+    private static final LongAdder INSTRUCTIONS = new LongAdder();
+    private static final LongAdder SYMBOLS = new LongAdder();
+    private static final LongAdder DIAGNOSTICS = new LongAdder();
+    private static final LongAdder COMPILE_NANOS = new LongAdder();
+    private static final LongAdder RENDERINGS = new LongAdder();
+    private static final LongAdder RENDER_NANOS = new LongAdder();
+
+    private CompilerMetrics() {
+    }
+
+    static void compiled(boolean compiled, long tokens, int instructions, int symbols, int diagnostics, long nanos) {
+        COMPILATIONS.increment();
+
+        if (!compiled)
+            FAILURES.increment();
+
+        TOKENS.add(tokens);
+        INSTRUCTIONS.add(instructions);
+        SYMBOLS.add(symbols);
+        DIAGNOSTICS.add(diagnostics);
+        COMPILE_NANOS.add(nanos);
+    }
+
+    static void rendered(long nanos) {
+        RENDERINGS.increment();
+        RENDER_NANOS.add(nanos);
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot(COMPILATIONS.sum(), FAILURES.sum(), TOKENS.sum(), INSTRUCTIONS.sum(), SYMBOLS.sum(),
+                DIAGNOSTICS.sum(), COMPILE_NANOS.sum(), RENDERINGS.sum(), RENDER_NANOS.sum());
+    }
+
+    public static void reset() {
+        COMPILATIONS.reset();
+        FAILURES.reset();
+        TOKENS.reset();
+        INSTRUCTIONS.reset();
+        SYMBOLS.reset();
+        DIAGNOSTICS.reset();
+        COMPILE_NANOS.reset();
+        RENDERINGS.reset();
+        RENDER_NANOS.reset();
+    }
+
+    // totals since the start of the process or the last reset
+    public static class Snapshot {
+        private final long compilations;
+        private final long failures;
+        private final long tokens;
+        private final long instructions;
+        private final long symbols;
+        private final long diagnostics;
+        private final long compileNanos;
+        private final long renderings;
+        private final long renderNanos;
+
+        Snapshot(long compilations, long failures, long tokens, long instructions, long symbols,
+                 long diagnostics, long compileNanos, long renderings, long renderNanos) {
+            this.compilations = compilations;
+            this.failures = failures;
+            this.tokens = tokens;
+            this.instructions = instructions;
+            this.symbols = symbols;
+            this.diagnostics = diagnostics;
+            this.compileNanos = compileNanos;
+            this.renderings = renderings;
+            this.renderNanos = renderNanos;
+        }
+
+        public long getCompilations() {
+            return this.compilations;
+        }
+
+        // compilations that found errors
+        public long getFailures() {
+            return this.failures;
+        }
+
+        public long getTokens() {
+            return this.tokens;
+        }
+
+        public long getInstructions() {
+            return this.instructions;
+        }
+
+        public long getSymbols() {
+            return this.symbols;
+        }
+
+        public long getDiagnostics() {
+            return this.diagnostics;
+        }
+
+        // time spent in compile(), lexing included
+        public long getCompileNanos() {
+            return this.compileNanos;
+        }
+
+        public long getRenderings() {
+            return this.renderings;
+        }
+
+        // time spent writing intermediate code, symbol tables and outputs
+        public long getRenderNanos() {
+            return this.renderNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "compilations " + this.compilations + " (" + this.failures + " failed), " +
+                    this.tokens + " tokens, " + this.instructions + " instructions, " +
+                    this.symbols + " symbols, " + this.diagnostics + " diagnostics, " +
+                    String.format("%.3f", this.compileNanos / 1e6) + " ms compiling, " +
+                    this.renderings + " renderings in " + String.format("%.3f", this.renderNanos / 1e6) + " ms";
+        }
+    }
+}
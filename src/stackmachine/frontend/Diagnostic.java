@@ -0,0 +1,48 @@
+package stackmachine.frontend;
+
+// An error found while compiling a program, with the line where it was detected.
+// Syntax errors also keep the kind of token that was found and the kind that
+// was expected, which is null when several kinds would do, as for an instruction.
+// Both kinds are null for the errors of the symbol table.
+public class Diagnostic {
+    private final int line;
+    private final String message;
+    private final TokenKind expected;
+    private final TokenKind found;
+
+    public Diagnostic(int line, String message) {
+        this(line, message, null, null);
+    }
+
+    public Diagnostic(int line, String message, TokenKind expected, TokenKind found) {
+        this.line = line;
+        this.message = message;
+        this.expected = expected;
+        this.found = found;
+    }
+
+    public int getLine() {
+        return this.line;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+
+    public TokenKind getExpected() {
+        return this.expected;
+    }
+
+    public TokenKind getFound() {
+        return this.found;
+    }
+
+    public boolean isSyntaxError() {
+        return this.found != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Error at line " + this.line + ", " + this.message;
+    }
+}
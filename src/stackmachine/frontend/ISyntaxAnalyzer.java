@@ -1,5 +1,10 @@
 package stackmachine.frontend;
 
+import java.io.IOException;
+import java.util.List;
+
+import stackmachine.ir.Program;
+
 public interface ISyntaxAnalyzer {
 
     public boolean compile();
@@ -7,4 +12,14 @@ public interface ISyntaxAnalyzer {
     public String intermediateCode();
     public String symbolTable();
 
+    // streaming versions of the methods above, the output is written as it is produced
+    public void writeOutput(Appendable out) throws IOException;
+    public void writeIntermediateCode(Appendable out) throws IOException;
+    public void writeSymbolTable(Appendable out) throws IOException;
+
+    public List<Diagnostic> diagnostics();
+
+    // the intermediate code in its compact binary form
+    public Program compiledProgram();
+
 }
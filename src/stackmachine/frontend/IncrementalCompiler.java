@@ -0,0 +1,1035 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import slu.compiler.DataType;
+import slu.compiler.LexicalAnalyzer;
+import stackmachine.ir.Disassembler;
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+
+// Compiles a program that is edited many times, for editors and watch modes.
+// The body of main is split into regions, one per statement of the body: a
+// declaration, an assignment, a print, a block or a whole if, while or do
+// instruction with its bodies. Every region is parsed on its own and keeps its
+// intermediate code, with its own labels and variables, and the declarations
+// and uses of its variables. Linking the regions renumbers their labels and
+// variables in source order and checks the uses against the declarations, so
+// the results are the same as those of a compilation of the whole program.
+//
+// An edit only parses again the regions it touches, and checks them against
+// the declarations before them, kept for every name in source order. The
+// regions after them are checked again only when the edit changes the
+// declarations. Every region keeps where its code, labels, variables and
+// constants start in the linked program, so an edit links again the regions it
+// touches and, when their code moves or their symbols are numbered otherwise,
+// the regions after them. The program, the symbol table and the diagnostics
+// are put together from the linked code when they are asked for.
+// When the edit changes the header or the end of main, or a region has syntax
+// errors, the whole program is compiled as usual, and the regions are found
+// again by the next edit.
+public class IncrementalCompiler implements ISyntaxAnalyzer {
+    private final boolean recursive;
+
+    // edited in place, so an edit does not copy the whole program
+    private final StringBuilder text;
+
+    // statements of the body of main in source order, or null when the last
+    // compilation was not incremental
+    private List<Region> regions;
+
+    // offset after the open curly bracket of main and its line, offset of the
+    // closed curly bracket of main
+    private int bodyStart;
+    private int bodyLine;
+    private int bodyEnd;
+
+    // errors of the regions
+    private int errors;
+
+    // the declarations of every name in the regions, in source order
+    private Map<String, List<Declaration>> declared;
+
+    // the code of the regions without their halts, numbered for the whole
+    // program, and the variables and constants in order of first use
+    private int[] linkedCode = new int[64];
+    private int[] linkedLines = new int[32];
+    private int linkedSize;
+    private final Numbering<String> variables = new Numbering<String>();
+    private final Numbering<Long> constants = new Numbering<Long>();
+
+    // results of the last compilation, null until they are asked for
+    private boolean compiled;
+    private List<Diagnostic> diagnostics;
+    private String symbolTable;
+    private Program program;
+    private int reusedRegions;
+
+    public IncrementalCompiler(String text, boolean recursive) {
+        this.text = new StringBuilder(text);
+        this.recursive = recursive;
+    }
+
+    public IncrementalCompiler(String text) {
+        this(text, false);
+    }
+
+    public String text() {
+        return this.text.toString();
+    }
+
+    // number of regions of the body of main, 0 when the last compilation was not incremental
+    public int regionCount() {
+        return this.regions == null ? 0 : this.regions.size();
+    }
+
+    // number of regions the last compilation did not parse again
+    public int reusedRegions() {
+        return this.reusedRegions;
+    }
+
+    // compiles the whole text and splits it into regions
+    @Override
+    public boolean compile() {
+        this.regions = null;
+        this.reusedRegions = 0;
+
+        List<Region> regions = header() ? split(this.bodyStart, this.bodyLine, -1) : null;
+
+        if (regions == null || !trailer() || !parse(regions, new HashMap<String, DataType>()))
+            return compileAll();
+
+        this.regions = regions;
+        this.declared = new HashMap<String, List<Declaration>>();
+
+        for (int i = 0; i < regions.size(); i++) {
+            regions.get(i).index = i;
+            declare(regions.get(i));
+        }
+
+        this.errors = 0;
+        check(0, regions.size());
+
+        if (tooManyErrors())
+            return compileAll();
+
+        relink(0, regions.size());
+
+        return this.compiled;
+    }
+
+    // replaces length characters at offset with replacement and compiles the result
+    public boolean edit(int offset, int length, String replacement) {
+        if (offset < 0 || length < 0 || offset + length > this.text.length())
+            throw new IndexOutOfBoundsException("edit of " + length + " characters at " + offset);
+
+        int lineDelta = lines(replacement, 0, replacement.length()) - lines(this.text, offset, offset + length);
+
+        this.text.replace(offset, offset + length, replacement);
+
+        if (this.regions == null || this.regions.isEmpty() ||
+                offset < this.bodyStart || offset + length > this.bodyEnd)
+            return compile();
+
+        int delta = replacement.length() - length;
+
+        // the edit falls in the regions first to last, or in the space around them
+        int first = Math.max(regionAt(offset), 0);
+        int last = Math.max(regionAt(offset + length), first);
+
+        // the region before ends where the next statement starts, its last
+        // instructions take the line of that statement
+        if (first > 0 && offset <= this.regions.get(first).start)
+            first--;
+
+        if (last < this.regions.size() - 1 && this.regions.get(last).end < offset + length)
+            last++;
+
+        // the regions after last have not moved yet, their offsets are still those before the edit
+        List<Region> replaced = null;
+
+        while (replaced == null) {
+            boolean end = last == this.regions.size() - 1;
+            int start = first == 0 ? this.bodyStart : this.regions.get(first - 1).end;
+            int line = first == 0 ? this.bodyLine : this.regions.get(first - 1).endLine;
+            int limit = end ? this.bodyEnd + delta : this.regions.get(last).end + delta;
+
+            replaced = split(start, line, limit);
+
+            // an else after the span belongs to an if of the span
+            if (replaced != null && !end && word(this.regions.get(last + 1).start + delta).equals("else"))
+                replaced = null;
+
+            if (replaced == null) {
+                if (end)
+                    return compile();
+
+                last++;
+            }
+        }
+
+        if (!parse(replaced, typesBefore(first)))
+            return compileAll();
+
+        for (int i = last + 1; i < this.regions.size(); i++)
+            this.regions.get(i).move(delta, lineDelta);
+
+        this.bodyEnd += delta;
+        this.reusedRegions = this.regions.size() - (last - first + 1);
+
+        List<Region> span = this.regions.subList(first, last + 1);
+        boolean sameDeclarations = declarations(span).equals(declarations(replaced));
+        Map<String, DataType> before = sameDeclarations ? null : typesBefore(last + 1);
+
+        for (Region region : span) {
+            this.errors -= region.diagnostics.size();
+            undeclare(region);
+        }
+
+        span.clear();
+        span.addAll(replaced);
+
+        for (int i = first; i < this.regions.size(); i++)
+            this.regions.get(i).index = i;
+
+        for (Region region : replaced)
+            declare(region);
+
+        int end = first + replaced.size();
+
+        if (sameDeclarations) {
+            // the other regions see the same declarations as before
+            check(first, end);
+        }
+        else {
+            // the code of the regions that follow depends on the types of their variables
+            if (!reparseRetyped(end, before))
+                return compileAll();
+
+            check(first, this.regions.size());
+            end = this.regions.size();
+        }
+
+        if (tooManyErrors())
+            return compileAll();
+
+        relink(first, end);
+
+        return this.compiled;
+    }
+
+    // A compilation of the whole program stops at CodeGenerator.MAX_DIAGNOSTICS,
+    // with the symbols and code found until then, the regions would go on
+    private boolean tooManyErrors() {
+        return this.errors >= CodeGenerator.MAX_DIAGNOSTICS;
+    }
+
+    // index of the last region that starts at or before offset, or -1
+    private int regionAt(int offset) {
+        int low = 0;
+        int high = this.regions.size() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+
+            if (this.regions.get(middle).start <= offset)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+
+        return high;
+    }
+
+    // compiles the whole text without regions
+    private boolean compileAll() {
+        LexicalAnalyzer lex = new LexicalAnalyzer(this.text.toString());
+        ISyntaxAnalyzer parser = this.recursive ? new SyntaxAnalyzer(lex) : new TableDrivenSyntaxAnalyzer(lex);
+
+        this.regions = null;
+        this.reusedRegions = 0;
+        this.compiled = parser.compile();
+        this.diagnostics = new ArrayList<Diagnostic>(parser.diagnostics());
+        this.symbolTable = parser.symbolTable();
+
+        try {
+            this.program = parser.compiledProgram();
+        } catch (IllegalStateException e) {
+            // the code of a program with errors may jump to labels that were never emitted
+            this.program = null;
+        }
+
+        return this.compiled;
+    }
+
+    // Parses again the regions from an index on that use a variable whose type
+    // may have changed, an int that became a float or the other way around,
+    // given the types declared before that index until the edit. False when
+    // one of them has syntax errors.
+    private boolean reparseRetyped(int from, Map<String, DataType> before) {
+        Map<String, DataType> types = typesBefore(from);
+        Set<String> retyped = new HashSet<String>();
+
+        // a name declared on one side only takes the type of a later declaration on the other
+        for (String name : union(before.keySet(), types.keySet()))
+            if (before.containsKey(name) != types.containsKey(name) || isFloat(before.get(name)) != isFloat(types.get(name)))
+                retyped.add(name);
+
+        for (int i = from; i < this.regions.size() && !retyped.isEmpty(); i++) {
+            Region region = this.regions.get(i);
+
+            // the variables of its code, print does not check its symbol
+            for (String variable : region.code.getVariables()) {
+                if (retyped.contains(variable)) {
+                    undeclare(region);
+
+                    if (!parse(Collections.singletonList(region), types))
+                        return false;
+
+                    declare(region);
+                    this.reusedRegions--;
+                    break;
+                }
+            }
+
+            for (CodeGenerator.SymbolCheck declaration : region.declarations)
+                types.putIfAbsent(declaration.name, declaration.type);
+        }
+
+        return true;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        Set<String> union = new HashSet<String>(a);
+        union.addAll(b);
+
+        return union;
+    }
+
+    private static boolean isFloat(DataType type) {
+        return type != null && type.getType().equals(TokenKind.FLOAT.getTokenName());
+    }
+
+    // the first declaration of each name in the regions before an index
+    private Map<String, DataType> typesBefore(int index) {
+        Map<String, DataType> types = new HashMap<String, DataType>();
+
+        for (Map.Entry<String, List<Declaration>> entry : this.declared.entrySet()) {
+            Declaration first = entry.getValue().get(0);
+
+            if (first.region.index < index)
+                types.put(entry.getKey(), first.type);
+        }
+
+        return types;
+    }
+
+    // adds the declarations of a region after those of the regions before it
+    private void declare(Region region) {
+        for (CodeGenerator.SymbolCheck declaration : region.declarations) {
+            List<Declaration> declarations = this.declared.get(declaration.name);
+
+            if (declarations == null) {
+                declarations = new ArrayList<Declaration>();
+                this.declared.put(declaration.name, declarations);
+            }
+
+            int i = declarations.size();
+
+            while (i > 0 && declarations.get(i - 1).region.index > region.index)
+                i--;
+
+            declarations.add(i, new Declaration(region, declaration.type));
+        }
+    }
+
+    private void undeclare(Region region) {
+        for (CodeGenerator.SymbolCheck declaration : region.declarations) {
+            List<Declaration> declarations = this.declared.get(declaration.name);
+
+            if (declarations == null)
+                continue;
+
+            declarations.removeIf(d -> d.region == region);
+
+            if (declarations.isEmpty())
+                this.declared.remove(declaration.name);
+        }
+    }
+
+    // Parses every region on its own, with the types declared before the
+    // first one, false when one of them has syntax errors
+    private boolean parse(List<Region> regions, Map<String, DataType> declared) {
+        Map<String, DataType> types = new HashMap<String, DataType>(declared);
+
+        for (Region region : regions) {
+            // main is opened on the first line of the region, so the lines of the
+            // region start at 1, and closed where the next statement starts, so
+            // the lines of the errors found looking ahead are those of the program
+            String source = "void main { " + this.text.substring(region.start, skipTrivia(region.end)) + "}";
+            LexicalAnalyzer lex = new LexicalAnalyzer(source);
+            AbstractSyntaxAnalyzer parser = this.recursive ? new SyntaxAnalyzer(lex) : new TableDrivenSyntaxAnalyzer(lex);
+
+            parser.generator.deferSymbolChecks(new HashMap<String, DataType>(types));
+
+            if (!parser.compile())
+                return false;
+
+            region.code = parser.compiledProgram();
+            region.labels = parser.generator.generatedLabels();
+            region.symbolChecks = parser.generator.symbolChecks();
+            region.declarations = new ArrayList<CodeGenerator.SymbolCheck>();
+
+            for (CodeGenerator.SymbolCheck check : region.symbolChecks) {
+                if (check.declaration) {
+                    region.declarations.add(check);
+                    types.putIfAbsent(check.name, check.type);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // symbols
+
+    // checks the uses and declarations of the regions from an index up to end
+    private void check(int from, int end) {
+        Map<String, DataType> types = typesBefore(from);
+
+        for (int i = from; i < end; i++) {
+            Region region = this.regions.get(i);
+
+            this.errors -= region.diagnostics.size();
+            this.errors += check(region, types);
+        }
+    }
+
+    // checks the uses and declarations of a region against the declarations of
+    // the regions before it, and adds its own, returns the number of errors
+    private static int check(Region region, Map<String, DataType> types) {
+        region.diagnostics = new ArrayList<Diagnostic>();
+
+        for (CodeGenerator.SymbolCheck check : region.symbolChecks) {
+            if (check.declaration) {
+                if (types.putIfAbsent(check.name, check.type) != null)
+                    region.diagnostics.add(new Diagnostic(check.line, "identifier '" + check.name + "' is already declared"));
+            }
+            else if (!types.containsKey(check.name)) {
+                region.diagnostics.add(new Diagnostic(check.line, "identifier '" + check.name + "' is not declared"));
+            }
+        }
+
+        return region.diagnostics.size();
+    }
+
+    // names and types declared by the regions, in order
+    private static List<String> declarations(List<Region> regions) {
+        List<String> declarations = new ArrayList<String>();
+
+        for (Region region : regions)
+            for (CodeGenerator.SymbolCheck declaration : region.declarations)
+                declarations.add(declaration.name + " " + declaration.type);
+
+        return declarations;
+    }
+
+    // linking
+
+    // Links the regions from an index on after the regions before it, the
+    // regions from end on only until one of them is where it was linked, with
+    // the same labels, lines and symbols before it. Drops the results of the
+    // last link, they are put together again when they are asked for.
+    private void relink(int from, int end) {
+        Region previous = from == 0 ? null : this.regions.get(from - 1);
+        int position = previous == null ? 0 : previous.codeStart + previous.code.size() - 1;
+        int labelBase = previous == null ? 0 : previous.labelBase + previous.labels;
+        int variableBase = previous == null ? 0 : previous.variablesAfter;
+        int constantBase = previous == null ? 0 : previous.constantsAfter;
+
+        // the symbols first used from here on, numbered again
+        List<String> variables = this.variables.truncate(variableBase);
+        List<Long> constants = this.constants.truncate(constantBase);
+
+        this.compiled = this.errors == 0;
+        this.diagnostics = null;
+        this.symbolTable = null;
+        this.program = null;
+
+        for (int i = from; i < this.regions.size(); i++) {
+            Region region = this.regions.get(i);
+
+            if (i >= end && region.codeStart == position && region.labelBase == labelBase &&
+                    region.linkedLine == region.startLine &&
+                    region.variablesBefore == this.variables.size() && region.constantsBefore == this.constants.size() &&
+                    this.variables.continues(variables, variableBase) && this.constants.continues(constants, constantBase)) {
+                // the rest of the code is linked already
+                this.variables.restore(variables, variableBase);
+                this.constants.restore(constants, constantBase);
+                return;
+            }
+
+            region.variablesBefore = this.variables.size();
+            region.constantsBefore = this.constants.size();
+            position = link(region, position, labelBase);
+            labelBase += region.labels;
+            region.variablesAfter = this.variables.size();
+            region.constantsAfter = this.constants.size();
+        }
+
+        this.linkedSize = position;
+    }
+
+    // Copies the code of a region without its halt to an instruction of the
+    // linked code, with its labels after labelBase and its variables and
+    // constants numbered in order of first use, like a compilation of the whole
+    // program. Returns the instruction after it.
+    private int link(Region region, int position, int labelBase) {
+        Program program = region.code;
+        int size = program.size() - 1;
+
+        if (2 * (position + size) > this.linkedCode.length) {
+            int length = Math.max(2 * this.linkedCode.length, 2 * (position + size));
+
+            this.linkedCode = Arrays.copyOf(this.linkedCode, length);
+            this.linkedLines = Arrays.copyOf(this.linkedLines, length / 2);
+        }
+
+        // the variables of a region are in order of first use
+        int[] slots = new int[program.getVariables().length];
+
+        for (int variable = 0; variable < slots.length; variable++)
+            slots[variable] = this.variables.number(program.variable(variable));
+
+        // its constants are numbered when they are pushed, like a compilation of the whole program
+        int[] constants = new int[program.getConstants().length];
+        Arrays.fill(constants, -1);
+
+        for (int i = 0; i < size; i++) {
+            int opcode = program.opcode(i);
+            int operand = program.operand(i);
+
+            switch (opcode) {
+                case Opcode.PUSH:
+                case Opcode.FLOAT_PUSH:
+                    if (constants[operand] < 0)
+                        constants[operand] = this.constants.number(constantKey(program, operand));
+
+                    operand = constants[operand];
+                    break;
+                case Opcode.RVALUE:
+                case Opcode.LVALUE:
+                case Opcode.PRINT:
+                case Opcode.FLOAT_PRINT:
+                    operand = slots[operand];
+                    break;
+                case Opcode.LABEL:
+                    operand += labelBase;
+                    break;
+                case Opcode.GOTO:
+                case Opcode.GOFALSE:
+                    // the instruction of the label
+                    operand += position;
+                    break;
+                default:
+            }
+
+            this.linkedCode[2 * (position + i)] = opcode;
+            this.linkedCode[2 * (position + i) + 1] = operand;
+            this.linkedLines[position + i] = region.startLine + program.line(i) - 1;
+        }
+
+        region.codeStart = position;
+        region.labelBase = labelBase;
+        region.linkedLine = region.startLine;
+
+        return position + size;
+    }
+
+    // the type and bits of a constant, like ProgramBuilder
+    private static long constantKey(Program program, int constant) {
+        return (program.isReal(constant) ? 1L << 32 : 0L) | (program.getConstants()[constant] & 0xFFFFFFFFL);
+    }
+
+    // puts the program, the symbol table and the diagnostics together from the
+    // linked code and the regions
+    private void results() {
+        if (this.regions == null || this.diagnostics != null)
+            return;
+
+        Map<String, DataType> types = typesBefore(this.regions.size());
+
+        int[] code = Arrays.copyOf(this.linkedCode, 2 * this.linkedSize + 2);
+        int[] lines = Arrays.copyOf(this.linkedLines, this.linkedSize + 1);
+
+        // the halt is on the line where the text ends, like the end of the program in a full compilation
+        Region last = this.regions.isEmpty() ? null : this.regions.get(this.regions.size() - 1);
+        code[2 * this.linkedSize] = Opcode.HALT;
+        code[2 * this.linkedSize + 1] = 0;
+        lines[this.linkedSize] = last == null ? 1 + lines(this.text, 0, this.text.length())
+                : last.endLine + lines(this.text, last.end, this.text.length());
+
+        int[] constants = new int[this.constants.size()];
+        boolean[] realConstants = new boolean[constants.length];
+
+        for (int constant = 0; constant < constants.length; constant++) {
+            long key = this.constants.get(constant);
+
+            constants[constant] = (int) key;
+            realConstants[constant] = key >>> 32 != 0;
+        }
+
+        String[] variables = new String[this.variables.size()];
+        boolean[] realVariables = new boolean[variables.length];
+        StringBuilder symbols = new StringBuilder();
+
+        for (int slot = 0; slot < variables.length; slot++) {
+            // the type of a variable is the one of its first declaration
+            DataType type = types.get(this.variables.get(slot));
+
+            variables[slot] = this.variables.get(slot);
+            realVariables[slot] = isFloat(type);
+
+            if (type != null)
+                symbols.append("<'").append(variables[slot]).append("', ")
+                        .append(type.toString()).append("> \n");
+        }
+
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+
+        if (this.errors > 0)
+            for (Region region : this.regions)
+                for (Diagnostic diagnostic : region.diagnostics)
+                    diagnostics.add(new Diagnostic(region.startLine + diagnostic.getLine() - 1, diagnostic.getMessage()));
+
+        this.diagnostics = diagnostics;
+        this.symbolTable = symbols.toString();
+        this.program = new Program(code, constants, realConstants, variables, realVariables, lines);
+    }
+
+    // regions
+
+    // reads void main { and sets the start of the body, false when the text starts otherwise
+    private boolean header() {
+        int p = skipTrivia(0);
+
+        if (!word(p).equals("void"))
+            return false;
+
+        p = skipTrivia(p + 4);
+
+        if (!word(p).equals("main"))
+            return false;
+
+        p = skipTrivia(p + 4);
+
+        if (p == this.text.length() || this.text.charAt(p) != '{')
+            return false;
+
+        this.bodyStart = p + 1;
+        this.bodyLine = 1 + lines(this.text, 0, this.bodyStart);
+
+        return true;
+    }
+
+    // whether nothing but the closed curly bracket of main follows the body
+    private boolean trailer() {
+        return skipTrivia(this.bodyEnd + 1) == this.text.length();
+    }
+
+    // Splits the text from start up to limit into regions, the first one on the
+    // given line. The span must end with a statement or with the closed curly
+    // bracket of main, a limit of -1 splits up to the end of main and sets
+    // bodyEnd. Returns null when a statement crosses the limit or is not
+    // complete.
+    private List<Region> split(int start, int line, int limit) {
+        List<Region> regions = new ArrayList<Region>();
+        int p = start;
+
+        while (true) {
+            int q = skipTrivia(p);
+
+            line += lines(this.text, p, q);
+
+            if (limit < 0 && q < this.text.length() && this.text.charAt(q) == '}') {
+                this.bodyEnd = q;
+                return regions;
+            }
+
+            if (q >= limit && limit >= 0)
+                return q == limit || p == limit ? regions : null;
+
+            if (q == this.text.length() || this.text.charAt(q) == '}')
+                return null;
+
+            int end = statement(q);
+
+            if (end < 0 || (limit >= 0 && end > limit))
+                return null;
+
+            Region region = new Region(q, end, line, line + lines(this.text, q, end));
+            regions.add(region);
+
+            line = region.endLine;
+            p = end;
+        }
+    }
+
+    // end of the statement that starts at p, or -1 when it is not complete
+    private int statement(int p) {
+        if (p == this.text.length())
+            return -1;
+
+        if (this.text.charAt(p) == '{')
+            return block(p);
+
+        switch (word(p)) {
+            case "if": {
+                int end = condition(p + 2);
+
+                if (end >= 0)
+                    end = statement(skipTrivia(end));
+
+                if (end < 0)
+                    return -1;
+
+                int q = skipTrivia(end);
+
+                return word(q).equals("else") ? statement(skipTrivia(q + 4)) : end;
+            }
+
+            case "while": {
+                int end = condition(p + 5);
+
+                return end < 0 ? -1 : statement(skipTrivia(end));
+            }
+
+            case "do": {
+                int end = statement(skipTrivia(p + 2));
+
+                if (end < 0)
+                    return -1;
+
+                end = skipTrivia(end);
+
+                if (!word(end).equals("while"))
+                    return -1;
+
+                end = condition(end + 5);
+
+                if (end < 0)
+                    return -1;
+
+                end = skipTrivia(end);
+
+                return end < this.text.length() && this.text.charAt(end) == ';' ? end + 1 : -1;
+            }
+
+            default:
+                // declaration, assignment or print, up to its semicolon
+                while (p < this.text.length()) {
+                    char c = this.text.charAt(p);
+
+                    if (c == ';')
+                        return p + 1;
+
+                    if (c == '{' || c == '}')
+                        return -1;
+
+                    p = next(p);
+                }
+
+                return -1;
+        }
+    }
+
+    // end of the block that starts at p
+    private int block(int p) {
+        int depth = 0;
+
+        while (p < this.text.length()) {
+            char c = this.text.charAt(p);
+
+            if (c == '{')
+                depth++;
+            else if (c == '}' && --depth == 0)
+                return p + 1;
+
+            p = next(p);
+        }
+
+        return -1;
+    }
+
+    // end of the parenthesized condition that starts after p
+    private int condition(int p) {
+        p = skipTrivia(p);
+
+        if (p == this.text.length() || this.text.charAt(p) != '(')
+            return -1;
+
+        int depth = 0;
+
+        while (p < this.text.length()) {
+            char c = this.text.charAt(p);
+
+            if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                return p + 1;
+            else if (c == '{' || c == '}' || c == ';')
+                return -1;
+
+            p = next(p);
+        }
+
+        return -1;
+    }
+
+    // the keyword or identifier at p, empty when there is none
+    private String word(int p) {
+        int end = p;
+
+        while (end < this.text.length() && Character.isLetterOrDigit(this.text.charAt(end)))
+            end++;
+
+        // a word followed by an underscore is an identifier, never a keyword
+        if (end < this.text.length() && this.text.charAt(end) == '_')
+            return "";
+
+        return this.text.substring(p, end);
+    }
+
+    // position after the white space and comments at p
+    private int skipTrivia(int p) {
+        while (p < this.text.length()) {
+            char c = this.text.charAt(p);
+
+            if (Character.isWhitespace(c))
+                p++;
+            else if (comment(p))
+                p = next(p);
+            else
+                break;
+        }
+
+        return p;
+    }
+
+    // position after the character or the comment at p
+    private int next(int p) {
+        if (!comment(p))
+            return p + 1;
+
+        if (this.text.charAt(p + 1) == '*') {
+            int end = this.text.indexOf("*/", p + 2);
+            return end < 0 ? this.text.length() : end + 2;
+        }
+
+        int end = this.text.indexOf("\n", p + 2);
+        return end < 0 ? this.text.length() : end;
+    }
+
+    // whether a comment starts at p
+    private boolean comment(int p) {
+        return this.text.charAt(p) == '/' && p + 1 < this.text.length() &&
+                (this.text.charAt(p + 1) == '*' || this.text.charAt(p + 1) == '/');
+    }
+
+    // number of line breaks from start to end
+    private static int lines(CharSequence text, int start, int end) {
+        int lines = 0;
+
+        for (int i = start; i < end; i++)
+            if (text.charAt(i) == '\n')
+                lines++;
+
+        return lines;
+    }
+
+    // results
+
+    @Override
+    public String output() {
+        StringBuilder output = new StringBuilder();
+
+        try {
+            writeOutput(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toString();
+    }
+
+    @Override
+    public String intermediateCode() {
+        StringBuilder code = new StringBuilder();
+
+        try {
+            writeIntermediateCode(code);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return code.toString();
+    }
+
+    @Override
+    public String symbolTable() {
+        results();
+        return this.symbolTable;
+    }
+
+    @Override
+    public void writeOutput(Appendable out) throws IOException {
+        results();
+
+        for (Diagnostic diagnostic : this.diagnostics)
+            out.append('\n').append(diagnostic.toString());
+    }
+
+    @Override
+    public void writeIntermediateCode(Appendable out) throws IOException {
+        results();
+
+        if (this.program != null)
+            Disassembler.write(this.program, out);
+    }
+
+    @Override
+    public void writeSymbolTable(Appendable out) throws IOException {
+        results();
+        out.append(this.symbolTable);
+    }
+
+    @Override
+    public List<Diagnostic> diagnostics() {
+        results();
+        return Collections.unmodifiableList(this.diagnostics);
+    }
+
+    @Override
+    public Program compiledProgram() {
+        results();
+
+        if (this.program == null)
+            throw new IllegalStateException("no intermediate code for a program with errors");
+
+        return this.program;
+    }
+
+    // a statement of the body of main, with the results of parsing it alone
+    private static class Region {
+        int index;
+        int start;
+        int end;
+        int startLine;
+        int endLine;
+
+        Program code;
+        int labels;
+        List<CodeGenerator.SymbolCheck> symbolChecks;
+        List<CodeGenerator.SymbolCheck> declarations;
+
+        // errors of the symbol table, with the lines of the region
+        List<Diagnostic> diagnostics = Collections.emptyList();
+
+        // where the region was linked: its first instruction and label, the
+        // variables and constants numbered before and after it and its line
+        int codeStart;
+        int labelBase;
+        int variablesBefore;
+        int variablesAfter;
+        int constantsBefore;
+        int constantsAfter;
+        int linkedLine;
+
+        Region(int start, int end, int startLine, int endLine) {
+            this.start = start;
+            this.end = end;
+            this.startLine = startLine;
+            this.endLine = endLine;
+        }
+
+        void move(int delta, int lineDelta) {
+            this.start += delta;
+            this.end += delta;
+            this.startLine += lineDelta;
+            this.endLine += lineDelta;
+        }
+    }
+
+    // a declaration of a name by a region
+    private static class Declaration {
+        final Region region;
+        final DataType type;
+
+        Declaration(Region region, DataType type) {
+            this.region = region;
+            this.type = type;
+        }
+    }
+
+    // keys numbered in order of first use, like the variables and constants
+    // of ProgramBuilder
+    private static class Numbering<K> {
+        private final List<K> keys = new ArrayList<K>();
+        private final Map<K, Integer> numbers = new HashMap<K, Integer>();
+
+        int number(K key) {
+            Integer number = this.numbers.get(key);
+
+            if (number != null)
+                return number;
+
+            this.numbers.put(key, this.keys.size());
+            this.keys.add(key);
+
+            return this.keys.size() - 1;
+        }
+
+        int size() {
+            return this.keys.size();
+        }
+
+        K get(int number) {
+            return this.keys.get(number);
+        }
+
+        // removes the keys numbered from size on and returns them
+        List<K> truncate(int size) {
+            List<K> removed = this.keys.subList(size, this.keys.size());
+            List<K> keys = new ArrayList<K>(removed);
+
+            for (K key : keys)
+                this.numbers.remove(key);
+
+            removed.clear();
+
+            return keys;
+        }
+
+        // whether the keys numbered from base on are the first of the removed ones
+        boolean continues(List<K> removed, int base) {
+            int added = this.keys.size() - base;
+
+            return added <= removed.size() && this.keys.subList(base, this.keys.size()).equals(removed.subList(0, added));
+        }
+
+        // numbers again the rest of the removed keys
+        void restore(List<K> removed, int base) {
+            for (K key : removed.subList(this.keys.size() - base, removed.size()))
+                number(key);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package stackmachine.frontend;
+
+import slu.compiler.ILexicalAnalyzer;
+import slu.compiler.Identifier;
+import slu.compiler.IntegerNumber;
+import slu.compiler.RealNumber;
+import slu.compiler.Token;
+
+// TokenCursor over a lexical analyzer that creates a Token for every token,
+// such as slu.compiler.LexicalAnalyzer, the attributes are read from the Token
+class LexicalAnalyzerCursor implements TokenCursor {
+    private final ILexicalAnalyzer lexicalAnalyzer;
+    private Token token;
+    private TokenKind kind;
+
+    LexicalAnalyzerCursor(ILexicalAnalyzer lex) {
+        this.lexicalAnalyzer = lex;
+    }
+
+    @Override
+    public TokenKind next() {
+        this.token = this.lexicalAnalyzer.getToken();
+        this.kind = TokenKind.of(this.token);
+
+        return this.kind;
+    }
+
+    @Override
+    public TokenKind kind() {
+        return this.kind;
+    }
+
+    @Override
+    public String name() {
+        return this.token instanceof Identifier ? ((Identifier) this.token).getLexeme() : null;
+    }
+
+    @Override
+    public int intValue() {
+        return ((IntegerNumber) this.token).getValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return ((RealNumber) this.token).getValue();
+    }
+
+    @Override
+    public Token token() {
+        return this.token;
+    }
+
+    @Override
+    public Token getToken() {
+        next();
+        return this.token;
+    }
+
+    @Override
+    public int getLine() {
+        return this.lexicalAnalyzer.getLine();
+    }
+
+    @Override
+    public String getLexeme(String tokenName) {
+        return this.lexicalAnalyzer.getLexeme(tokenName);
+    }
+}
@@ -0,0 +1,463 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import slu.compiler.Identifier;
+import slu.compiler.IntegerNumber;
+import slu.compiler.RealNumber;
+import slu.compiler.Token;
+
+// Lexical analyzer over the bytes of a memory-mapped file, driven by the
+// ScannerTables of lexicon.txt: a class per byte chooses between words,
+// numbers and operators, words are looked up in the keyword perfect hash and
+// operators are read by the operator DFA. Reading a token allocates nothing:
+// the cursor keeps the kind, the offset and the length of the lexeme, and
+// numbers are converted and identifiers interned only when their attributes
+// are asked for. Files larger than 2 GB are mapped in several buffers.
+//
+// Programs are read as ASCII, like the lexemes of lexicon.txt, a byte that is
+// not part of a token is read as a token of kind UNKNOWN.
+public class MappedLexicalAnalyzer implements TokenCursor {
+
+    // bytes per mapped buffer
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    // classes of the bytes
+    private static final byte OTHER = 0;
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte SPACE = 3;
+    private static final byte NEWLINE = 4;
+    private static final byte SLASH = 5;
+
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        for (int c = 'a'; c <= 'z'; c++)
+            CLASSES[c] = LETTER;
+
+        for (int c = 'A'; c <= 'Z'; c++)
+            CLASSES[c] = LETTER;
+
+        for (int c = '0'; c <= '9'; c++)
+            CLASSES[c] = DIGIT;
+
+        CLASSES[' '] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\f'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['/'] = SLASH;
+    }
+
+    private final ScannerTables tables;
+    private final ByteBuffer[] chunks;
+    private final long size;
+
+    // current token, and its number in the scanner tables or -1
+    private TokenKind kind;
+    private int token;
+
+    // hash of the current word, for the keywords and the names
+    private int hash;
+    private long offset;
+    private int length;
+    private int line;
+
+    // position after the current token
+    private long position;
+
+    // interned names of the identifiers, an open addressing table of the names
+    // and their bytes
+    private String[] names;
+    private byte[][] nameBytes;
+    private int nameCount;
+
+    public MappedLexicalAnalyzer(Path file) throws IOException {
+        this(file, ScannerTables.standard());
+    }
+
+    public MappedLexicalAnalyzer(Path file, ScannerTables tables) throws IOException {
+        this.tables = tables;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.size = channel.size();
+            this.chunks = new ByteBuffer[(int) ((this.size + CHUNK_MASK) >>> CHUNK_BITS)];
+
+            for (int i = 0; i < this.chunks.length; i++) {
+                long start = (long) i << CHUNK_BITS;
+                this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(this.size - start, 1L << CHUNK_BITS));
+            }
+        }
+
+        this.line = 1;
+        this.names = new String[64];
+        this.nameBytes = new byte[64][];
+    }
+
+    // the program in a string, for programs that are not in a file
+    public MappedLexicalAnalyzer(String program) {
+        this(program, ScannerTables.standard());
+    }
+
+    public MappedLexicalAnalyzer(String program, ScannerTables tables) {
+        byte[] bytes = program.getBytes(StandardCharsets.UTF_8);
+
+        this.tables = tables;
+        this.size = bytes.length;
+        this.chunks = new ByteBuffer[] { ByteBuffer.wrap(bytes) };
+        this.line = 1;
+        this.names = new String[64];
+        this.nameBytes = new byte[64][];
+    }
+
+    // cursor
+
+    @Override
+    public TokenKind next() {
+        long p = skipTrivia(this.position);
+        long end;
+
+        this.offset = p;
+        this.token = -1;
+
+        if (p == this.size) {
+            this.kind = TokenKind.END_PROGRAM;
+            this.length = 0;
+            return this.kind;
+        }
+
+        int c = at(p);
+
+        switch (CLASSES[c]) {
+            case LETTER: {
+                int hash = ScannerTables.hash(this.tables.keywordSeed, c);
+
+                for (end = p + 1; end < this.size; end++) {
+                    int d = at(end);
+
+                    if (CLASSES[d] != LETTER && CLASSES[d] != DIGIT && d != '_')
+                        break;
+
+                    hash = ScannerTables.hash(hash, d);
+                }
+
+                this.length = (int) (end - p);
+                this.hash = hash;
+
+                int keyword = this.tables.keyword(hash);
+
+                if (keyword >= 0 && sameBytes(this.tables.keywordBytes[keyword])) {
+                    this.token = keyword;
+                    this.kind = this.tables.kind(keyword);
+                }
+                else {
+                    this.kind = TokenKind.ID;
+                }
+
+                break;
+            }
+
+            case DIGIT: {
+                end = p + 1;
+
+                while (end < this.size && CLASSES[at(end)] == DIGIT)
+                    end++;
+
+                this.kind = TokenKind.INTEGER_NUMBER;
+
+                if (end + 1 < this.size && at(end) == '.' && CLASSES[at(end + 1)] == DIGIT) {
+                    end += 2;
+
+                    while (end < this.size && CLASSES[at(end)] == DIGIT)
+                        end++;
+
+                    this.kind = TokenKind.REAL_NUMBER;
+                }
+
+                break;
+            }
+
+            default: {
+                // operators and delimiters, the longest lexeme the DFA accepts
+                int[] transitions = this.tables.transitions;
+                int[] accepts = this.tables.accepts;
+                int state = 0;
+
+                end = p + 1;
+
+                for (long q = p; q < this.size; ) {
+                    int d = at(q);
+
+                    if (d >= 128 || (state = transitions[state * 128 + d]) < 0)
+                        break;
+
+                    q++;
+
+                    if (accepts[state] >= 0) {
+                        this.token = accepts[state];
+                        end = q;
+                    }
+                }
+
+                this.kind = this.token >= 0 ? this.tables.kind(this.token) : TokenKind.UNKNOWN;
+            }
+        }
+
+        this.length = (int) (end - p);
+        this.position = end;
+
+        return this.kind;
+    }
+
+    @Override
+    public TokenKind kind() {
+        return this.kind;
+    }
+
+    // offset of the lexeme of the current token in the program, in bytes
+    public long offset() {
+        return this.offset;
+    }
+
+    // length of the lexeme of the current token, in bytes
+    public int length() {
+        return this.length;
+    }
+
+    // the lexeme of the current token, as a new String
+    public String lexeme() {
+        byte[] bytes = new byte[this.length];
+
+        for (int i = 0; i < this.length; i++)
+            bytes[i] = (byte) at(this.offset + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String name() {
+        if (this.kind != TokenKind.ID)
+            return null;
+
+        int mask = this.names.length - 1;
+        int index = (this.hash ^ (this.hash >>> 15)) & mask;
+
+        while (this.names[index] != null) {
+            if (sameBytes(this.nameBytes[index]))
+                return this.names[index];
+
+            index = (index + 1) & mask;
+        }
+
+        String name = lexeme();
+        this.names[index] = name;
+        this.nameBytes[index] = name.getBytes(StandardCharsets.UTF_8);
+
+        if (++this.nameCount * 2 > this.names.length)
+            growNames();
+
+        return name;
+    }
+
+    @Override
+    public int intValue() {
+        long value = 0;
+
+        for (int i = 0; i < this.length; i++) {
+            value = 10 * value + (at(this.offset + i) - '0');
+
+            if (value > Integer.MAX_VALUE)
+                throw new NumberFormatException("For input string: \"" + lexeme() + "\"");
+        }
+
+        return (int) value;
+    }
+
+    @Override
+    public float floatValue() {
+        // digits as an integer and the number of decimals
+        long digits = 0;
+        int decimals = -1;
+        boolean exact = true;
+
+        for (int i = 0; i < this.length; i++) {
+            int c = at(this.offset + i);
+
+            if (c == '.') {
+                decimals = 0;
+                continue;
+            }
+
+            if (decimals >= 0)
+                decimals++;
+
+            digits = 10 * digits + (c - '0');
+
+            if (digits > 1L << 53) {
+                exact = false;
+                break;
+            }
+        }
+
+        decimals = Math.max(decimals, 0);
+
+        if (exact && decimals < POWERS_OF_TEN.length) {
+            // the quotient of two exact doubles is correctly rounded, and rounding
+            // it again to a float gives the correctly rounded float unless the
+            // double falls exactly halfway between two floats
+            double value = digits / POWERS_OF_TEN[decimals];
+
+            if ((Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) != 0x10000000L)
+                return (float) value;
+        }
+
+        return Float.parseFloat(lexeme());
+    }
+
+    @Override
+    public Token token() {
+        switch (this.kind) {
+            case ID:
+                return new Identifier(name());
+            case INTEGER_NUMBER:
+                return new IntegerNumber(intValue());
+            case REAL_NUMBER:
+                return new RealNumber(floatValue());
+            case END_PROGRAM:
+                return new Token(this.kind.getTokenName());
+            default:
+                // tokens of lexicon.txt keep their names, even those the parser does not know
+                return new Token(this.token >= 0 ? this.tables.tokenName(this.token) : lexeme());
+        }
+    }
+
+    // ILexicalAnalyzer
+
+    @Override
+    public Token getToken() {
+        next();
+        return token();
+    }
+
+    @Override
+    public int getLine() {
+        return this.line;
+    }
+
+    @Override
+    public String getLexeme(String tokenName) {
+        String lexeme = this.tables.lexemeOf(tokenName);
+        return lexeme == null ? tokenName : lexeme;
+    }
+
+    // bytes
+
+    private int at(long p) {
+        return this.chunks[(int) (p >>> CHUNK_BITS)].get((int) (p & CHUNK_MASK)) & 0xFF;
+    }
+
+    // position after the white space and comments at p, counting the lines
+    private long skipTrivia(long p) {
+        while (p < this.size) {
+            switch (CLASSES[at(p)]) {
+                case NEWLINE:
+                    this.line++;
+                    p++;
+                    break;
+
+                case SPACE:
+                    p++;
+                    break;
+
+                case SLASH:
+                    if (p + 1 < this.size && at(p + 1) == '*') {
+                        p += 2;
+
+                        while (p < this.size && !(at(p) == '*' && p + 1 < this.size && at(p + 1) == '/')) {
+                            if (at(p) == '\n')
+                                this.line++;
+
+                            p++;
+                        }
+
+                        p = Math.min(p + 2, this.size);
+                        break;
+                    }
+
+                    if (p + 1 < this.size && at(p + 1) == '/') {
+                        while (p < this.size && at(p) != '\n')
+                            p++;
+
+                        break;
+                    }
+
+                    return p;
+
+                default:
+                    return p;
+            }
+        }
+
+        return p;
+    }
+
+    private boolean sameBytes(byte[] name) {
+        if (name.length != this.length)
+            return false;
+
+        for (int i = 0; i < this.length; i++)
+            if (name[i] != (byte) at(this.offset + i))
+                return false;
+
+        return true;
+    }
+
+    private void growNames() {
+        String[] names = this.names;
+        byte[][] nameBytes = this.nameBytes;
+
+        this.names = new String[2 * names.length];
+        this.nameBytes = new byte[2 * names.length][];
+
+        int mask = this.names.length - 1;
+
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null)
+                continue;
+
+            int index = hash(nameBytes[i]) & mask;
+
+            while (this.names[index] != null)
+                index = (index + 1) & mask;
+
+            this.names[index] = names[i];
+            this.nameBytes[index] = nameBytes[i];
+        }
+    }
+
+    // the hash next() finds for the bytes of a name
+    private int hash(byte[] name) {
+        int hash = this.tables.keywordSeed;
+
+        for (byte b : name)
+            hash = ScannerTables.hash(hash, b & 0xFF);
+
+        return hash ^ (hash >>> 15);
+    }
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+    }
+}
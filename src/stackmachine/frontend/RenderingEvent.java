@@ -0,0 +1,18 @@
+package stackmachine.frontend;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JDK Flight Recorder event of the rendering of a result of a compilation
+@Name("stackmachine.Rendering")
+@Label("Rendering")
+@Category({ "Stack Machine", "Frontend" })
+@Description("Writing the intermediate code, the symbol table or the output of a compilation")
+class RenderingEvent extends jdk.jfr.Event {
+
+    @Label("Result")
+    @Description("intermediate code, symbol table or output")
+    String result;
+}
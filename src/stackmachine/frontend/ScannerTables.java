@@ -0,0 +1,319 @@
+package stackmachine.frontend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Scanner tables built from lexicon.txt, which lists one token per line, its
+// name and its lexeme. Lexemes that start with a letter are keywords, they go
+// to a perfect hash table, so telling a keyword from an identifier costs one
+// hash of the word and one compare. The other lexemes are operators and
+// delimiters, they are recognized by a minimized DFA over ASCII, run with the
+// longest match. Adding a token to the language is a change of lexicon.txt.
+//
+// Tokens are numbered in the order of lexicon.txt.
+public class ScannerTables {
+
+    // FNV-1a, with the seed found for the keywords as offset basis
+    static final int HASH_PRIME = 0x01000193;
+
+    private static ScannerTables standard;
+
+    // tokens
+    private final String[] names;
+    private final String[] lexemes;
+    private final TokenKind[] kinds;
+    private final Map<String, Integer> byName;
+
+    // operator DFA, state 0 is the start, ASCII transitions, -1 when there is
+    // none, and the token accepted in each state or -1
+    final int[] transitions;
+    final int[] accepts;
+    private final int trieStates;
+
+    // keyword perfect hash, the token of each slot or -1
+    final int[] keywordSlots;
+    final byte[][] keywordBytes;
+    final int keywordSeed;
+    final int keywordMask;
+
+    private ScannerTables(List<String> names, List<String> lexemes) {
+        int tokens = names.size();
+
+        this.names = names.toArray(new String[tokens]);
+        this.lexemes = lexemes.toArray(new String[tokens]);
+        this.kinds = new TokenKind[tokens];
+        this.byName = new HashMap<String, Integer>();
+
+        List<Integer> keywords = new ArrayList<Integer>();
+        List<Integer> operators = new ArrayList<Integer>();
+
+        for (int token = 0; token < tokens; token++) {
+            this.kinds[token] = TokenKind.forName(this.names[token]);
+            this.byName.putIfAbsent(this.names[token], token);
+
+            char first = this.lexemes[token].charAt(0);
+
+            if ((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z'))
+                keywords.add(token);
+            else
+                operators.add(token);
+        }
+
+        // operators
+        Trie trie = new Trie();
+
+        for (int token : operators)
+            trie.add(this.lexemes[token], token);
+
+        this.trieStates = trie.size;
+
+        int[] state = minimize(trie.transitions, trie.accepts, trie.size);
+        int states = 0;
+
+        for (int s : state)
+            states = Math.max(states, s + 1);
+
+        this.transitions = new int[states * 128];
+        this.accepts = new int[states];
+        Arrays.fill(this.transitions, -1);
+
+        for (int s = 0; s < trie.size; s++) {
+            this.accepts[state[s]] = trie.accepts[s];
+
+            for (int c = 0; c < 128; c++)
+                if (trie.transitions[s * 128 + c] >= 0)
+                    this.transitions[state[s] * 128 + c] = state[trie.transitions[s * 128 + c]];
+        }
+
+        // keywords
+        this.keywordBytes = new byte[tokens][];
+
+        for (int token : keywords)
+            this.keywordBytes[token] = this.lexemes[token].getBytes(StandardCharsets.US_ASCII);
+
+        // the smallest table of at least twice the keywords, larger when no seed is found
+        int size = Integer.highestOneBit(Math.max(2 * keywords.size() - 1, 1)) << 1;
+        int[] slots;
+        int seed;
+
+        search:
+        while (true) {
+            slots = new int[size];
+
+            for (seed = 0x811C9DC5; seed != 0x811C9DC5 + (1 << 16); seed++) {
+                Arrays.fill(slots, -1);
+
+                if (fill(slots, keywords, seed))
+                    break search;
+            }
+
+            size *= 2;
+        }
+
+        this.keywordSlots = slots;
+        this.keywordSeed = seed;
+        this.keywordMask = size - 1;
+    }
+
+    // the tables of lexicon.txt in the working directory, read once
+    public static synchronized ScannerTables standard() {
+        if (standard == null) {
+            try {
+                standard = load(Paths.get("lexicon.txt"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return standard;
+    }
+
+    public static ScannerTables load(Path lexicon) throws IOException {
+        List<String> names = new ArrayList<String>();
+        List<String> lexemes = new ArrayList<String>();
+
+        for (String line : Files.readAllLines(lexicon, StandardCharsets.UTF_8)) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("//"))
+                continue;
+
+            String[] fields = line.split("\\s+");
+
+            if (fields.length != 2)
+                throw new IllegalArgumentException("token name and lexeme expected: " + line);
+
+            names.add(fields[0]);
+            lexemes.add(fields[1]);
+        }
+
+        return new ScannerTables(names, lexemes);
+    }
+
+    // tokens
+
+    public int tokenCount() {
+        return this.names.length;
+    }
+
+    public String tokenName(int token) {
+        return this.names[token];
+    }
+
+    public String lexeme(int token) {
+        return this.lexemes[token];
+    }
+
+    // kind of a token, UNKNOWN for the tokens the parser does not know
+    public TokenKind kind(int token) {
+        return this.kinds[token];
+    }
+
+    // lexeme of a token name, or null
+    public String lexemeOf(String tokenName) {
+        Integer token = this.byName.get(tokenName);
+        return token == null ? null : this.lexemes[token];
+    }
+
+    // states of the operator DFA, before and after minimization
+    public int trieStates() {
+        return this.trieStates;
+    }
+
+    public int operatorStates() {
+        return this.accepts.length;
+    }
+
+    // keyword token of a word, given its hash, or -1; the bytes are compared by the caller
+    int keyword(int hash) {
+        return this.keywordSlots[(hash ^ (hash >>> 15)) & this.keywordMask];
+    }
+
+    // hash of a word, one step per byte starting from keywordSeed
+    static int hash(int hash, int b) {
+        return (hash ^ b) * HASH_PRIME;
+    }
+
+    private boolean fill(int[] slots, List<Integer> keywords, int seed) {
+        int mask = slots.length - 1;
+
+        for (int token : keywords) {
+            int hash = seed;
+
+            for (byte b : this.keywordBytes[token])
+                hash = hash(hash, b & 0xFF);
+
+            int slot = (hash ^ (hash >>> 15)) & mask;
+
+            if (slots[slot] >= 0)
+                return false;
+
+            slots[slot] = token;
+        }
+
+        return true;
+    }
+
+    // Minimizes a DFA by partition refinement (Moore): states start in blocks by
+    // the token they accept, and blocks are split by the blocks of their
+    // transitions until no block splits. Returns the minimal state of every
+    // state, the start state keeps number 0.
+    private static int[] minimize(int[] transitions, int[] accepts, int states) {
+        int[] block = new int[states];
+        int blocks = 0;
+
+        Map<List<Integer>, Integer> numbers = new HashMap<List<Integer>, Integer>();
+
+        while (true) {
+            numbers.clear();
+
+            int[] next = new int[states];
+
+            for (int s = 0; s < states; s++) {
+                List<Integer> signature = new ArrayList<Integer>(129);
+                signature.add(blocks == 0 ? accepts[s] : block[s]);
+
+                if (blocks > 0)
+                    for (int c = 0; c < 128; c++) {
+                        int t = transitions[s * 128 + c];
+                        signature.add(t < 0 ? -1 : block[t]);
+                    }
+
+                Integer number = numbers.get(signature);
+
+                if (number == null) {
+                    number = numbers.size();
+                    numbers.put(signature, number);
+                }
+
+                next[s] = number;
+            }
+
+            boolean stable = numbers.size() == blocks;
+
+            block = next;
+            blocks = numbers.size();
+
+            if (stable)
+                break;
+        }
+
+        return block;
+    }
+
+    // trie of the operator lexemes
+    private static class Trie {
+        int[] transitions = new int[16 * 128];
+        int[] accepts = new int[16];
+        int size;
+
+        Trie() {
+            newState();
+        }
+
+        void add(String lexeme, int token) {
+            int state = 0;
+
+            for (int i = 0; i < lexeme.length(); i++) {
+                int c = lexeme.charAt(i);
+
+                if (c >= 128)
+                    throw new IllegalArgumentException("lexeme is not ASCII: " + lexeme);
+
+                if (this.transitions[state * 128 + c] < 0) {
+                    // newState may replace the array
+                    int next = newState();
+                    this.transitions[state * 128 + c] = next;
+                }
+
+                state = this.transitions[state * 128 + c];
+            }
+
+            if (this.accepts[state] >= 0)
+                throw new IllegalArgumentException("lexeme defined twice: " + lexeme);
+
+            this.accepts[state] = token;
+        }
+
+        private int newState() {
+            if (this.size == this.accepts.length) {
+                this.transitions = Arrays.copyOf(this.transitions, 2 * this.transitions.length);
+                this.accepts = Arrays.copyOf(this.accepts, 2 * this.accepts.length);
+            }
+
+            Arrays.fill(this.transitions, this.size * 128, (this.size + 1) * 128, -1);
+            this.accepts[this.size] = -1;
+
+            return this.size++;
+        }
+    }
+}
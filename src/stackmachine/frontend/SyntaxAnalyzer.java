@@ -1,7 +1,5 @@
 package stackmachine.frontend;
 
-import java.util.*;
-
 import slu.compiler.*;
 
 /*
@@ -44,187 +42,121 @@ factor                 ->  (expression) |
                            num
  */
 
-public class SyntaxAnalyzer implements ISyntaxAnalyzer {
-    private Token token;
-    private LexicalAnalyzer lexicalAnalyzer;
-    private Map<String, DataType> symbolTable;
-    private Map<String, Object> values; // added this to keep track of variables' values
-    private List<String> code;
-    private String compile;
-    private int label;
-    private Stack<Object> stack;
-    private String postfix;
+public class SyntaxAnalyzer extends AbstractSyntaxAnalyzer {
 
     public SyntaxAnalyzer(LexicalAnalyzer lex) {
-        this.lexicalAnalyzer = lex;
-        this.token = this.lexicalAnalyzer.getToken();
-        this.symbolTable = new HashMap<String, DataType>();
-        this.values = new HashMap<String, Object>();
-        this.code = new ArrayList<String>();
-        this.compile = "";
-        this.label = 0;
-        this.stack = new Stack<Object>();
-        this.postfix = "";
+        super(lex);
     }
 
-
-    @Override
-    public boolean compile() {
-        program();
-
-        if(this.compile.equals("")){
-            return true;
-        }
-        return false;
+    public SyntaxAnalyzer(TokenCursor cursor) {
+        super(cursor);
     }
 
     @Override
-    public String output() {
-        return this.compile;
-    }
-
-    public String intermediateCode() {
-        String code = "";
-
-        for (String instruction : this.code)
-            code = code + instruction + "\n";
-
-        return code;
-    }
-
-    public String symbolTable() {
-        String symbols = "";
-
-        Set<Map.Entry<String, DataType>> s = this.symbolTable.entrySet();
-
-        for(Map.Entry<String, DataType> m : s)
-            symbols = symbols + "<'" + m.getKey() + "', " +
-                    m.getValue().toString() + "> \n";
-
-        return symbols;
-    }
-
-    // generates a new label for intermediate code
-    private int newLabel(){
-        int newLabel = label;
-        label++;
-        return newLabel;
+    protected void parse() {
+        program();
     }
 
     // Java code for the grammar rules and the semantic actions
     private void program(){
-        match("void");
-        match("main");
-        match("open_curly_bracket");
+        match(TokenKind.VOID);
+        match(TokenKind.MAIN);
+        match(TokenKind.OPEN_CURLY_BRACKET);
 
         declarations();
         instructions();
 
-        match("closed_curly_bracket");
+        match(TokenKind.CLOSED_CURLY_BRACKET);
 
         // add end to intermediate code
-        this.code.add("halt");
+        this.generator.halt();
     }
 
     private void declarations(){
-        String tokenName = this.token.getName();
-
-        if(tokenName.equals("int") || tokenName.equals("float") || tokenName.equals("boolean")) {
-            declaration();
-            declarations();
+        switch (this.kind) {
+            case INT:
+            case FLOAT:
+            case BOOLEAN:
+                declaration();
+                declarations();
+                break;
+            default:
+                // epsilon
         }
     }
 
     private void declaration(){
-        identifiers(type());
-        match("semicolon");
+        type();
+        identifiers();
+        match(TokenKind.SEMICOLON);
     }
 
-    private String type(){
-        String type = this.token.getName();
-
-        if(type.equals("int")){
-            match("int");
-        }
-        else if(type.equals("float")){
-            match("float");
-        }
-        else if(type.equals("boolean")){
-            match("boolean");
+    private void type(){
+        switch (this.kind) {
+            case INT:
+            case FLOAT:
+            case BOOLEAN:
+                this.generator.type(this.kind);
+                match(this.kind);
+                break;
+            default:
+                syntaxError("type expected", null);
         }
-        else{
-            System.out.println("Invalid type!");
-        }
-        return type;
     }
 
-    private void identifiers(String type){
-        if(this.token.getName().equals("id")) {
-            // get the id
-            Identifier id = (Identifier) this.token;
-
+    private void identifiers(){
+        if(this.kind == TokenKind.ID) {
             // add symbol using helper function
-            addSymbol(id, new PrimitiveType(type));
+            String id = this.cursor.name();
+            this.generator.declare(id);
 
-            match("id");
+            match(TokenKind.ID);
 
             optional_assignment(id);
 
-            moreIdentifiers(type);
+            moreIdentifiers();
         }
     }
 
-    private void moreIdentifiers(String type){
-        if(this.token.getName().equals("comma")) {
-            match("comma");
-            // more-identifiers.val = identifiers.val
-            Identifier id = (Identifier) this.token;
+    private void moreIdentifiers(){
+        if(this.kind == TokenKind.COMMA) {
+            match(TokenKind.COMMA);
 
-            // add symbol
-            addSymbol(id, new PrimitiveType(type));
+            // add symbol, more-identifiers.type = identifiers.type
+            String id = this.cursor.name();
+            this.generator.declare(id);
 
             // match
-            match("id");
+            match(TokenKind.ID);
 
             // call optional-assignment
             optional_assignment(id);
 
             // call more identifiers
-            moreIdentifiers(type);
+            moreIdentifiers();
         }
     }
 
-    private void optional_assignment(Identifier id){
+    private void optional_assignment(String id){
         // if =
-        if(this.token.getName().equals("assignment")){
-            this.code.add("lvalue " + id.getLexeme());
+        if(this.kind == TokenKind.ASSIGNMENT){
+            this.generator.assignmentTarget(id);
             // match =
-            match("assignment");
+            match(TokenKind.ASSIGNMENT);
 
             // call logic expression
             logic_expression();
 
-            // add intermediate code
-            this.code.add("=");
-
-            // add value
-            Object a = this.stack.pop();
-            addValue(id, a);
+            // add intermediate code and value
+            this.generator.assignment();
         }
         // epsilon
     }
 
     // convert to right recursion
     private void instructions() {
-        String tokenName = token.getName();
-        // delcaration
-        if (tokenName.equals("int") || tokenName.equals("float") || tokenName.equals("boolean")) {
-            instruction();
-            instructions();
-        }
-        // checking other instruction starters
-        // else is currently not included here -- possibly should be ?
-        else if(tokenName.equals("id") || tokenName.equals("if")  || tokenName.equals("while") || tokenName.equals("do") || tokenName.equals("print") || tokenName.equals("open_curly_bracket")){
+        // skips what cannot start an instruction, after an error
+        if (nextInstruction()) {
             instruction();
             instructions();
         }
@@ -233,137 +165,120 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
 
     // convert to right recursion
     private void instruction() {
-        String tokenName = token.getName();
-        if (tokenName.equals("int") || tokenName.equals("float") || tokenName.equals("boolean")) {
-            declaration();
-        }
+        switch (this.kind) {
+            case INT:
+            case FLOAT:
+            case BOOLEAN:
+                declaration();
+                break;
 
-        else if(this.token.getName().equals("id")){
-            Identifier id = (Identifier) this.token;
-            match("id");
+            case ID:
+                this.generator.assignmentTarget(this.cursor.name());
+                match(TokenKind.ID);
 
-            // add intermediate code
-            this.code.add("lvalue " + id.getLexeme());
+                match(TokenKind.ASSIGNMENT);
 
-            match("assignment");
+                logic_expression();
 
-            logic_expression();
-
-            // add value to table
-            addValue(id, (int)stack.pop());
+                // add intermediate code and value
+                this.generator.assignment();
 
-            // add intermediate code
-            this.code.add("=");
-
-            match("semicolon");
-        }
+                match(TokenKind.SEMICOLON);
+                break;
 
-        else if(this.token.getName().equals("if")){
-            // if (condition)
-            match("if");
-
-            match("open_parenthesis");
-
-            logic_expression();
+            case IF:
+                // if (condition)
+                match(TokenKind.IF);
 
-            match("closed_parenthesis");
+                match(TokenKind.OPEN_PARENTHESIS);
 
-            // intermediate code
-            int out = newLabel();
-            this.code.add("goFalse label_" + out);
+                logic_expression();
 
-            instruction();
+                match(TokenKind.CLOSED_PARENTHESIS);
 
-            // optional else
-            if(this.token.getName().equals("else")){
                 // intermediate code
-                int label_else = newLabel();
-                this.code.add("goto label_" + label_else);
-                this.code.add("label_" + out);
-
-                match("else");
+                this.generator.ifCondition();
 
                 instruction();
 
-                // intermediate code
-                this.code.add("label_" + label_else);
-            }
+                // optional else
+                if(this.kind == TokenKind.ELSE){
+                    // intermediate code
+                    this.generator.elseBranch();
 
-            else{
-                // if intermediate code
-                this.code.add("label " + out);
-            }
-        }
+                    match(TokenKind.ELSE);
 
-        else if(this.token.getName().equals("while")){
-            int test = newLabel();
+                    instruction();
 
-            match("while");
-            match("open_parenthesis");
+                    // intermediate code
+                    this.generator.endElse();
+                }
 
-            // intermediate code
-            this.code.add("label_" + test);
+                else{
+                    // if intermediate code
+                    this.generator.endIf();
+                }
+                break;
 
-            logic_expression();
+            case WHILE:
+                match(TokenKind.WHILE);
+                match(TokenKind.OPEN_PARENTHESIS);
 
-            // intermediate code
-            int out = newLabel();
-            this.code.add("gofalse label_" + out);
+                // intermediate code
+                this.generator.whileTest();
 
-            match("closed_parenthesis");
-            instruction();
+                logic_expression();
 
-            // intermediate code
-            this.code.add("goto label_" + test);
-            this.code.add("label_" + out);
-        }
+                // intermediate code
+                this.generator.whileCondition();
 
-        else if(this.token.getName().equals("do")){
-            match("do");
+                match(TokenKind.CLOSED_PARENTHESIS);
+                instruction();
 
-            // intermediate code
-            int test = newLabel();
-            this.code.add("label_" + test);
+                // intermediate code
+                this.generator.endWhile();
+                break;
 
-            instruction();
-            match("while");
-            match("open_parenthesis");
+            case DO:
+                match(TokenKind.DO);
 
-            logic_expression();
+                // intermediate code
+                this.generator.doTest();
 
-            match("closed_parenthesis");
+                instruction();
+                match(TokenKind.WHILE);
+                match(TokenKind.OPEN_PARENTHESIS);
 
-            // intermediate code
-            int out = newLabel();
-            this.code.add("gofalse label_" + out);
-            this.code.add("goto label_" + test);
-            this.code.add("label_" + out);
+                logic_expression();
 
-            match("semicolon");
-        }
+                match(TokenKind.CLOSED_PARENTHESIS);
 
-        else if(this.token.getName().equals("print")){
-            match("print");
-            match("open_parenthesis");
+                // intermediate code
+                this.generator.endDo();
 
-            // intermediate code
-            Identifier id = (Identifier) this.token;
-            this.code.add("print " + id.getLexeme());
+                match(TokenKind.SEMICOLON);
+                break;
 
-            match("id");
-            match("closed_parenthesis");
-            match("semicolon");
+            case PRINT:
+                match(TokenKind.PRINT);
+                match(TokenKind.OPEN_PARENTHESIS);
 
-        }
+                // intermediate code
+                this.generator.print(this.cursor.name());
 
-        else if(this.token.getName().equals("open_curly_bracket")){
-            match("open_curly_bracket");
-            instructions();
-            match("closed_curly_bracket");
-        }
+                match(TokenKind.ID);
+                match(TokenKind.CLOSED_PARENTHESIS);
+                match(TokenKind.SEMICOLON);
+                break;
 
-        else{
-            this.compile += "instruction error on line" + this.lexicalAnalyzer.getLine() + "\n";
+            case OPEN_CURLY_BRACKET:
+                match(TokenKind.OPEN_CURLY_BRACKET);
+                instructions();
+                match(TokenKind.CLOSED_CURLY_BRACKET);
+                break;
+
+            default:
+                syntaxError("instruction expected", null);
         }
 
     }
@@ -382,8 +297,12 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     }
 
     private void more_logic_factors(){
-        if(this.token.getName().equals("and")){
-            match("and");
+        if(this.kind == TokenKind.AND){
+            match(TokenKind.AND);
+
+            // intermediate code, jump when the left factor is false
+            this.generator.and();
+
             logic_factor();
             more_logic_factors();
         }
@@ -391,8 +310,12 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     }
 
     private void more_logic_terms(){
-        if(this.token.getName().equals("or")){
-            match("or");
+        if(this.kind == TokenKind.OR){
+            match(TokenKind.OR);
+
+            // intermediate code, jump when the left term is true
+            this.generator.or();
+
             logic_term();
             more_logic_terms();
         }
@@ -402,21 +325,26 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     // logic-factor           ->  ! logic-factor | true | false |
     //                           relational-expression
     private void logic_factor(){
-        if(this.token.getName().equals("not")){
-            match("not");
-            logic_factor();
-        }
+        switch (this.kind) {
+            case NOT:
+                match(TokenKind.NOT);
 
-        else if(this.token.getName().equals("true")){
-            match("true");
-        }
+                // intermediate code, swaps the targets of the factor
+                this.generator.not();
 
-        else if(this.token.getName().equals("false")){
-            match("false");
-        }
+                logic_factor();
+                break;
+
+            case TRUE:
+            case FALSE:
+                // intermediate code
+                this.generator.literal(this.kind == TokenKind.TRUE);
+
+                match(this.kind);
+                break;
 
-        else{
-            relational_expression();
+            default:
+                relational_expression();
         }
     }
 
@@ -425,107 +353,52 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     private void relational_expression(){
         expression();
         // check if relational operator is involved
-        String tokenName = this.token.getName();
-        if(tokenName.equals("less_than") || tokenName.equals("less_equals") || tokenName.equals("greater_than") || tokenName.equals("greater_equals") || tokenName.equals("equals") || tokenName.equals("not_equals")){
-            String operator = relational_operator();
-            expression();
-            this.code.add(operator);
+        switch (this.kind) {
+            case LESS_THAN:
+            case LESS_EQUALS:
+            case GREATER_THAN:
+            case GREATER_EQUALS:
+            case EQUALS:
+            case NOT_EQUALS:
+                // relational-operator    ->  < | <= | > | >= | == | !=
+                TokenKind operator = this.kind;
+                match(operator);
+                expression();
+                this.generator.relational(operator);
+                break;
+            default:
+                // expression
         }
     }
 
-    // relational-operator    ->  < | <= | > | >= | == | !=
-    private String relational_operator(){
-        if(this.token.getName().equals("less_than")){
-            match("less_than");
-            return "<";
-        }
-
-        else if(this.token.getName().equals("less_equals")){
-            match("less_equals");
-            return "<=";
-        }
-
-        else if(this.token.getName().equals("greater_than")){
-            match("greater_than");
-            return ">";
-        }
-
-        else if(this.token.getName().equals("greater_equals")){
-            match("greater_equals");
-            return ">=";
-        }
-
-        else if(this.token.equals("equals")){
-            match("equals");
-            return "=";
-        }
-
-        else if(this.token.equals("not_equals")){
-            match("not_equals");
-            return "!=";
-        }
-
-        // compiler error
-        else{
-            this.compile += "\nError at line " +
-                    this.lexicalAnalyzer.getLine() + ", " +
-                    "relational operator" + " expected";
-        }
-        return "";
-    }
-
     // factor → ( expression ) |
+    //          id |
     //          num { print(num.val) }
     private void factor() {
-        if (this.token.getName().equals("open_parenthesis")) {
-            match("open_parenthesis");
-            expression();
-            match("closed_parenthesis");
-        }
-        else if(this.token.getName().equals("id")){
-            Identifier id = (Identifier) this.token;
-
-            int number = (int) values.get(id.getLexeme());
-            match("id");
-
-            // add to stack
-            this.postfix = this.postfix + " " + number + " ";
-            this.stack.push(number);
-
-            // add intermediate code
-            this.code.add("rvalue " + id.getLexeme());
-        }
-        else if (this.token.getName().equals("int")) {
-            // add integer to token
-            IntegerNumber number = (IntegerNumber) this.token;
-
-            // add integer to stack
-            this.postfix = this.postfix + " " + number.getValue() + " ";
-            this.stack.push(number.getValue());
-
-            // add intermediate code
-            this.code.add("push " + number.getValue());
-
-            // match
-            match("int");
-        }
-        else if (this.token.getName().equals("float")){
-            RealNumber number = (RealNumber) this.token;
-
-            // add to stack
-            this.postfix = this.postfix + " " + number.getValue() + " ";
-            this.stack.push(number.getValue());
-
-            // add intermediate code
-            this.code.add("push " + number.getValue());
-
-            // match
-            match("float");
-        }
-        else {
-            System.out.println("\nError at line " +
-                    this.lexicalAnalyzer.getLine() +
-                    ", open parenthesis or int expected");
+        switch (this.kind) {
+            case OPEN_PARENTHESIS:
+                match(TokenKind.OPEN_PARENTHESIS);
+                expression();
+                match(TokenKind.CLOSED_PARENTHESIS);
+                break;
+
+            case ID:
+                this.generator.variable(this.cursor.name());
+                match(TokenKind.ID);
+                break;
+
+            case INTEGER_NUMBER:
+                this.generator.integer(this.cursor.intValue());
+                match(this.kind);
+                break;
+
+            case REAL_NUMBER:
+                this.generator.real(this.cursor.floatValue());
+                match(this.kind);
+                break;
+
+            default:
+                syntaxError("open parenthesis, identifier or number expected", null);
         }
     }
 
@@ -534,57 +407,19 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     //                % factor { print(“%”) } more-factors |
     //                ε
     private void moreFactors() {
-        if (this.token.getName().equals("multiply")) {
-            match("multiply");
-            factor();
-            // add to token
-            this.postfix = this.postfix + " * ";
-
-            // add to intermediate code
-            this.code.add("*");
-
-            // pop off stack and perform operation
-            int num1 = (int) this.stack.pop();
-            int num2 = (int) this.stack.pop();
-            this.stack.push(num2 * num1);
-            int val = num2 * num1;
-            moreFactors();
-
-        } else if (this.token.getName().equals("divide")) {
-            match("divide");
-            factor();
-            // add to postfix
-            this.postfix = this.postfix + " / ";
-
-            // add to intermediate code
-            this.code.add("/");
-
-            // pop off the stack
-            int num1 = (int) this.stack.pop();
-            int num2 = (int) this.stack.pop();
-            int newNum = num2 / num1;
-            this.stack.push(newNum);
-            moreFactors();
-        } else if (this.token.getName().equals("remainder")) {
-            match("remainder");
-            factor();
-            // add to postfix
-            this.postfix = this.postfix + " % ";
-
-            // add to intermediate code
-            this.code.add("%");
-
-            // pop off the stack
-            int num1 = (int) this.stack.pop();
-            int num2 = (int) this.stack.pop();
-            this.stack.push(num2 % num1);
-            int val = num2 % num1;
-
-            // add to intermediate code
-            this.code.add("push " + val);
-
-            // next call
-            moreFactors();
+        switch (this.kind) {
+            case MULTIPLY:
+            case DIVIDE:
+            case REMAINDER:
+                TokenKind operator = this.kind;
+                match(operator);
+                factor();
+                this.generator.arithmetic(operator);
+                moreFactors();
+                break;
+
+            default:
+                // epsilon
         }
     }
 
@@ -605,78 +440,18 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     //              – term { print(“-”) } more-terms |
     //              ε
     private void moreTerms() {
-        if (this.token.getName().equals("add")) {
-            match("add");
-            term();
-            // add the + to the token
-            this.postfix = this.postfix + " + ";
-
-            // add + to intermediate code
-            this.code.add("+");
-
-            // pop off the stack
-            int num1 = (int) this.stack.pop();
-            int num2 = (int) this.stack.pop();
-            int newNum = num2 + num1;
-            // push to stack
-            this.stack.push(newNum);
-
-            moreTerms();
-        } else if (this.token.getName().equals("subtract")) {
-            match("subtract");
-            term();
-            // add - to the token
-            this.postfix = this.postfix + " - ";
-
-            // add to intermediate code
-            this.code.add("-");
-
-            // pop the two top numbers off the stack
-            int num1 = (int) this.stack.pop();
-            int num2 = (int) this.stack.pop();
-
-            // add to stack
-            this.stack.push(num2 - num1);
-
-            moreTerms();
-        }
-    }
-
-    // this function assigns variables their value
-    private void addValue(Identifier id, Object a){
-        if(this.symbolTable.get(id.getLexeme()) != null){
-            this.values.put(id.getLexeme(), a);
-        }
-
-        else{
-            this.compile += "\nError at line " + this.lexicalAnalyzer.getLine() + ", identifier '" + id.getLexeme() + "' is not declared";
-        }
-    }
-
-    private void addSymbol(Identifier id, PrimitiveType type){
-        if(this.symbolTable.get(id.getLexeme()) == null){
-            this.symbolTable.put(id.getLexeme(), type);
-        }
-        else {
-            this.compile += "\nError at line " + this.lexicalAnalyzer.getLine() + ", identifier '" + id.getLexeme() + "' is already declared";
-            //System.out.println("\nError at line " + this.lexicalAnalyzer.getLine() + ", identifier '" + id.getLexeme() + "' is already declared");
+        switch (this.kind) {
+            case ADD:
+            case SUBTRACT:
+                TokenKind operator = this.kind;
+                match(operator);
+                term();
+                this.generator.arithmetic(operator);
+                moreTerms();
+                break;
+
+            default:
+                // epsilon
         }
     }
-
-    // Java code for the grammar rules and the semantic actions
-    private void match(String tokenName) {
-        if (this.token.getName().equals(tokenName))
-            this.token = this.lexicalAnalyzer.getToken();
-        else {
-            this.compile += "\nError at line " +
-                    this.lexicalAnalyzer.getLine() + ", " +
-                    this.lexicalAnalyzer.getLexeme(tokenName) + " expected";
-            System.out.println("\nError at line " +
-                    this.lexicalAnalyzer.getLine() + ", " +
-                    this.lexicalAnalyzer.getLexeme(tokenName) + " expected");
-            System.out.println(this.token.getName());
-        }
-    }
-
 }
-
@@ -0,0 +1,619 @@
+package stackmachine.frontend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import slu.compiler.LexicalAnalyzer;
+
+/*
+LL(1) version of the grammar documented in SyntaxAnalyzer, #action marks a
+semantic action of the code generator:
+
+program                ->  void main { declarations instructions } #halt
+declarations           ->  declaration declarations | ε
+declaration            ->  type identifiers ;
+type                   ->  #type int | #type float | #type boolean
+identifiers            ->  #declare id optional-assignment more-identifiers | ε
+more-identifiers       ->  , #declare id optional-assignment more-identifiers | ε
+optional-assignment    ->  #initialize = logic-expression #assignment | ε
+instructions           ->  instruction instructions | ε
+instruction            ->  declaration |
+                           #target id = logic-expression #assignment ; |
+                           if ( logic-expression ) #if instruction else-part |
+                           while ( #while logic-expression #condition ) instruction #end-while |
+                           do #do instruction while ( logic-expression ) #end-do ; |
+                           print ( #print id ) ; |
+                           { instructions }
+else-part              ->  #else else instruction #end-else | #end-if
+logic-expression       ->  logic-term more-logic-terms
+more-logic-terms       ->  || #or logic-term more-logic-terms | ε
+logic-term             ->  logic-factor more-logic-factors
+more-logic-factors     ->  && #and logic-factor more-logic-factors | ε
+logic-factor           ->  ! #not logic-factor | #literal true | #literal false |
+                           relational-expression
+relational-expression  ->  expression relational-tail
+relational-tail        ->  < expression #< | <= expression #<= | > expression #> |
+                           >= expression #>= | == expression #== | != expression #!= | ε
+expression             ->  term more-terms
+more-terms             ->  + term #+ more-terms | - term #- more-terms | ε
+term                   ->  factor more-factors
+more-factors           ->  * factor #* more-factors | / factor #/ more-factors |
+                           % factor #% more-factors | ε
+factor                 ->  ( expression ) | #rvalue id | #push num
+
+The actions that take an identifier or a number come before it, like in the
+recursive parser, so that they read the token, and its line, as the
+lookahead. #initialize takes the identifier just declared.
+
+The table resolves the two conflicts of the grammar the way the recursive
+parser does: a type keyword starts another declaration, and else belongs to
+the closest if.
+ */
+
+// Parser engine driven by a precomputed LL(1) parse table and an explicit
+// stack of grammar symbols and semantic actions, instead of recursive methods.
+// Lists of instructions, identifiers and operands are parsed in constant stack
+// space, so programs of any length compile without a StackOverflowError. It
+// produces the same intermediate code as SyntaxAnalyzer.
+public class TableDrivenSyntaxAnalyzer extends AbstractSyntaxAnalyzer {
+
+    private enum NonTerminal {
+        PROGRAM,
+        DECLARATIONS,
+        DECLARATION,
+        TYPE(true),
+        IDENTIFIERS,
+        MORE_IDENTIFIERS,
+        OPTIONAL_ASSIGNMENT,
+        INSTRUCTIONS,
+        INSTRUCTION(true),
+        ELSE_PART,
+        LOGIC_EXPRESSION,
+        MORE_LOGIC_TERMS,
+        LOGIC_TERM,
+        MORE_LOGIC_FACTORS,
+        LOGIC_FACTOR,
+        RELATIONAL_EXPRESSION,
+        RELATIONAL_TAIL,
+        EXPRESSION,
+        MORE_TERMS,
+        TERM,
+        MORE_FACTORS,
+        FACTOR(true);
+
+        // nonterminals that report an error when no production applies,
+        // the others fall back to their last production like the recursive parser
+        private final boolean reportsErrors;
+
+        NonTerminal() {
+            this(false);
+        }
+
+        NonTerminal(boolean reportsErrors) {
+            this.reportsErrors = reportsErrors;
+        }
+    }
+
+    private enum Action {
+        HALT,
+        TYPE,
+        DECLARE,
+        TARGET,
+        INITIALIZE,
+        ASSIGNMENT,
+        IF_CONDITION,
+        ELSE_BRANCH,
+        END_ELSE,
+        END_IF,
+        WHILE_TEST,
+        WHILE_CONDITION,
+        END_WHILE,
+        DO_TEST,
+        END_DO,
+        PRINT,
+        VARIABLE,
+        NUMBER,
+        NOT,
+        LITERAL,
+        AND,
+        OR,
+        LESS_THAN(TokenKind.LESS_THAN),
+        LESS_EQUALS(TokenKind.LESS_EQUALS),
+        GREATER_THAN(TokenKind.GREATER_THAN),
+        GREATER_EQUALS(TokenKind.GREATER_EQUALS),
+        EQUALS(TokenKind.EQUALS),
+        NOT_EQUALS(TokenKind.NOT_EQUALS),
+        ADD(TokenKind.ADD),
+        SUBTRACT(TokenKind.SUBTRACT),
+        MULTIPLY(TokenKind.MULTIPLY),
+        DIVIDE(TokenKind.DIVIDE),
+        REMAINDER(TokenKind.REMAINDER);
+
+        private final TokenKind operator;
+
+        Action() {
+            this(null);
+        }
+
+        Action(TokenKind operator) {
+            this.operator = operator;
+        }
+    }
+
+    // grammar symbols are encoded as ints: terminals first, then nonterminals, then actions
+    private static final TokenKind[] KINDS = TokenKind.values();
+    private static final NonTerminal[] NONTERMINALS = NonTerminal.values();
+    private static final Action[] ACTIONS = Action.values();
+
+    private static final int TERMINAL_COUNT = KINDS.length;
+    private static final int FIRST_NONTERMINAL = TERMINAL_COUNT;
+    private static final int FIRST_ACTION = FIRST_NONTERMINAL + NONTERMINALS.length;
+
+    // right hand sides of the productions, reversed so they can be pushed in order
+    private static final int[][] PRODUCTIONS;
+
+    // production to apply for [nonterminal * TERMINAL_COUNT + lookahead], -1 for an error
+    private static final int[] TABLE;
+
+    static {
+        Grammar grammar = new Grammar();
+        NonTerminal n;
+
+        n = NonTerminal.PROGRAM;
+        grammar.add(n, TokenKind.VOID, TokenKind.MAIN, TokenKind.OPEN_CURLY_BRACKET,
+                NonTerminal.DECLARATIONS, NonTerminal.INSTRUCTIONS, TokenKind.CLOSED_CURLY_BRACKET, Action.HALT);
+
+        n = NonTerminal.DECLARATIONS;
+        grammar.add(n, NonTerminal.DECLARATION, NonTerminal.DECLARATIONS);
+        grammar.add(n);
+
+        n = NonTerminal.DECLARATION;
+        grammar.add(n, NonTerminal.TYPE, NonTerminal.IDENTIFIERS, TokenKind.SEMICOLON);
+
+        n = NonTerminal.TYPE;
+        grammar.add(n, Action.TYPE, TokenKind.INT);
+        grammar.add(n, Action.TYPE, TokenKind.FLOAT);
+        grammar.add(n, Action.TYPE, TokenKind.BOOLEAN);
+
+        n = NonTerminal.IDENTIFIERS;
+        grammar.add(n, Action.DECLARE, TokenKind.ID, NonTerminal.OPTIONAL_ASSIGNMENT, NonTerminal.MORE_IDENTIFIERS);
+        grammar.add(n);
+
+        n = NonTerminal.MORE_IDENTIFIERS;
+        grammar.add(n, TokenKind.COMMA, Action.DECLARE, TokenKind.ID,
+                NonTerminal.OPTIONAL_ASSIGNMENT, NonTerminal.MORE_IDENTIFIERS);
+        grammar.add(n);
+
+        n = NonTerminal.OPTIONAL_ASSIGNMENT;
+        grammar.add(n, Action.INITIALIZE, TokenKind.ASSIGNMENT, NonTerminal.LOGIC_EXPRESSION, Action.ASSIGNMENT);
+        grammar.add(n);
+
+        n = NonTerminal.INSTRUCTIONS;
+        grammar.add(n, NonTerminal.INSTRUCTION, NonTerminal.INSTRUCTIONS);
+        grammar.add(n);
+
+        n = NonTerminal.INSTRUCTION;
+        grammar.add(n, NonTerminal.DECLARATION);
+        grammar.add(n, Action.TARGET, TokenKind.ID, TokenKind.ASSIGNMENT, NonTerminal.LOGIC_EXPRESSION,
+                Action.ASSIGNMENT, TokenKind.SEMICOLON);
+        grammar.add(n, TokenKind.IF, TokenKind.OPEN_PARENTHESIS, NonTerminal.LOGIC_EXPRESSION,
+                TokenKind.CLOSED_PARENTHESIS, Action.IF_CONDITION, NonTerminal.INSTRUCTION, NonTerminal.ELSE_PART);
+        grammar.add(n, TokenKind.WHILE, TokenKind.OPEN_PARENTHESIS, Action.WHILE_TEST, NonTerminal.LOGIC_EXPRESSION,
+                Action.WHILE_CONDITION, TokenKind.CLOSED_PARENTHESIS, NonTerminal.INSTRUCTION, Action.END_WHILE);
+        grammar.add(n, TokenKind.DO, Action.DO_TEST, NonTerminal.INSTRUCTION, TokenKind.WHILE,
+                TokenKind.OPEN_PARENTHESIS, NonTerminal.LOGIC_EXPRESSION, TokenKind.CLOSED_PARENTHESIS,
+                Action.END_DO, TokenKind.SEMICOLON);
+        grammar.add(n, TokenKind.PRINT, TokenKind.OPEN_PARENTHESIS, Action.PRINT, TokenKind.ID,
+                TokenKind.CLOSED_PARENTHESIS, TokenKind.SEMICOLON);
+        grammar.add(n, TokenKind.OPEN_CURLY_BRACKET, NonTerminal.INSTRUCTIONS, TokenKind.CLOSED_CURLY_BRACKET);
+
+        n = NonTerminal.ELSE_PART;
+        grammar.add(n, Action.ELSE_BRANCH, TokenKind.ELSE, NonTerminal.INSTRUCTION, Action.END_ELSE);
+        grammar.add(n, Action.END_IF);
+
+        n = NonTerminal.LOGIC_EXPRESSION;
+        grammar.add(n, NonTerminal.LOGIC_TERM, NonTerminal.MORE_LOGIC_TERMS);
+
+        n = NonTerminal.MORE_LOGIC_TERMS;
+        grammar.add(n, TokenKind.OR, Action.OR, NonTerminal.LOGIC_TERM, NonTerminal.MORE_LOGIC_TERMS);
+        grammar.add(n);
+
+        n = NonTerminal.LOGIC_TERM;
+        grammar.add(n, NonTerminal.LOGIC_FACTOR, NonTerminal.MORE_LOGIC_FACTORS);
+
+        n = NonTerminal.MORE_LOGIC_FACTORS;
+        grammar.add(n, TokenKind.AND, Action.AND, NonTerminal.LOGIC_FACTOR, NonTerminal.MORE_LOGIC_FACTORS);
+        grammar.add(n);
+
+        n = NonTerminal.LOGIC_FACTOR;
+        grammar.add(n, TokenKind.NOT, Action.NOT, NonTerminal.LOGIC_FACTOR);
+        grammar.add(n, Action.LITERAL, TokenKind.TRUE);
+        grammar.add(n, Action.LITERAL, TokenKind.FALSE);
+        grammar.add(n, NonTerminal.RELATIONAL_EXPRESSION);
+
+        n = NonTerminal.RELATIONAL_EXPRESSION;
+        grammar.add(n, NonTerminal.EXPRESSION, NonTerminal.RELATIONAL_TAIL);
+
+        n = NonTerminal.RELATIONAL_TAIL;
+        grammar.add(n, TokenKind.LESS_THAN, NonTerminal.EXPRESSION, Action.LESS_THAN);
+        grammar.add(n, TokenKind.LESS_EQUALS, NonTerminal.EXPRESSION, Action.LESS_EQUALS);
+        grammar.add(n, TokenKind.GREATER_THAN, NonTerminal.EXPRESSION, Action.GREATER_THAN);
+        grammar.add(n, TokenKind.GREATER_EQUALS, NonTerminal.EXPRESSION, Action.GREATER_EQUALS);
+        grammar.add(n, TokenKind.EQUALS, NonTerminal.EXPRESSION, Action.EQUALS);
+        grammar.add(n, TokenKind.NOT_EQUALS, NonTerminal.EXPRESSION, Action.NOT_EQUALS);
+        grammar.add(n);
+
+        n = NonTerminal.EXPRESSION;
+        grammar.add(n, NonTerminal.TERM, NonTerminal.MORE_TERMS);
+
+        n = NonTerminal.MORE_TERMS;
+        grammar.add(n, TokenKind.ADD, NonTerminal.TERM, Action.ADD, NonTerminal.MORE_TERMS);
+        grammar.add(n, TokenKind.SUBTRACT, NonTerminal.TERM, Action.SUBTRACT, NonTerminal.MORE_TERMS);
+        grammar.add(n);
+
+        n = NonTerminal.TERM;
+        grammar.add(n, NonTerminal.FACTOR, NonTerminal.MORE_FACTORS);
+
+        n = NonTerminal.MORE_FACTORS;
+        grammar.add(n, TokenKind.MULTIPLY, NonTerminal.FACTOR, Action.MULTIPLY, NonTerminal.MORE_FACTORS);
+        grammar.add(n, TokenKind.DIVIDE, NonTerminal.FACTOR, Action.DIVIDE, NonTerminal.MORE_FACTORS);
+        grammar.add(n, TokenKind.REMAINDER, NonTerminal.FACTOR, Action.REMAINDER, NonTerminal.MORE_FACTORS);
+        grammar.add(n);
+
+        n = NonTerminal.FACTOR;
+        grammar.add(n, TokenKind.OPEN_PARENTHESIS, NonTerminal.EXPRESSION, TokenKind.CLOSED_PARENTHESIS);
+        grammar.add(n, Action.VARIABLE, TokenKind.ID);
+        grammar.add(n, Action.NUMBER, TokenKind.INTEGER_NUMBER);
+        grammar.add(n, Action.NUMBER, TokenKind.REAL_NUMBER);
+
+        PRODUCTIONS = grammar.reversedProductions();
+        TABLE = grammar.parseTable();
+    }
+
+    // the identifier of the last declaration, the target of its value
+    private String declared;
+
+    // explicit parse stack of encoded grammar symbols
+    private int[] stack;
+    private int top;
+
+    public TableDrivenSyntaxAnalyzer(LexicalAnalyzer lex) {
+        super(lex);
+        this.stack = new int[64];
+        this.top = 0;
+    }
+
+    public TableDrivenSyntaxAnalyzer(TokenCursor cursor) {
+        super(cursor);
+        this.stack = new int[64];
+        this.top = 0;
+    }
+
+    @Override
+    protected void parse() {
+        push(FIRST_NONTERMINAL + NonTerminal.PROGRAM.ordinal());
+
+        while (this.top > 0) {
+            int symbol = this.stack[--this.top];
+
+            if (symbol < FIRST_NONTERMINAL) {
+                TokenKind expected = KINDS[symbol];
+
+                if (this.kind == expected) {
+                    nextToken();
+                }
+                else {
+                    // reports the error and continues without consuming the token
+                    match(expected);
+                }
+            }
+            else if (symbol < FIRST_ACTION) {
+                int nonterminal = symbol - FIRST_NONTERMINAL;
+
+                // skips what cannot start an instruction, after an error
+                if (nonterminal == NonTerminal.INSTRUCTIONS.ordinal())
+                    nextInstruction();
+
+                int production = TABLE[nonterminal * TERMINAL_COUNT + this.kind.ordinal()];
+
+                if (production < 0)
+                    syntaxError(NONTERMINALS[nonterminal]);
+                else
+                    push(PRODUCTIONS[production]);
+            }
+            else {
+                perform(ACTIONS[symbol - FIRST_ACTION]);
+            }
+        }
+    }
+
+    // the actions run before the token they take, name() is null when it is
+    // not an identifier
+    private void perform(Action action) {
+        switch (action) {
+            case HALT:
+                this.generator.halt();
+                break;
+            case TYPE:
+                this.generator.type(this.kind);
+                break;
+            case DECLARE:
+                this.declared = this.cursor.name();
+                this.generator.declare(this.declared);
+                break;
+            case TARGET:
+                this.generator.assignmentTarget(this.cursor.name());
+                break;
+            case INITIALIZE:
+                this.generator.assignmentTarget(this.declared);
+                break;
+            case ASSIGNMENT:
+                this.generator.assignment();
+                break;
+            case IF_CONDITION:
+                this.generator.ifCondition();
+                break;
+            case ELSE_BRANCH:
+                this.generator.elseBranch();
+                break;
+            case END_ELSE:
+                this.generator.endElse();
+                break;
+            case END_IF:
+                this.generator.endIf();
+                break;
+            case WHILE_TEST:
+                this.generator.whileTest();
+                break;
+            case WHILE_CONDITION:
+                this.generator.whileCondition();
+                break;
+            case END_WHILE:
+                this.generator.endWhile();
+                break;
+            case DO_TEST:
+                this.generator.doTest();
+                break;
+            case END_DO:
+                this.generator.endDo();
+                break;
+            case PRINT:
+                this.generator.print(this.cursor.name());
+                break;
+            case VARIABLE:
+                this.generator.variable(this.cursor.name());
+                break;
+            case NUMBER:
+                if (this.kind == TokenKind.INTEGER_NUMBER)
+                    this.generator.integer(this.cursor.intValue());
+                else
+                    this.generator.real(this.cursor.floatValue());
+                break;
+            case NOT:
+                this.generator.not();
+                break;
+            case LITERAL:
+                this.generator.literal(this.kind == TokenKind.TRUE);
+                break;
+            case AND:
+                this.generator.and();
+                break;
+            case OR:
+                this.generator.or();
+                break;
+            case LESS_THAN:
+            case LESS_EQUALS:
+            case GREATER_THAN:
+            case GREATER_EQUALS:
+            case EQUALS:
+            case NOT_EQUALS:
+                this.generator.relational(action.operator);
+                break;
+            default:
+                this.generator.arithmetic(action.operator);
+        }
+    }
+
+    private void syntaxError(NonTerminal nonterminal) {
+        switch (nonterminal) {
+            case INSTRUCTION:
+                syntaxError("instruction expected", null);
+                break;
+            case FACTOR:
+                syntaxError("open parenthesis, identifier or number expected", null);
+                break;
+            default:
+                syntaxError("type expected", null);
+        }
+    }
+
+    private void push(int symbol) {
+        if (this.top == this.stack.length)
+            this.stack = Arrays.copyOf(this.stack, 2 * this.stack.length);
+
+        this.stack[this.top++] = symbol;
+    }
+
+    private void push(int[] reversedProduction) {
+        if (this.top + reversedProduction.length > this.stack.length)
+            this.stack = Arrays.copyOf(this.stack, 2 * (this.top + reversedProduction.length));
+
+        System.arraycopy(reversedProduction, 0, this.stack, this.top, reversedProduction.length);
+        this.top += reversedProduction.length;
+    }
+
+    // builds the parse table from the productions, once, when the class is loaded
+    private static class Grammar {
+        private final List<NonTerminal> heads = new ArrayList<NonTerminal>();
+        private final List<int[]> bodies = new ArrayList<int[]>();
+
+        void add(NonTerminal head, Object... body) {
+            int[] symbols = new int[body.length];
+
+            for (int i = 0; i < body.length; i++) {
+                if (body[i] instanceof TokenKind)
+                    symbols[i] = ((TokenKind) body[i]).ordinal();
+                else if (body[i] instanceof NonTerminal)
+                    symbols[i] = FIRST_NONTERMINAL + ((NonTerminal) body[i]).ordinal();
+                else
+                    symbols[i] = FIRST_ACTION + ((Action) body[i]).ordinal();
+            }
+
+            this.heads.add(head);
+            this.bodies.add(symbols);
+        }
+
+        int[][] reversedProductions() {
+            int[][] productions = new int[this.bodies.size()][];
+
+            for (int p = 0; p < productions.length; p++) {
+                int[] body = this.bodies.get(p);
+                productions[p] = new int[body.length];
+
+                for (int i = 0; i < body.length; i++)
+                    productions[p][i] = body[body.length - 1 - i];
+            }
+
+            return productions;
+        }
+
+        int[] parseTable() {
+            int nonterminals = NONTERMINALS.length;
+            boolean[] nullable = new boolean[nonterminals];
+            boolean[][] first = new boolean[nonterminals][TERMINAL_COUNT];
+            boolean[][] follow = new boolean[nonterminals][TERMINAL_COUNT];
+
+            follow[NonTerminal.PROGRAM.ordinal()][TokenKind.END_PROGRAM.ordinal()] = true;
+
+            // FIRST sets and nullable nonterminals
+            boolean changed = true;
+
+            while (changed) {
+                changed = false;
+
+                for (int p = 0; p < this.bodies.size(); p++) {
+                    int head = this.heads.get(p).ordinal();
+
+                    changed |= first(this.bodies.get(p), 0, first[head], first, nullable);
+
+                    if (!nullable[head] && nullable(this.bodies.get(p), 0, nullable)) {
+                        nullable[head] = true;
+                        changed = true;
+                    }
+                }
+            }
+
+            // FOLLOW sets
+            changed = true;
+
+            while (changed) {
+                changed = false;
+
+                for (int p = 0; p < this.bodies.size(); p++) {
+                    int head = this.heads.get(p).ordinal();
+                    int[] body = this.bodies.get(p);
+
+                    for (int i = 0; i < body.length; i++) {
+                        if (!isNonTerminal(body[i]))
+                            continue;
+
+                        int symbol = body[i] - FIRST_NONTERMINAL;
+
+                        changed |= first(body, i + 1, follow[symbol], first, nullable);
+
+                        if (nullable(body, i + 1, nullable))
+                            changed |= union(follow[symbol], follow[head]);
+                    }
+                }
+            }
+
+            // productions in declaration order, so the first one wins a conflict
+            int[] table = new int[nonterminals * TERMINAL_COUNT];
+            Arrays.fill(table, -1);
+
+            for (int p = 0; p < this.bodies.size(); p++) {
+                int head = this.heads.get(p).ordinal();
+                boolean[] lookaheads = new boolean[TERMINAL_COUNT];
+
+                first(this.bodies.get(p), 0, lookaheads, first, nullable);
+
+                if (nullable(this.bodies.get(p), 0, nullable))
+                    union(lookaheads, follow[head]);
+
+                for (int t = 0; t < TERMINAL_COUNT; t++)
+                    if (lookaheads[t] && table[head * TERMINAL_COUNT + t] < 0)
+                        table[head * TERMINAL_COUNT + t] = p;
+            }
+
+            // like the recursive parser, any other lookahead takes the last alternative
+            for (NonTerminal head : NONTERMINALS) {
+                if (head.reportsErrors)
+                    continue;
+
+                int fallback = this.heads.lastIndexOf(head);
+
+                for (int t = 0; t < TERMINAL_COUNT; t++)
+                    if (table[head.ordinal() * TERMINAL_COUNT + t] < 0)
+                        table[head.ordinal() * TERMINAL_COUNT + t] = fallback;
+            }
+
+            return table;
+        }
+
+        // adds FIRST(body[from..]) to set, actions derive the empty string
+        private static boolean first(int[] body, int from, boolean[] set, boolean[][] first, boolean[] nullable) {
+            boolean changed = false;
+
+            for (int i = from; i < body.length; i++) {
+                int symbol = body[i];
+
+                if (symbol < FIRST_NONTERMINAL) {
+                    if (!set[symbol]) {
+                        set[symbol] = true;
+                        changed = true;
+                    }
+                    return changed;
+                }
+
+                if (isNonTerminal(symbol)) {
+                    changed |= union(set, first[symbol - FIRST_NONTERMINAL]);
+
+                    if (!nullable[symbol - FIRST_NONTERMINAL])
+                        return changed;
+                }
+            }
+
+            return changed;
+        }
+
+        private static boolean nullable(int[] body, int from, boolean[] nullable) {
+            for (int i = from; i < body.length; i++) {
+                if (body[i] < FIRST_NONTERMINAL)
+                    return false;
+
+                if (isNonTerminal(body[i]) && !nullable[body[i] - FIRST_NONTERMINAL])
+                    return false;
+            }
+
+            return true;
+        }
+
+        private static boolean isNonTerminal(int symbol) {
+            return symbol >= FIRST_NONTERMINAL && symbol < FIRST_ACTION;
+        }
+
+        private static boolean union(boolean[] set, boolean[] other) {
+            boolean changed = false;
+
+            for (int t = 0; t < set.length; t++) {
+                if (other[t] && !set[t]) {
+                    set[t] = true;
+                    changed = true;
+                }
+            }
+
+            return changed;
+        }
+    }
+}
@@ -6,15 +6,14 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import slu.compiler.LexicalAnalyzer;
 import slu.compiler.Token;
 
 public class TestProgram {
 
-    private static void showTokens(String inputFile) {
+    private static void showTokens(String inputFile) throws IOException {
         Token tokenName;
 
-        LexicalAnalyzer lex = new LexicalAnalyzer(inputFile, StandardCharsets.UTF_8);
+        MappedLexicalAnalyzer lex = new MappedLexicalAnalyzer(Paths.get(inputFile));
 
         do {
             tokenName = lex.getToken();
@@ -48,7 +47,7 @@ public class TestProgram {
         return s;
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         boolean verbose = true;
 
         String program = "src/program_5.txt";
@@ -56,17 +55,21 @@ public class TestProgram {
         if (verbose)
             showTokens(program);
 
-        SyntaxAnalyzer parser = new SyntaxAnalyzer(new LexicalAnalyzer(program, StandardCharsets.UTF_8));
+        SyntaxAnalyzer parser = new SyntaxAnalyzer(new MappedLexicalAnalyzer(Paths.get(program)));
 
         if (verbose)
             System.out.println(readAllInputFileContents(program, StandardCharsets.UTF_8) + "\n");
 
         if (parser.compile()) {
             System.out.println("Program compiled succesfully!");
-            System.out.println("\nSymbol table \n\n" + parser.symbolTable());
-            System.out.println("\nIntermediate code \n\n" + parser.intermediateCode());
+            System.out.print("\nSymbol table \n\n");
+            parser.writeSymbolTable(System.out);
+            System.out.print("\n\nIntermediate code \n\n");
+            parser.writeIntermediateCode(System.out);
+            System.out.println();
         } else {
-            System.out.println(parser.output());
+            parser.writeOutput(System.out);
+            System.out.println();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package stackmachine.frontend;
+
+import slu.compiler.Token;
+
+// TokenCursor that adds up the time spent reading tokens by another cursor,
+// put in front of the lexical analyzer only while compilations are recorded,
+// since reading the clock twice per token is not free
+class TimedCursor implements TokenCursor {
+    private final TokenCursor cursor;
+    private long nanos;
+
+    TimedCursor(TokenCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    // time spent reading tokens so far
+    long nanos() {
+        return this.nanos;
+    }
+
+    @Override
+    public TokenKind next() {
+        long start = System.nanoTime();
+        TokenKind kind = this.cursor.next();
+        this.nanos += System.nanoTime() - start;
+
+        return kind;
+    }
+
+    @Override
+    public TokenKind kind() {
+        return this.cursor.kind();
+    }
+
+    @Override
+    public String name() {
+        return this.cursor.name();
+    }
+
+    @Override
+    public int intValue() {
+        return this.cursor.intValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return this.cursor.floatValue();
+    }
+
+    @Override
+    public Token token() {
+        return this.cursor.token();
+    }
+
+    @Override
+    public Token getToken() {
+        next();
+        return token();
+    }
+
+    @Override
+    public int getLine() {
+        return this.cursor.getLine();
+    }
+
+    @Override
+    public String getLexeme(String tokenName) {
+        return this.cursor.getLexeme(tokenName);
+    }
+}
@@ -0,0 +1,29 @@
+package stackmachine.frontend;
+
+import slu.compiler.ILexicalAnalyzer;
+import slu.compiler.Token;
+
+// A lexical analyzer read one token at a time, without a Token object per
+// token. next() moves to the next token and the attributes of the current
+// token are read from the cursor; token() and getToken() create the Token
+// object for the callers that still need one.
+public interface TokenCursor extends ILexicalAnalyzer {
+
+    // reads the next token and returns its kind
+    public TokenKind next();
+
+    // kind of the current token
+    public TokenKind kind();
+
+    // name of the current identifier, null when the token is not an identifier;
+    // the same String is returned for every occurrence of a name
+    public String name();
+
+    // value of the current integer or real number
+    public int intValue();
+    public float floatValue();
+
+    // the current token as a Token object
+    public Token token();
+
+}
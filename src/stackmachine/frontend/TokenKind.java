@@ -0,0 +1,109 @@
+package stackmachine.frontend;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import slu.compiler.Identifier;
+import slu.compiler.IntegerNumber;
+import slu.compiler.RealNumber;
+import slu.compiler.Token;
+
+// Token kinds of the language, one per token name in lexicon.txt plus the
+// identifiers, numbers and end of program produced by the lexical analyzer.
+// The parser maps every token to its kind once, when it is read, and then
+// dispatches with switch statements instead of comparing token names.
+public enum TokenKind {
+
+    // relational operators and assignment
+    GREATER_THAN("greater_than"),
+    GREATER_EQUALS("greater_equals"),
+    LESS_THAN("less_than"),
+    LESS_EQUALS("less_equals"),
+    EQUALS("equals"),
+    NOT_EQUALS("not_equals"),
+    ASSIGNMENT("assignment"),
+
+    // arithmetic operators
+    ADD("add"),
+    SUBTRACT("subtract"),
+    MULTIPLY("multiply"),
+    DIVIDE("divide"),
+    REMAINDER("remainder"),
+
+    // logic operators
+    AND("and"),
+    OR("or"),
+    NOT("not"),
+
+    // delimiters
+    DOT("dot"),
+    COMMA("comma"),
+    SEMICOLON("semicolon"),
+    OPEN_PARENTHESIS("open_parenthesis"),
+    CLOSED_PARENTHESIS("closed_parenthesis"),
+    OPEN_SQUARE_BRACKET("open_square_bracket"),
+    CLOSED_SQUARE_BRACKET("closed_square_bracket"),
+    OPEN_CURLY_BRACKET("open_curly_bracket"),
+    CLOSED_CURLY_BRACKET("closed_curly_bracket"),
+
+    // keywords
+    BOOLEAN("boolean"),
+    DO("do"),
+    ELSE("else"),
+    FALSE("false"),
+    FLOAT("float"),
+    IF("if"),
+    INT("int"),
+    MAIN("main"),
+    PRINT("print"),
+    WHILE("while"),
+    TRUE("true"),
+    VOID("void"),
+
+    // tokens with attributes, the numbers share their names with the type keywords
+    ID("id"),
+    INTEGER_NUMBER("int"),
+    REAL_NUMBER("float"),
+
+    END_PROGRAM("end_program"),
+    UNKNOWN("");
+
+    private static final Map<String, TokenKind> byName = new HashMap<String, TokenKind>();
+
+    static {
+        // the keywords come before the numbers, so "int" and "float" map to the keywords
+        for (TokenKind kind : values())
+            byName.putIfAbsent(kind.tokenName, kind);
+    }
+
+    private final String tokenName;
+
+    TokenKind(String tokenName) {
+        this.tokenName = tokenName;
+    }
+
+    public String getTokenName() {
+        return this.tokenName;
+    }
+
+    // kind of a token read from the lexical analyzer
+    public static TokenKind of(Token token) {
+        if (token instanceof Identifier)
+            return ID;
+
+        if (token instanceof IntegerNumber)
+            return INTEGER_NUMBER;
+
+        if (token instanceof RealNumber)
+            return REAL_NUMBER;
+
+        return forName(token.getName());
+    }
+
+    // kind of a token name, as written in lexicon.txt
+    public static TokenKind forName(String tokenName) {
+        TokenKind kind = byName.get(tokenName);
+
+        return kind == null ? UNKNOWN : kind;
+    }
+}
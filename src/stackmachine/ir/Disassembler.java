@@ -0,0 +1,59 @@
+package stackmachine.ir;
+
+import java.io.IOException;
+
+// Writes a program in the textual form of the intermediate code, one
+// instruction per line, e.g. "rvalue i", "push 5", "fpush 2.5" or "gofalse label_3".
+public class Disassembler {
+
+    private Disassembler() {
+    }
+
+    public static void write(Program program, Appendable out) throws IOException {
+        for (int i = 0; i < program.size(); i++) {
+            write(program, i, out);
+            out.append('\n');
+        }
+    }
+
+    public static void write(Program program, int instruction, Appendable out) throws IOException {
+        int opcode = program.opcode(instruction);
+        int operand = program.operand(instruction);
+
+        switch (opcode) {
+            case Opcode.PUSH:
+            case Opcode.FLOAT_PUSH:
+                out.append(Opcode.mnemonic(opcode)).append(' ').append(constant(program, operand));
+                break;
+            case Opcode.RVALUE:
+            case Opcode.LVALUE:
+            case Opcode.PRINT:
+            case Opcode.FLOAT_PRINT:
+                out.append(Opcode.mnemonic(opcode)).append(' ').append(program.variable(operand));
+                break;
+            case Opcode.GOTO:
+            case Opcode.GOFALSE:
+                // the target is a label instruction
+                out.append(Opcode.mnemonic(opcode)).append(" label_").append(String.valueOf(program.operand(operand)));
+                break;
+            case Opcode.LABEL:
+                out.append("label_").append(String.valueOf(operand));
+                break;
+            case Opcode.INT_TO_FLOAT:
+                // the depth is only written when it is not the top
+                out.append(Opcode.mnemonic(opcode));
+                if (operand != 0)
+                    out.append(' ').append(String.valueOf(operand));
+                break;
+            default:
+                out.append(Opcode.mnemonic(opcode));
+        }
+    }
+
+    public static String constant(Program program, int constant) {
+        if (program.isReal(constant))
+            return String.valueOf(program.realConstant(constant));
+
+        return String.valueOf(program.integerConstant(constant));
+    }
+}
@@ -0,0 +1,144 @@
+package stackmachine.ir;
+
+// Opcodes of the stack machine intermediate code. Every instruction is encoded
+// as two ints, the opcode and its operand, which is 0 for instructions without one.
+//
+// The code is typed: values are ints, with booleans as 1 and 0, or floats, and
+// each instruction that depends on the type of its values has an int and a
+// float version. Mixed expressions are converted explicitly with i2f and f2i,
+// so a value never needs a flag that tells its type. Variables and the stack
+// hold the bits of their values, see Float.floatToRawIntBits.
+public final class Opcode {
+
+    public static final int HALT = 0;
+
+    // push <constant pool index>, an int
+    public static final int PUSH = 1;
+
+    // rvalue, lvalue and print <variable index>, print prints an int
+    public static final int RVALUE = 2;
+    public static final int LVALUE = 3;
+    public static final int PRINT = 4;
+
+    // stores the value on top of the stack in the variable below it
+    public static final int ASSIGN = 5;
+
+    // int operators, relational operators give 1 or 0
+    public static final int ADD = 6;
+    public static final int SUBTRACT = 7;
+    public static final int MULTIPLY = 8;
+    public static final int DIVIDE = 9;
+    public static final int REMAINDER = 10;
+
+    public static final int LESS_THAN = 11;
+    public static final int LESS_EQUALS = 12;
+    public static final int GREATER_THAN = 13;
+    public static final int GREATER_EQUALS = 14;
+    public static final int EQUALS = 15;
+    public static final int NOT_EQUALS = 16;
+
+    // goto and gofalse <index of the target label instruction>, the condition is an int
+    public static final int GOTO = 17;
+    public static final int GOFALSE = 18;
+
+    // label <label number>, executes as a no-op
+    public static final int LABEL = 19;
+
+    // float versions of the operators, in the same order, relational operators
+    // give the int 1 or 0
+    public static final int FLOAT_ADD = 20;
+    public static final int FLOAT_SUBTRACT = 21;
+    public static final int FLOAT_MULTIPLY = 22;
+    public static final int FLOAT_DIVIDE = 23;
+    public static final int FLOAT_REMAINDER = 24;
+
+    public static final int FLOAT_LESS_THAN = 25;
+    public static final int FLOAT_LESS_EQUALS = 26;
+    public static final int FLOAT_GREATER_THAN = 27;
+    public static final int FLOAT_GREATER_EQUALS = 28;
+    public static final int FLOAT_EQUALS = 29;
+    public static final int FLOAT_NOT_EQUALS = 30;
+
+    // fpush <constant pool index> and fprint <variable index>, of a float
+    public static final int FLOAT_PUSH = 31;
+    public static final int FLOAT_PRINT = 32;
+
+    // i2f <depth> converts the int on top of the stack, depth 0, or the one
+    // below it, depth 1, to a float; f2i truncates the float on top to an int
+    public static final int INT_TO_FLOAT = 33;
+    public static final int FLOAT_TO_INT = 34;
+
+    public static final int COUNT = 35;
+
+    // distance from an int operator to its float version
+    private static final int FLOAT_OFFSET = FLOAT_ADD - ADD;
+
+    private static final String[] MNEMONICS = {
+            "halt", "push", "rvalue", "lvalue", "print", "=",
+            "+", "-", "*", "/", "%",
+            "<", "<=", ">", ">=", "==", "!=",
+            "goto", "gofalse", "label",
+            "f+", "f-", "f*", "f/", "f%",
+            "f<", "f<=", "f>", "f>=", "f==", "f!=",
+            "fpush", "fprint", "i2f", "f2i"
+    };
+
+    private Opcode() {
+    }
+
+    public static String mnemonic(int opcode) {
+        return MNEMONICS[opcode];
+    }
+
+    public static boolean isJump(int opcode) {
+        return opcode == GOTO || opcode == GOFALSE;
+    }
+
+    public static boolean hasVariable(int opcode) {
+        return opcode == RVALUE || opcode == LVALUE || opcode == PRINT || opcode == FLOAT_PRINT;
+    }
+
+    public static boolean isPush(int opcode) {
+        return opcode == PUSH || opcode == FLOAT_PUSH;
+    }
+
+    // int or float arithmetic operator
+    public static boolean isArithmetic(int opcode) {
+        return (opcode >= ADD && opcode <= REMAINDER) || (opcode >= FLOAT_ADD && opcode <= FLOAT_REMAINDER);
+    }
+
+    // int or float relational operator
+    public static boolean isRelational(int opcode) {
+        return (opcode >= LESS_THAN && opcode <= NOT_EQUALS)
+                || (opcode >= FLOAT_LESS_THAN && opcode <= FLOAT_NOT_EQUALS);
+    }
+
+    // whether an operator, push or print works on floats
+    public static boolean isFloat(int opcode) {
+        return opcode >= FLOAT_ADD && opcode <= FLOAT_PRINT;
+    }
+
+    // the int version of an operator, push or print, the opcode itself for the others
+    public static int intVersion(int opcode) {
+        if (opcode >= FLOAT_ADD && opcode <= FLOAT_NOT_EQUALS)
+            return opcode - FLOAT_OFFSET;
+        if (opcode == FLOAT_PUSH)
+            return PUSH;
+        if (opcode == FLOAT_PRINT)
+            return PRINT;
+
+        return opcode;
+    }
+
+    // the float version of an int operator, push or print
+    public static int floatVersion(int opcode) {
+        if (opcode >= ADD && opcode <= NOT_EQUALS)
+            return opcode + FLOAT_OFFSET;
+        if (opcode == PUSH)
+            return FLOAT_PUSH;
+        if (opcode == PRINT)
+            return FLOAT_PRINT;
+
+        return opcode;
+    }
+}
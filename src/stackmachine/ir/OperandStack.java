@@ -0,0 +1,147 @@
+package stackmachine.ir;
+
+import java.util.Arrays;
+
+// Unsynchronized, growable stack of int values, without boxing, for the
+// translators that evaluate as they parse. The static methods evaluate the
+// typed arithmetic, relational and conversion opcodes on the bits of their
+// operands, for the optimizers and the backends.
+public class OperandStack {
+    private int[] values;
+    private int size;
+
+    public OperandStack() {
+        this(16);
+    }
+
+    public OperandStack(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    public void pushInt(int value) {
+        if (this.size == this.values.length)
+            this.values = Arrays.copyOf(this.values, 2 * this.size);
+
+        this.values[this.size++] = value;
+    }
+
+    public void pop() {
+        this.size--;
+    }
+
+    public int popInt() {
+        return this.values[--this.size];
+    }
+
+    // Result of a typed arithmetic or relational opcode on the bits of its two
+    // operands, the bits of a float for the float arithmetic opcodes and 1 or 0
+    // for the relational ones
+    public static int evaluate(int opcode, int a, int b) {
+        int operator = Opcode.intVersion(opcode);
+
+        if (Opcode.isFloat(opcode)) {
+            float x = Float.intBitsToFloat(a);
+            float y = Float.intBitsToFloat(b);
+
+            if (Opcode.isRelational(opcode))
+                return compare(operator, x, y) ? 1 : 0;
+
+            return Float.floatToRawIntBits(arithmetic(operator, x, y));
+        }
+
+        return Opcode.isRelational(opcode) ? (compare(operator, a, b) ? 1 : 0) : arithmetic(operator, a, b);
+    }
+
+    // result of i2f or f2i on the bits of a value, f2i truncates
+    public static int convert(int opcode, int bits) {
+        if (opcode == Opcode.INT_TO_FLOAT)
+            return Float.floatToRawIntBits((float) bits);
+
+        return (int) Float.intBitsToFloat(bits);
+    }
+
+    public static int arithmetic(int opcode, int x, int y) {
+        switch (opcode) {
+            case Opcode.ADD:
+                return x + y;
+            case Opcode.SUBTRACT:
+                return x - y;
+            case Opcode.MULTIPLY:
+                return x * y;
+            case Opcode.DIVIDE:
+                return x / y;
+            case Opcode.REMAINDER:
+                return x % y;
+            default:
+                throw new IllegalArgumentException("not an arithmetic opcode: " + Opcode.mnemonic(opcode));
+        }
+    }
+
+    public static float arithmetic(int opcode, float x, float y) {
+        switch (opcode) {
+            case Opcode.ADD:
+                return x + y;
+            case Opcode.SUBTRACT:
+                return x - y;
+            case Opcode.MULTIPLY:
+                return x * y;
+            case Opcode.DIVIDE:
+                return x / y;
+            case Opcode.REMAINDER:
+                return x % y;
+            default:
+                throw new IllegalArgumentException("not an arithmetic opcode: " + Opcode.mnemonic(opcode));
+        }
+    }
+
+    public static boolean compare(int opcode, int x, int y) {
+        switch (opcode) {
+            case Opcode.LESS_THAN:
+                return x < y;
+            case Opcode.LESS_EQUALS:
+                return x <= y;
+            case Opcode.GREATER_THAN:
+                return x > y;
+            case Opcode.GREATER_EQUALS:
+                return x >= y;
+            case Opcode.EQUALS:
+                return x == y;
+            case Opcode.NOT_EQUALS:
+                return x != y;
+            default:
+                throw new IllegalArgumentException("not a relational opcode: " + Opcode.mnemonic(opcode));
+        }
+    }
+
+    public static boolean compare(int opcode, float x, float y) {
+        switch (opcode) {
+            case Opcode.LESS_THAN:
+                return x < y;
+            case Opcode.LESS_EQUALS:
+                return x <= y;
+            case Opcode.GREATER_THAN:
+                return x > y;
+            case Opcode.GREATER_EQUALS:
+                return x >= y;
+            case Opcode.EQUALS:
+                return x == y;
+            case Opcode.NOT_EQUALS:
+                return x != y;
+            default:
+                throw new IllegalArgumentException("not a relational opcode: " + Opcode.mnemonic(opcode));
+        }
+    }
+}
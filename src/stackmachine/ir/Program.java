@@ -0,0 +1,101 @@
+package stackmachine.ir;
+
+// Compiled intermediate code: the instruction stream, the constant pool of
+// numeric literals and the table of variables, with their names and types,
+// int or float. Jump operands are already resolved to the index of their
+// target instruction, so the program can be executed or analyzed without
+// parsing any text.
+//
+// The line table maps each instruction to the source line the parser was at
+// when it emitted the instruction, it may be missing.
+//
+// The arrays are shared, not copied, and must not be modified.
+public class Program {
+    private final int[] code;
+    private final int[] constants;
+    private final boolean[] realConstants;
+    private final String[] variables;
+    private final boolean[] realVariables;
+    private final int[] lines;
+
+    public Program(int[] code, int[] constants, boolean[] realConstants, String[] variables,
+                   boolean[] realVariables, int[] lines) {
+        this.code = code;
+        this.constants = constants;
+        this.realConstants = realConstants;
+        this.variables = variables;
+        this.realVariables = realVariables;
+        this.lines = lines;
+    }
+
+    // a program whose variables are all ints
+    public Program(int[] code, int[] constants, boolean[] realConstants, String[] variables) {
+        this(code, constants, realConstants, variables, new boolean[variables.length], null);
+    }
+
+    // number of instructions
+    public int size() {
+        return this.code.length / 2;
+    }
+
+    public int opcode(int instruction) {
+        return this.code[2 * instruction];
+    }
+
+    public int operand(int instruction) {
+        return this.code[2 * instruction + 1];
+    }
+
+    // opcode and operand pairs
+    public int[] getCode() {
+        return this.code;
+    }
+
+    // int values, or the bits of float values, see Float.intBitsToFloat
+    public int[] getConstants() {
+        return this.constants;
+    }
+
+    public boolean isReal(int constant) {
+        return this.realConstants[constant];
+    }
+
+    public int integerConstant(int constant) {
+        return this.constants[constant];
+    }
+
+    public float realConstant(int constant) {
+        return Float.intBitsToFloat(this.constants[constant]);
+    }
+
+    public String[] getVariables() {
+        return this.variables;
+    }
+
+    public String variable(int index) {
+        return this.variables[index];
+    }
+
+    // whether a variable is a float, booleans are ints
+    public boolean isRealVariable(int index) {
+        return this.realVariables[index];
+    }
+
+    public boolean[] getRealVariables() {
+        return this.realVariables;
+    }
+
+    public boolean hasLines() {
+        return this.lines != null;
+    }
+
+    // source line of an instruction, 0 when it is not known
+    public int line(int instruction) {
+        return this.lines == null ? 0 : this.lines[instruction];
+    }
+
+    // source line of each instruction, or null
+    public int[] getLines() {
+        return this.lines;
+    }
+}
@@ -0,0 +1,220 @@
+package stackmachine.ir;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+// Emits intermediate code into a growable int array. Jumps name their target by
+// label number; a jump to a label already emitted is resolved immediately, and
+// forward jumps are chained through their operands and backpatched when the
+// label is emitted.
+//
+// Variables are ints unless they are declared float with setReal, they get
+// their slot the first time they are named.
+//
+// Every instruction is given the current source line, read from the line
+// source when there is one, such as the lexical analyzer of the parser, or
+// set with setLine. A line set with setLine, other than 0, comes before the
+// line source, until it is set back to 0.
+public class ProgramBuilder {
+    private int[] code;
+    private int size;
+
+    private int[] lines;
+    private int line;
+    private final IntSupplier lineSource;
+
+    private int[] constants;
+    private boolean[] realConstants;
+    private int constantCount;
+    private Map<Long, Integer> constantIndex;
+
+    private String[] variables;
+    private boolean[] realVariables;
+    private int variableCount;
+    private Map<String, Integer> variableIndex;
+
+    // instruction of each label, or -1
+    private int[] labels;
+
+    // last unresolved jump to each label, or -1, the jumps link to each other through their operands
+    private int[] pendingJumps;
+
+    public ProgramBuilder() {
+        this(null);
+    }
+
+    public ProgramBuilder(IntSupplier lineSource) {
+        this.code = new int[64];
+        this.size = 0;
+        this.lines = new int[32];
+        this.lineSource = lineSource;
+        this.constants = new int[16];
+        this.realConstants = new boolean[16];
+        this.constantCount = 0;
+        this.constantIndex = new HashMap<Long, Integer>();
+        this.variables = new String[16];
+        this.realVariables = new boolean[16];
+        this.variableCount = 0;
+        this.variableIndex = new HashMap<String, Integer>();
+        this.labels = new int[16];
+        this.pendingJumps = new int[16];
+        Arrays.fill(this.labels, -1);
+        Arrays.fill(this.pendingJumps, -1);
+    }
+
+    // number of instructions emitted so far
+    public int size() {
+        return this.size;
+    }
+
+    public void emit(int opcode) {
+        emit(opcode, 0);
+    }
+
+    public void emit(int opcode, int operand) {
+        if (2 * this.size == this.code.length) {
+            this.code = Arrays.copyOf(this.code, 2 * this.code.length);
+            this.lines = Arrays.copyOf(this.lines, this.code.length / 2);
+        }
+
+        this.code[2 * this.size] = opcode;
+        this.code[2 * this.size + 1] = operand;
+        this.lines[this.size] = this.lineSource != null && this.line == 0 ? this.lineSource.getAsInt() : this.line;
+        this.size++;
+    }
+
+    // source line of the instructions emitted next, 0 to read the line source
+    public void setLine(int line) {
+        this.line = line;
+    }
+
+    public void pushInteger(int value) {
+        emit(Opcode.PUSH, constant(value, false));
+    }
+
+    public void pushReal(float value) {
+        emit(Opcode.FLOAT_PUSH, constant(Float.floatToIntBits(value), true));
+    }
+
+    // rvalue, lvalue or print of a variable
+    public void variable(int opcode, String name) {
+        emit(opcode, variable(name));
+    }
+
+    public void label(int label) {
+        ensureLabel(label);
+
+        if (this.labels[label] >= 0)
+            throw new IllegalStateException("label_" + label + " emitted twice");
+
+        int instruction = this.size;
+        this.labels[label] = instruction;
+        emit(Opcode.LABEL, label);
+
+        // backpatch the forward jumps
+        int jump = this.pendingJumps[label];
+
+        while (jump >= 0) {
+            int next = this.code[2 * jump + 1];
+            this.code[2 * jump + 1] = instruction;
+            jump = next;
+        }
+
+        this.pendingJumps[label] = -1;
+    }
+
+    // goto or gofalse to a label
+    public void jump(int opcode, int label) {
+        ensureLabel(label);
+
+        if (this.labels[label] >= 0) {
+            emit(opcode, this.labels[label]);
+        }
+        else {
+            int jump = this.size;
+            emit(opcode, this.pendingJumps[label]);
+            this.pendingJumps[label] = jump;
+        }
+    }
+
+    public int constant(int bits, boolean real) {
+        long key = (real ? 1L << 32 : 0L) | (bits & 0xFFFFFFFFL);
+        Integer index = this.constantIndex.get(key);
+
+        if (index != null)
+            return index;
+
+        if (this.constantCount == this.constants.length) {
+            this.constants = Arrays.copyOf(this.constants, 2 * this.constantCount);
+            this.realConstants = Arrays.copyOf(this.realConstants, 2 * this.constantCount);
+        }
+
+        this.constants[this.constantCount] = bits;
+        this.realConstants[this.constantCount] = real;
+        this.constantIndex.put(key, this.constantCount);
+
+        return this.constantCount++;
+    }
+
+    // slot of a variable, slots are numbered densely in order of first use
+    public int variable(String name) {
+        Integer index = this.variableIndex.get(name);
+
+        if (index != null)
+            return index;
+
+        if (this.variableCount == this.variables.length) {
+            this.variables = Arrays.copyOf(this.variables, 2 * this.variableCount);
+            this.realVariables = Arrays.copyOf(this.realVariables, 2 * this.variableCount);
+        }
+
+        this.variables[this.variableCount] = name;
+        this.variableIndex.put(name, this.variableCount);
+
+        return this.variableCount++;
+    }
+
+    // number of variable slots so far
+    public int variableCount() {
+        return this.variableCount;
+    }
+
+    public String variableName(int slot) {
+        return this.variables[slot];
+    }
+
+    public void setReal(int slot, boolean real) {
+        this.realVariables[slot] = real;
+    }
+
+    public boolean isReal(int slot) {
+        return this.realVariables[slot];
+    }
+
+    public Program build() {
+        for (int label = 0; label < this.pendingJumps.length; label++)
+            if (this.pendingJumps[label] >= 0)
+                throw new IllegalStateException("jump to label_" + label + " which is never emitted");
+
+        return new Program(Arrays.copyOf(this.code, 2 * this.size),
+                Arrays.copyOf(this.constants, this.constantCount),
+                Arrays.copyOf(this.realConstants, this.constantCount),
+                Arrays.copyOf(this.variables, this.variableCount),
+                Arrays.copyOf(this.realVariables, this.variableCount),
+                Arrays.copyOf(this.lines, this.size));
+    }
+
+    private void ensureLabel(int label) {
+        if (label >= this.labels.length) {
+            int length = Math.max(2 * this.labels.length, label + 1);
+            int old = this.labels.length;
+
+            this.labels = Arrays.copyOf(this.labels, length);
+            this.pendingJumps = Arrays.copyOf(this.pendingJumps, length);
+            Arrays.fill(this.labels, old, length, -1);
+            Arrays.fill(this.pendingJumps, old, length, -1);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package stackmachine.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.OperandStack;
+import stackmachine.ir.Program;
+
+// Conditional constant propagation over the control flow graph. The analysis
+// runs the program abstractly, block by block from a worklist: each variable
+// and each value on the stack is either not known yet, a constant, or not a
+// constant. Values are kept as bits, the code says whether they are ints or
+// floats. Variables start as the constant 0, like in the interpreter. A
+// gofalse whose condition is a constant only follows one of its edges, so the
+// blocks behind the other edge do not count until some other path reaches them.
+// When the state at the start of a block changes, the block is analyzed again,
+// until nothing changes.
+//
+// Every rvalue of a variable that holds a constant at that point is then
+// replaced by a push, or an fpush for a float variable, of the constant. The peephole optimizer folds the
+// expressions and conditions that became constant, and blocks that can no
+// longer be reached are removed, until nothing changes.
+//
+// The stack is not always empty between blocks, the 1 and the 0 of an
+// assigned logic expression meet at a label, over the lvalue of the variable,
+// so the states keep the top of the stack too. Paths with
+// different stack depths agree only on the values they have in common on top.
+public class ConstantPropagation {
+
+    private final PeepholeOptimizer peephole;
+    private int eliminated;
+
+    public ConstantPropagation() {
+        this.peephole = new PeepholeOptimizer(EnumSet.allOf(PeepholeOptimizer.Rule.class));
+    }
+
+    // instructions removed by the last call to optimize
+    public int eliminated() {
+        return this.eliminated;
+    }
+
+    public Program optimize(Program program) {
+        InstructionList code = InstructionList.of(program);
+        ControlFlowGraph graph = ControlFlowGraph.of(code);
+
+        State[] states = analyze(graph, program.getVariables().length);
+        replaceConstants(graph, states);
+
+        // fold and remove unreachable blocks until nothing changes
+        int size = -1;
+
+        while (size != code.size()) {
+            size = code.size();
+            code = InstructionList.of(this.peephole.optimize(code.toProgram()));
+
+            ControlFlowGraph cleaned = ControlFlowGraph.of(code);
+            boolean[] reachable = cleaned.reachable();
+            boolean[] removed = new boolean[reachable.length];
+
+            for (int block = 0; block < reachable.length; block++)
+                removed[block] = !reachable[block];
+
+            code = cleaned.without(removed);
+        }
+
+        Program result = code.toProgram();
+        this.eliminated = program.size() - result.size();
+
+        return result;
+    }
+
+    // analysis
+
+    // state at the start of each block, null for blocks that are never reached
+    private static State[] analyze(ControlFlowGraph graph, int variables) {
+        State[] states = new State[graph.size()];
+
+        if (graph.size() == 0)
+            return states;
+
+        boolean[] queued = new boolean[graph.size()];
+        int[] worklist = new int[graph.size()];
+        int count = 0;
+
+        states[0] = State.entry(variables);
+        queued[0] = true;
+        worklist[count++] = 0;
+
+        while (count > 0) {
+            // take the first block in program order, loops then settle sooner
+            int next = 0;
+
+            for (int i = 1; i < count; i++)
+                if (worklist[i] < worklist[next])
+                    next = i;
+
+            int block = worklist[next];
+            worklist[next] = worklist[--count];
+            queued[block] = false;
+
+            State state = states[block].copy();
+            int end = graph.end(block);
+
+            for (int i = graph.start(block); i < end - 1; i++)
+                state.execute(graph.code(), i);
+
+            InstructionList code = graph.code();
+            int last = end - 1;
+            int[] successors = graph.successors(block);
+            boolean[] follow = new boolean[successors.length];
+            Arrays.fill(follow, true);
+
+            if (code.opcode(last) == Opcode.GOFALSE) {
+                Value condition = state.pop();
+
+                // the fall through successor comes first, when there is one
+                if (condition.isConstant() && successors.length == 2) {
+                    if (condition.isFalse())
+                        follow[0] = false;
+                    else
+                        follow[1] = false;
+                }
+            }
+            else {
+                state.execute(code, last);
+            }
+
+            for (int i = 0; i < successors.length; i++) {
+                int successor = successors[i];
+
+                if (!follow[i])
+                    continue;
+
+                boolean changed;
+
+                if (states[successor] == null) {
+                    states[successor] = state.copy();
+                    changed = true;
+                }
+                else {
+                    changed = states[successor].merge(state);
+                }
+
+                if (changed && !queued[successor]) {
+                    queued[successor] = true;
+                    worklist[count++] = successor;
+                }
+            }
+        }
+
+        return states;
+    }
+
+    private static void replaceConstants(ControlFlowGraph graph, State[] states) {
+        InstructionList code = graph.code();
+
+        for (int block = 0; block < graph.size(); block++) {
+            if (states[block] == null)
+                continue;
+
+            State state = states[block].copy();
+
+            for (int i = graph.start(block); i < graph.end(block); i++) {
+                if (code.opcode(i) == Opcode.RVALUE) {
+                    Value value = state.variables[code.operand(i)];
+
+                    if (value.isConstant())
+                        code.set(i, code.isRealVariable(code.operand(i)) ? Opcode.FLOAT_PUSH : Opcode.PUSH, value.bits);
+                }
+
+                state.execute(code, i);
+            }
+        }
+    }
+
+    // lattice
+
+    private static final class Value {
+        static final Value UNKNOWN = new Value(0, 0);
+        static final Value VARYING = new Value(2, 0);
+
+        // 0 not known yet, 1 constant, 2 not a constant
+        final int kind;
+        final int bits;
+
+        private Value(int kind, int bits) {
+            this.kind = kind;
+            this.bits = bits;
+        }
+
+        static Value constant(int bits) {
+            return new Value(1, bits);
+        }
+
+        boolean isConstant() {
+            return this.kind == 1;
+        }
+
+        // gofalse takes an int
+        boolean isFalse() {
+            return this.bits == 0;
+        }
+
+        Value meet(Value other) {
+            if (this.kind == 0)
+                return other;
+            if (other.kind == 0 || this == other)
+                return this;
+            if (this.kind == 1 && other.kind == 1 && this.bits == other.bits)
+                return this;
+
+            return VARYING;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Value))
+                return false;
+
+            Value other = (Value) o;
+
+            return this.kind == other.kind && this.bits == other.bits;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.kind + this.bits;
+        }
+    }
+
+    private static final class State {
+        final Value[] variables;
+
+        // top of the stack, the values below it are not known
+        final List<Value> stack;
+
+        private State(Value[] variables, List<Value> stack) {
+            this.variables = variables;
+            this.stack = stack;
+        }
+
+        static State entry(int variables) {
+            Value[] values = new Value[variables];
+            // the bits of 0 and 0.0 are the same
+            Arrays.fill(values, Value.constant(0));
+
+            return new State(values, new ArrayList<Value>());
+        }
+
+        State copy() {
+            return new State(this.variables.clone(), new ArrayList<Value>(this.stack));
+        }
+
+        Value pop() {
+            return this.stack.isEmpty() ? Value.VARYING : this.stack.remove(this.stack.size() - 1);
+        }
+
+        void push(Value value) {
+            this.stack.add(value);
+        }
+
+        // merges the state of another path, returns whether this state changed
+        boolean merge(State other) {
+            boolean changed = false;
+
+            for (int i = 0; i < this.variables.length; i++) {
+                Value value = this.variables[i].meet(other.variables[i]);
+
+                if (!value.equals(this.variables[i])) {
+                    this.variables[i] = value;
+                    changed = true;
+                }
+            }
+
+            // keep the values both paths have on top of the stack
+            int depth = Math.min(this.stack.size(), other.stack.size());
+
+            if (depth < this.stack.size()) {
+                this.stack.subList(0, this.stack.size() - depth).clear();
+                changed = true;
+            }
+
+            for (int i = 1; i <= depth; i++) {
+                Value mine = this.stack.get(this.stack.size() - i);
+                Value value = mine.meet(other.stack.get(other.stack.size() - i));
+
+                if (!value.equals(mine)) {
+                    this.stack.set(this.stack.size() - i, value);
+                    changed = true;
+                }
+            }
+
+            return changed;
+        }
+
+        void execute(InstructionList code, int i) {
+            int opcode = code.opcode(i);
+
+            switch (opcode) {
+                case Opcode.PUSH:
+                case Opcode.FLOAT_PUSH:
+                    push(Value.constant(code.operand(i)));
+                    break;
+
+                case Opcode.RVALUE:
+                    push(this.variables[code.operand(i)]);
+                    break;
+
+                case Opcode.LVALUE:
+                    push(Value.constant(code.operand(i)));
+                    break;
+
+                case Opcode.ASSIGN: {
+                    Value value = pop();
+                    Value variable = pop();
+
+                    if (variable.isConstant())
+                        this.variables[variable.bits] = value;
+                    else
+                        Arrays.fill(this.variables, Value.VARYING);
+                    break;
+                }
+
+                case Opcode.GOFALSE:
+                    pop();
+                    break;
+
+                case Opcode.INT_TO_FLOAT:
+                case Opcode.FLOAT_TO_INT: {
+                    // i2f converts the value at a depth of the stack, f2i the top
+                    int depth = opcode == Opcode.INT_TO_FLOAT ? code.operand(i) : 0;
+                    int index = this.stack.size() - 1 - depth;
+
+                    if (index >= 0) {
+                        Value value = this.stack.get(index);
+
+                        if (value.isConstant())
+                            this.stack.set(index, Value.constant(OperandStack.convert(opcode, value.bits)));
+                    }
+                    break;
+                }
+
+                default:
+                    if (Opcode.isArithmetic(opcode) || Opcode.isRelational(opcode))
+                        push(apply(opcode, pop(), pop()));
+            }
+        }
+
+        private static Value apply(int opcode, Value b, Value a) {
+            if (a.kind == 2 || b.kind == 2)
+                return Value.VARYING;
+
+            if (!a.isConstant() || !b.isConstant())
+                return Value.UNKNOWN;
+
+            // an integer division by zero fails at run time
+            if ((opcode == Opcode.DIVIDE || opcode == Opcode.REMAINDER) && b.bits == 0)
+                return Value.VARYING;
+
+            return Value.constant(OperandStack.evaluate(opcode, a.bits, b.bits));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package stackmachine.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import stackmachine.ir.Opcode;
+
+// Basic blocks of an instruction list and the edges between them. A block
+// starts at the first instruction, at every label and after every jump or
+// halt, and runs up to the next start. Block 0 is the entry.
+//
+// The successors of a block ending in gofalse are the next block first (the
+// condition was true) and the jump target second. Running off the end of the
+// code halts the machine, so the last block may have no successors.
+class ControlFlowGraph {
+    private final InstructionList code;
+
+    private final int[] starts;
+    private final int[] ends;
+    private final int[][] successors;
+    private final int[][] predecessors;
+
+    // block of each instruction
+    private final int[] blockOf;
+
+    private ControlFlowGraph(InstructionList code, int[] starts, int[] ends, int[] blockOf, int[][] successors) {
+        this.code = code;
+        this.starts = starts;
+        this.ends = ends;
+        this.blockOf = blockOf;
+        this.successors = successors;
+        this.predecessors = predecessors(successors);
+    }
+
+    static ControlFlowGraph of(InstructionList code) {
+        int n = code.size();
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        leader[n] = true;
+
+        for (int i = 0; i < n; i++) {
+            int opcode = code.opcode(i);
+
+            if (opcode == Opcode.LABEL)
+                leader[i] = true;
+            else if (Opcode.isJump(opcode) || opcode == Opcode.HALT)
+                leader[i + 1] = true;
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < n; i++)
+            if (leader[i])
+                count++;
+
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int[] blockOf = new int[n];
+        int[] labels = new int[code.labelCount()];
+
+        for (int i = 0, block = -1; i < n; i++) {
+            if (leader[i]) {
+                block++;
+                starts[block] = i;
+            }
+
+            ends[block] = i + 1;
+            blockOf[i] = block;
+
+            if (code.opcode(i) == Opcode.LABEL)
+                labels[code.operand(i)] = block;
+        }
+
+        int[][] successors = new int[count][];
+
+        for (int block = 0; block < count; block++) {
+            int last = ends[block] - 1;
+            int next = block + 1 < count ? block + 1 : -1;
+
+            switch (code.opcode(last)) {
+                case Opcode.GOTO:
+                    successors[block] = new int[] { labels[code.operand(last)] };
+                    break;
+                case Opcode.GOFALSE:
+                    successors[block] = next >= 0 ? new int[] { next, labels[code.operand(last)] }
+                            : new int[] { labels[code.operand(last)] };
+                    break;
+                case Opcode.HALT:
+                    successors[block] = new int[0];
+                    break;
+                default:
+                    successors[block] = next >= 0 ? new int[] { next } : new int[0];
+            }
+        }
+
+        return new ControlFlowGraph(code, starts, ends, blockOf, successors);
+    }
+
+    private static int[][] predecessors(int[][] successors) {
+        List<List<Integer>> lists = new ArrayList<List<Integer>>();
+
+        for (int block = 0; block < successors.length; block++)
+            lists.add(new ArrayList<Integer>());
+
+        for (int block = 0; block < successors.length; block++)
+            for (int successor : successors[block])
+                if (!lists.get(successor).contains(block))
+                    lists.get(successor).add(block);
+
+        int[][] predecessors = new int[successors.length][];
+
+        for (int block = 0; block < successors.length; block++) {
+            predecessors[block] = new int[lists.get(block).size()];
+
+            for (int i = 0; i < predecessors[block].length; i++)
+                predecessors[block][i] = lists.get(block).get(i);
+        }
+
+        return predecessors;
+    }
+
+    InstructionList code() {
+        return this.code;
+    }
+
+    int size() {
+        return this.starts.length;
+    }
+
+    // first instruction of a block
+    int start(int block) {
+        return this.starts[block];
+    }
+
+    // instruction after the last one of a block
+    int end(int block) {
+        return this.ends[block];
+    }
+
+    int[] successors(int block) {
+        return this.successors[block];
+    }
+
+    int[] predecessors(int block) {
+        return this.predecessors[block];
+    }
+
+    int blockOf(int instruction) {
+        return this.blockOf[instruction];
+    }
+
+    // blocks that can be reached from the entry
+    boolean[] reachable() {
+        boolean[] reachable = new boolean[size()];
+
+        if (size() == 0)
+            return reachable;
+
+        int[] worklist = new int[size()];
+        int count = 0;
+
+        reachable[0] = true;
+        worklist[count++] = 0;
+
+        while (count > 0) {
+            int block = worklist[--count];
+
+            for (int successor : this.successors[block]) {
+                if (!reachable[successor]) {
+                    reachable[successor] = true;
+                    worklist[count++] = successor;
+                }
+            }
+        }
+
+        return reachable;
+    }
+
+    // Immediate dominator of each block, -1 for the entry and for the blocks
+    // that cannot be reached. A block dominates another one when every path
+    // from the entry to the other one goes through it. The dominators are
+    // found by the iterative algorithm of Cooper, Harvey and Kennedy, over the
+    // blocks in reverse postorder.
+    int[] immediateDominators() {
+        int n = size();
+        int[] dominators = new int[n];
+        Arrays.fill(dominators, -1);
+
+        if (n == 0)
+            return dominators;
+
+        // reverse postorder of the reachable blocks, by a depth first search
+        int[] order = new int[n];
+        int[] number = new int[n];
+        int[] stack = new int[n];
+        int[] next = new int[n];
+        boolean[] visited = new boolean[n];
+        int count = 0;
+        int top = 0;
+
+        stack[top++] = 0;
+        visited[0] = true;
+
+        while (top > 0) {
+            int block = stack[top - 1];
+
+            if (next[block] < this.successors[block].length) {
+                int successor = this.successors[block][next[block]++];
+
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    stack[top++] = successor;
+                }
+            }
+            else {
+                order[count++] = block;
+                top--;
+            }
+        }
+
+        for (int i = 0; i < count / 2; i++) {
+            int block = order[i];
+            order[i] = order[count - 1 - i];
+            order[count - 1 - i] = block;
+        }
+
+        for (int i = 0; i < count; i++)
+            number[order[i]] = i;
+
+        dominators[0] = 0;
+
+        for (boolean changed = true; changed; ) {
+            changed = false;
+
+            for (int i = 1; i < count; i++) {
+                int block = order[i];
+                int dominator = -1;
+
+                for (int predecessor : this.predecessors[block]) {
+                    if (dominators[predecessor] < 0)
+                        continue;
+
+                    dominator = dominator < 0 ? predecessor : intersect(dominators, number, predecessor, dominator);
+                }
+
+                if (dominators[block] != dominator) {
+                    dominators[block] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        dominators[0] = -1;
+
+        return dominators;
+    }
+
+    // the closest common dominator of two blocks
+    private static int intersect(int[] dominators, int[] number, int a, int b) {
+        while (a != b) {
+            while (number[a] > number[b])
+                a = dominators[a];
+            while (number[b] > number[a])
+                b = dominators[b];
+        }
+
+        return a;
+    }
+
+    // a copy of the code without the given blocks
+    InstructionList without(boolean[] removed) {
+        InstructionList out = this.code.emptyCopy();
+
+        for (int block = 0; block < size(); block++)
+            if (!removed[block])
+                for (int i = this.starts[block]; i < this.ends[block]; i++)
+                    out.add(this.code.opcode(i), this.code.operand(i), this.code.line(i));
+
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+
+        for (int block = 0; block < size(); block++)
+            s.append("B").append(block).append(" [").append(this.starts[block]).append(", ")
+                    .append(this.ends[block]).append(") -> ").append(Arrays.toString(this.successors[block])).append('\n');
+
+        return s.toString();
+    }
+}
@@ -0,0 +1,161 @@
+package stackmachine.optimizer;
+
+import java.util.Arrays;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+import stackmachine.ir.ProgramBuilder;
+
+// Growable list of instructions that the optimizer passes rewrite. Unlike a
+// Program, push instructions hold their value (the bits of an int or, for
+// fpush, of a float) instead of a constant pool index, and jumps hold the number of
+// their target label instead of an instruction index, so instructions can be
+// inserted and removed without fixing up the other operands. Instructions keep
+// their source line, an instruction that replaces others takes the line of
+// the first one.
+class InstructionList {
+    private int[] opcodes;
+    private int[] operands;
+    private int[] lines;
+    private int size;
+
+    private String[] variables;
+    private boolean[] realVariables;
+
+    InstructionList(String[] variables, boolean[] realVariables, int capacity) {
+        this.opcodes = new int[Math.max(capacity, 1)];
+        this.operands = new int[Math.max(capacity, 1)];
+        this.lines = new int[Math.max(capacity, 1)];
+        this.size = 0;
+        this.variables = variables;
+        this.realVariables = realVariables;
+    }
+
+    static InstructionList of(Program program) {
+        InstructionList list = new InstructionList(program.getVariables(), program.getRealVariables(), program.size());
+
+        for (int i = 0; i < program.size(); i++) {
+            int opcode = program.opcode(i);
+            int operand = program.operand(i);
+            int line = program.line(i);
+
+            if (Opcode.isPush(opcode))
+                list.add(opcode, program.getConstants()[operand], line);
+            else if (Opcode.isJump(opcode))
+                list.add(opcode, program.operand(operand), line);
+            else
+                list.add(opcode, operand, line);
+        }
+
+        return list;
+    }
+
+    Program toProgram() {
+        ProgramBuilder builder = new ProgramBuilder();
+
+        // keep the variable slots and their types
+        for (int slot = 0; slot < this.variables.length; slot++)
+            builder.setReal(builder.variable(this.variables[slot]), this.realVariables[slot]);
+
+        for (int i = 0; i < this.size; i++) {
+            int opcode = this.opcodes[i];
+
+            builder.setLine(this.lines[i]);
+
+            if (Opcode.isPush(opcode))
+                builder.emit(opcode, builder.constant(this.operands[i], opcode == Opcode.FLOAT_PUSH));
+            else if (opcode == Opcode.LABEL)
+                builder.label(this.operands[i]);
+            else if (Opcode.isJump(opcode))
+                builder.jump(opcode, this.operands[i]);
+            else
+                builder.emit(opcode, this.operands[i]);
+        }
+
+        return builder.build();
+    }
+
+    // an empty list with the same variables
+    InstructionList emptyCopy() {
+        return new InstructionList(this.variables, this.realVariables, this.size);
+    }
+
+    String[] variables() {
+        return this.variables;
+    }
+
+    // Adds a variable after the others and returns its slot. The arrays are
+    // copied, the lists that share them keep the variables they had.
+    int addVariable(String name, boolean real) {
+        int slot = this.variables.length;
+
+        this.variables = Arrays.copyOf(this.variables, slot + 1);
+        this.realVariables = Arrays.copyOf(this.realVariables, slot + 1);
+        this.variables[slot] = name;
+        this.realVariables[slot] = real;
+
+        return slot;
+    }
+
+    // whether a variable is a float
+    boolean isRealVariable(int slot) {
+        return this.realVariables[slot];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int opcode(int i) {
+        return this.opcodes[i];
+    }
+
+    // bits of a pushed value, variable slot or label number
+    int operand(int i) {
+        return this.operands[i];
+    }
+
+    // source line, 0 when it is not known
+    int line(int i) {
+        return this.lines[i];
+    }
+
+    // highest label number plus one
+    int labelCount() {
+        int count = 0;
+
+        for (int i = 0; i < this.size; i++)
+            if (this.opcodes[i] == Opcode.LABEL || Opcode.isJump(this.opcodes[i]))
+                count = Math.max(count, this.operands[i] + 1);
+
+        return count;
+    }
+
+    void add(int opcode, int operand, int line) {
+        if (this.size == this.opcodes.length) {
+            this.opcodes = Arrays.copyOf(this.opcodes, 2 * this.size);
+            this.operands = Arrays.copyOf(this.operands, 2 * this.size);
+            this.lines = Arrays.copyOf(this.lines, 2 * this.size);
+        }
+
+        this.opcodes[this.size] = opcode;
+        this.operands[this.size] = operand;
+        this.lines[this.size] = line;
+        this.size++;
+    }
+
+    // an instruction on the line of the instruction before it
+    void add(int opcode, int operand) {
+        add(opcode, operand, this.size > 0 ? this.lines[this.size - 1] : 0);
+    }
+
+    void set(int i, int opcode, int operand) {
+        this.opcodes[i] = opcode;
+        this.operands[i] = operand;
+    }
+
+    // removes the last instructions
+    void truncate(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,579 @@
+package stackmachine.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.Program;
+
+// Loop optimizations: loop invariant code motion and strength reduction.
+//
+// The loops are the natural loops of the control flow graph. An edge from a
+// block to a block that dominates it is a back edge, the goto at the end of a
+// while or a do, and the loop is its target, the header, with every block that
+// reaches the back edge without going through the header. The loops are
+// optimized from the innermost out, the code is analyzed again after each one,
+// so that what an inner loop hoisted can move out of the loops around it.
+//
+// The code hoisted out of a loop goes into a preheader, inserted before the
+// label of the header. The header must be entered from outside the loop only
+// by falling into it from the block before, so that every path into the loop
+// goes through the preheader, the other loops are left as they are.
+//
+// An expression is invariant when it only reads constants and variables that
+// are not assigned in the loop. Every largest invariant expression is computed
+// once in the preheader into a new variable, and replaced in the loop by an
+// rvalue of it. Identical expressions share the variable. An integer division
+// or remainder only moves when its divisor is a constant other than 0, a
+// division by zero must fail where the program divides. The preheader runs
+// even when the loop does not, the expressions have no other effect.
+//
+// An induction variable is an int variable whose every assignment in the loop
+// adds a constant to it, i = i + c or i = i - c. A multiplication of it by a
+// constant, i * k, is replaced by an rvalue of a new variable, set to i * k in
+// the preheader and increased by c * k after each assignment of i. A multiply
+// is one instruction of the machine like an add, so the reduction only pays
+// when it removes more instructions than the updates add: three instructions
+// become one at each multiplication, five are added at each assignment.
+//
+// The new variables are named $ and their slot, a name that the source cannot
+// use.
+public class LoopOptimizer {
+
+    // instructions saved at each multiplication and added at each update
+    private static final int REDUCTION_SAVES = 2;
+    private static final int UPDATE_COSTS = 5;
+
+    private int loops;
+    private int hoisted;
+    private int reduced;
+
+    // natural loops found by the last call to optimize
+    public int loops() {
+        return this.loops;
+    }
+
+    // invariant expressions moved out of the loops by the last call to optimize
+    public int hoisted() {
+        return this.hoisted;
+    }
+
+    // multiplications replaced by additions by the last call to optimize
+    public int reduced() {
+        return this.reduced;
+    }
+
+    public Program optimize(Program program) {
+        InstructionList code = InstructionList.of(program);
+
+        // headers of the loops already optimized or left as they are, by
+        // the number of their label
+        Set<Integer> done = new HashSet<Integer>();
+
+        this.loops = 0;
+        this.hoisted = 0;
+        this.reduced = 0;
+
+        while (true) {
+            ControlFlowGraph graph = ControlFlowGraph.of(code);
+            Loop loop = null;
+
+            for (Loop candidate : naturalLoops(graph))
+                if (!done.contains(candidate.label) && (loop == null || candidate.size < loop.size))
+                    loop = candidate;
+
+            if (loop == null)
+                break;
+
+            done.add(loop.label);
+            this.loops++;
+
+            InstructionList optimized = optimize(graph, loop, program.getVariables().length);
+
+            if (optimized != null)
+                code = optimized;
+        }
+
+        return code.toProgram();
+    }
+
+    // a natural loop, the blocks of all the back edges to its header
+    private static final class Loop {
+        final int header;
+        final int label;
+        final boolean[] blocks;
+        int size;
+
+        Loop(int header, int label, int count) {
+            this.header = header;
+            this.label = label;
+            this.blocks = new boolean[count];
+        }
+    }
+
+    private static List<Loop> naturalLoops(ControlFlowGraph graph) {
+        int[] dominators = graph.immediateDominators();
+        InstructionList code = graph.code();
+        Loop[] loops = new Loop[graph.size()];
+        List<Loop> found = new ArrayList<Loop>();
+
+        for (int block = 0; block < graph.size(); block++) {
+            if (block > 0 && dominators[block] < 0)
+                continue;
+
+            for (int header : graph.successors(block)) {
+                if (!dominates(dominators, header, block))
+                    continue;
+
+                // the target of a jump starts with its label
+                if (loops[header] == null) {
+                    loops[header] = new Loop(header, code.operand(graph.start(header)), graph.size());
+                    loops[header].blocks[header] = true;
+                    loops[header].size = 1;
+                    found.add(loops[header]);
+                }
+
+                // the blocks that reach the back edge without the header
+                Loop loop = loops[header];
+                List<Integer> worklist = new ArrayList<Integer>();
+
+                if (!loop.blocks[block]) {
+                    loop.blocks[block] = true;
+                    loop.size++;
+                    worklist.add(block);
+                }
+
+                while (!worklist.isEmpty()) {
+                    int current = worklist.remove(worklist.size() - 1);
+
+                    for (int predecessor : graph.predecessors(current)) {
+                        if (!loop.blocks[predecessor]) {
+                            loop.blocks[predecessor] = true;
+                            loop.size++;
+                            worklist.add(predecessor);
+                        }
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private static boolean dominates(int[] dominators, int dominator, int block) {
+        for (int current = block; current >= 0; current = dominators[current])
+            if (current == dominator)
+                return true;
+
+        return false;
+    }
+
+    // A value on the stack of the symbolic run of a block: the instructions
+    // that compute it, from start to end, and what they are. The value of an
+    // int to float conversion of the value under the top is computed by code
+    // that is not contiguous, the conversion comes after the value on top.
+    private static final class Value {
+        final int start;
+        final int end;
+        final int opcode;
+        final Value left;
+        final Value right;
+        final boolean invariant;
+        final boolean contiguous;
+        final boolean fails;
+        final boolean real;
+        Value parent;
+
+        Value(int start, int end, int opcode, Value left, Value right, boolean invariant, boolean contiguous,
+              boolean fails, boolean real) {
+            this.start = start;
+            this.end = end;
+            this.opcode = opcode;
+            this.left = left;
+            this.right = right;
+            this.invariant = invariant;
+            this.contiguous = contiguous;
+            this.fails = fails;
+            this.real = real;
+
+            if (left != null)
+                left.parent = this;
+            if (right != null)
+                right.parent = this;
+        }
+
+        boolean isLeaf() {
+            return this.left == null;
+        }
+
+        // whether the value can be computed in the preheader
+        boolean isHoistable() {
+            return this.invariant && this.contiguous && !this.fails;
+        }
+    }
+
+    // Hoists the invariant expressions of a loop and reduces the
+    // multiplications of its induction variables, returns the new code or
+    // null when nothing changed. The variables from the first new one on are
+    // the ones added by the optimizer.
+    private InstructionList optimize(ControlFlowGraph graph, Loop loop, int first) {
+        InstructionList code = graph.code();
+        int blocks = graph.size();
+        int variables = code.variables().length;
+
+        // the preheader goes between the block before the header, the only
+        // one outside the loop that enters it, and the header
+        int before = loop.header - 1;
+
+        if (before < 0 || loop.blocks[before])
+            return null;
+
+        for (int predecessor : graph.predecessors(loop.header))
+            if (!loop.blocks[predecessor] && predecessor != before)
+                return null;
+
+        int last = graph.end(before) - 1;
+
+        if (Opcode.isJump(code.opcode(last)) || code.opcode(last) == Opcode.HALT)
+            return null;
+
+        // the variables assigned in the loop, how many times, and the
+        // assignments that add a constant, by the index of their lvalue
+        boolean[] assigned = new boolean[variables];
+        int[] assignments = new int[variables];
+        Map<Integer, Integer> increments = new LinkedHashMap<Integer, Integer>();
+        int lvalues = 0;
+        int assigns = 0;
+
+        for (int block = 0; block < blocks; block++) {
+            if (!loop.blocks[block])
+                continue;
+
+            for (int i = graph.start(block); i < graph.end(block); i++) {
+                if (code.opcode(i) == Opcode.ASSIGN)
+                    assigns++;
+
+                if (code.opcode(i) != Opcode.LVALUE)
+                    continue;
+
+                int variable = code.operand(i);
+
+                lvalues++;
+                assigned[variable] = true;
+                assignments[variable]++;
+
+                if (i + 5 <= graph.end(block) && !code.isRealVariable(variable)) {
+                    Integer step = step(code, i);
+
+                    if (step != null)
+                        increments.put(i, step);
+                }
+            }
+        }
+
+        // an assignment whose lvalue is outside the loop, the variable it
+        // assigns is not known
+        if (lvalues != assigns)
+            return null;
+
+        List<Value> values = new ArrayList<Value>();
+
+        for (int block = 0; block < blocks; block++)
+            if (loop.blocks[block])
+                run(code, graph.start(block), graph.end(block), assigned, values);
+
+        // the largest invariant expressions
+        List<Value> invariants = new ArrayList<Value>();
+
+        for (Value value : values) {
+            if (value.isLeaf() || !value.isHoistable())
+                continue;
+
+            boolean largest = true;
+
+            for (Value parent = value.parent; parent != null && largest; parent = parent.parent)
+                largest = !parent.isHoistable();
+
+            if (largest)
+                invariants.add(value);
+        }
+
+        // the multiplications of induction variables by constants, by
+        // variable and constant
+        Map<Long, List<Value>> multiplications = new LinkedHashMap<Long, List<Value>>();
+
+        for (Value value : values) {
+            if (value.opcode != Opcode.MULTIPLY)
+                continue;
+
+            Value variable = value.left.opcode == Opcode.RVALUE ? value.left : value.right;
+            Value constant = variable == value.left ? value.right : value.left;
+
+            if (variable.opcode != Opcode.RVALUE || constant.opcode != Opcode.PUSH)
+                continue;
+
+            int slot = code.operand(variable.start);
+
+            if (!assigned[slot] || !isInduction(code, slot, assignments[slot], increments))
+                continue;
+
+            long key = ((long) slot << 32) | (code.operand(constant.start) & 0xffffffffL);
+            multiplications.computeIfAbsent(key, k -> new ArrayList<Value>()).add(value);
+        }
+
+        for (Long key : new ArrayList<Long>(multiplications.keySet()))
+            if (REDUCTION_SAVES * multiplications.get(key).size() <= UPDATE_COSTS * assignments[(int) (key >> 32)])
+                multiplications.remove(key);
+
+        if (invariants.isEmpty() && multiplications.isEmpty())
+            return null;
+
+        // the code replaced at each instruction, up to where, and the variable
+        // whose rvalue replaces it, -1 when it is removed, and the updates that
+        // follow the assignments of the induction variables
+        int[] replaced = new int[code.size()];
+        int[] temporaries = new int[code.size()];
+        InstructionList preheader = code.emptyCopy();
+        List<List<int[]>> updates = new ArrayList<List<int[]>>();
+        Map<String, Integer> shared = new LinkedHashMap<String, Integer>();
+
+        for (int i = 0; i < code.size(); i++)
+            updates.add(null);
+
+        for (Value value : invariants) {
+            // the assignment of a variable of the preheader of an inner loop
+            // moves out as it is, when the loop assigns it nowhere else
+            if (value.parent == null && value.start > 0 && code.opcode(value.start - 1) == Opcode.LVALUE
+                    && code.operand(value.start - 1) >= first && assignments[code.operand(value.start - 1)] == 1
+                    && value.end < code.size() && code.opcode(value.end) == Opcode.ASSIGN) {
+                for (int i = value.start - 1; i <= value.end; i++)
+                    preheader.add(code.opcode(i), code.operand(i), code.line(i));
+
+                replaced[value.start - 1] = value.end + 1;
+                temporaries[value.start - 1] = -1;
+                this.hoisted++;
+                continue;
+            }
+
+            String key = key(code, value);
+            Integer temporary = shared.get(key);
+
+            if (temporary == null) {
+                temporary = code.addVariable("$" + variables, value.real);
+                variables++;
+                shared.put(key, temporary);
+
+                preheader.add(Opcode.LVALUE, temporary, code.line(value.start));
+                for (int i = value.start; i < value.end; i++)
+                    preheader.add(code.opcode(i), code.operand(i), code.line(i));
+                preheader.add(Opcode.ASSIGN, 0, code.line(value.start));
+            }
+
+            replaced[value.start] = value.end;
+            temporaries[value.start] = temporary;
+            this.hoisted++;
+        }
+
+        for (Map.Entry<Long, List<Value>> entry : multiplications.entrySet()) {
+            int slot = (int) (entry.getKey() >> 32);
+            int factor = (int) (long) entry.getKey();
+            int temporary = code.addVariable("$" + variables, false);
+            int line = code.line(entry.getValue().get(0).start);
+
+            variables++;
+
+            preheader.add(Opcode.LVALUE, temporary, line);
+            preheader.add(Opcode.RVALUE, slot, line);
+            preheader.add(Opcode.PUSH, factor, line);
+            preheader.add(Opcode.MULTIPLY, 0, line);
+            preheader.add(Opcode.ASSIGN, 0, line);
+
+            for (Value value : entry.getValue()) {
+                replaced[value.start] = value.end;
+                temporaries[value.start] = temporary;
+                this.reduced++;
+            }
+
+            // temporary = temporary + step * factor, after the assignment
+            for (Map.Entry<Integer, Integer> increment : increments.entrySet()) {
+                int i = increment.getKey();
+
+                if (code.operand(i) != slot)
+                    continue;
+
+                int after = i + 4;
+
+                if (updates.get(after) == null)
+                    updates.set(after, new ArrayList<int[]>());
+
+                updates.get(after).add(new int[] { Opcode.LVALUE, temporary });
+                updates.get(after).add(new int[] { Opcode.RVALUE, temporary });
+                updates.get(after).add(new int[] { Opcode.PUSH, increment.getValue() * factor });
+                updates.get(after).add(new int[] { Opcode.ADD, 0 });
+                updates.get(after).add(new int[] { Opcode.ASSIGN, 0 });
+            }
+        }
+
+        InstructionList out = code.emptyCopy();
+        int header = graph.start(loop.header);
+
+        for (int i = 0; i < code.size(); ) {
+            if (i == header)
+                for (int j = 0; j < preheader.size(); j++)
+                    out.add(preheader.opcode(j), preheader.operand(j), preheader.line(j));
+
+            if (replaced[i] > 0) {
+                if (temporaries[i] >= 0)
+                    out.add(Opcode.RVALUE, temporaries[i], code.line(i));
+
+                i = replaced[i];
+                continue;
+            }
+
+            out.add(code.opcode(i), code.operand(i), code.line(i));
+
+            if (updates.get(i) != null)
+                for (int[] update : updates.get(i))
+                    out.add(update[0], update[1], code.line(i));
+
+            i++;
+        }
+
+        return out;
+    }
+
+    // The constant that the assignment at an lvalue adds to its variable,
+    // lvalue i, rvalue i, push c, + or -, = or lvalue i, push c, rvalue i, +, =,
+    // null for another assignment
+    private static Integer step(InstructionList code, int i) {
+        int variable = code.operand(i);
+
+        if (code.opcode(i + 4) != Opcode.ASSIGN)
+            return null;
+
+        int operator = code.opcode(i + 3);
+
+        if (code.opcode(i + 1) == Opcode.RVALUE && code.operand(i + 1) == variable
+                && code.opcode(i + 2) == Opcode.PUSH) {
+            if (operator == Opcode.ADD)
+                return code.operand(i + 2);
+            if (operator == Opcode.SUBTRACT)
+                return -code.operand(i + 2);
+        }
+
+        if (code.opcode(i + 1) == Opcode.PUSH && code.opcode(i + 2) == Opcode.RVALUE
+                && code.operand(i + 2) == variable && operator == Opcode.ADD)
+            return code.operand(i + 1);
+
+        return null;
+    }
+
+    // whether every assignment of a variable in the loop adds a constant to it
+    private static boolean isInduction(InstructionList code, int variable, int assignments,
+                                       Map<Integer, Integer> increments) {
+        int count = 0;
+
+        for (int i : increments.keySet())
+            if (code.operand(i) == variable)
+                count++;
+
+        return count == assignments;
+    }
+
+    // Runs a block of the loop symbolically and adds the values it computes
+    // to the list. The stack starts empty, the values left by the blocks
+    // before are not known.
+    private static void run(InstructionList code, int start, int end, boolean[] assigned, List<Value> values) {
+        List<Value> stack = new ArrayList<Value>();
+
+        for (int i = start; i < end; i++) {
+            int opcode = code.opcode(i);
+            Value value;
+
+            switch (opcode) {
+                case Opcode.PUSH:
+                case Opcode.FLOAT_PUSH:
+                    value = new Value(i, i + 1, opcode, null, null, true, true, false, opcode == Opcode.FLOAT_PUSH);
+                    break;
+
+                case Opcode.RVALUE:
+                    value = new Value(i, i + 1, opcode, null, null, !assigned[code.operand(i)], true, false,
+                            code.isRealVariable(code.operand(i)));
+                    break;
+
+                case Opcode.LVALUE:
+                    value = new Value(i, i + 1, opcode, null, null, false, false, false, false);
+                    break;
+
+                case Opcode.ASSIGN:
+                    pop(stack);
+                    pop(stack);
+                    continue;
+
+                case Opcode.GOFALSE:
+                    pop(stack);
+                    continue;
+
+                case Opcode.INT_TO_FLOAT:
+                case Opcode.FLOAT_TO_INT: {
+                    // the conversion of the value on top, or of the one under it
+                    int depth = code.operand(i);
+                    Value above = depth == 0 ? null : pop(stack);
+                    Value converted = pop(stack);
+
+                    value = new Value(converted.start, i + 1, opcode, converted, null, converted.invariant,
+                            converted.contiguous && depth == 0, converted.fails, opcode == Opcode.INT_TO_FLOAT);
+                    values.add(value);
+                    stack.add(value);
+
+                    if (above != null)
+                        stack.add(above);
+                    continue;
+                }
+
+                default:
+                    if (!Opcode.isArithmetic(opcode) && !Opcode.isRelational(opcode))
+                        continue;
+
+                    Value right = pop(stack);
+                    Value left = pop(stack);
+
+                    // a division by a constant other than 0 cannot fail
+                    boolean fails = left.fails || right.fails;
+
+                    if (opcode == Opcode.DIVIDE || opcode == Opcode.REMAINDER)
+                        fails |= right.opcode != Opcode.PUSH || code.operand(right.start) == 0;
+
+                    value = new Value(left.start, i + 1, opcode, left, right, left.invariant && right.invariant,
+                            left.start >= 0 && right.start >= 0, fails,
+                            Opcode.isArithmetic(opcode) && Opcode.isFloat(opcode));
+            }
+
+            values.add(value);
+            stack.add(value);
+        }
+    }
+
+    // the value on top, or a value that was on the stack when the block
+    // started, from no instruction
+    private static Value pop(List<Value> stack) {
+        if (stack.isEmpty())
+            return new Value(-1, -1, -1, null, null, false, false, false, false);
+
+        return stack.remove(stack.size() - 1);
+    }
+
+    // the instructions of an expression, for sharing identical ones
+    private static String key(InstructionList code, Value value) {
+        StringBuilder key = new StringBuilder();
+
+        for (int i = value.start; i < value.end; i++)
+            key.append(code.opcode(i)).append(' ').append(code.operand(i)).append(';');
+
+        return key.toString();
+    }
+}
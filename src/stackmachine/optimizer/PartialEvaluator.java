@@ -0,0 +1,244 @@
+package stackmachine.optimizer;
+
+import java.util.Arrays;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.OperandStack;
+import stackmachine.ir.Program;
+
+// Partial evaluation: the program is executed at compile time, as far as its
+// values are known, and a residual program is emitted with the work that is
+// left. The language has no input and the variables start as 0, so all the
+// values are known and the work left is the output. Each print becomes an
+// assignment of the printed value, when the variable does not hold it yet in
+// the residual program, and the print. Loops run to their end, a program that
+// halts within the budget is reduced to pushes, assignments and prints, one
+// print for each one executed.
+//
+// The evaluation stops after a budget of steps, instructions executed, so that
+// a long or endless loop does not hang the compiler, and before an integer
+// division by zero, which must fail when the program runs. The residual
+// program then sets the variables and the stack to the state reached and jumps
+// into a copy of the original code, at the instruction where the evaluation
+// stopped. The code that can no longer be reached is removed and the peephole
+// optimizer cleans up the rest.
+public class PartialEvaluator {
+
+    public static final long DEFAULT_STEPS = 1_000_000;
+
+    // kinds of the values on the stack, the variable is the one of an lvalue
+    private static final int INT = 0;
+    private static final int FLOAT = 1;
+    private static final int VARIABLE = 2;
+
+    private final long budget;
+    private final PeepholeOptimizer peephole;
+    private long steps;
+    private boolean complete;
+
+    public PartialEvaluator() {
+        this(DEFAULT_STEPS);
+    }
+
+    public PartialEvaluator(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("the step budget cannot be negative");
+
+        this.budget = budget;
+        this.peephole = new PeepholeOptimizer();
+    }
+
+    // instructions executed at compile time by the last call to optimize
+    public long steps() {
+        return this.steps;
+    }
+
+    // whether the last program was evaluated to its end, its residual program
+    // is then straight line code
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    public Program optimize(Program program) {
+        int[] constants = program.getConstants();
+        int size = program.size();
+
+        int[] variables = new int[program.getVariables().length];
+
+        // values of the variables in the residual program so far
+        int[] assigned = new int[variables.length];
+
+        int[] stack = new int[64];
+        int[] kinds = new int[64];
+        int sp = 0;
+
+        InstructionList residual = new InstructionList(program.getVariables(), program.getRealVariables(), 16);
+        long steps = 0;
+        int pc = 0;
+
+        this.complete = false;
+
+        // runs until the program halts or the evaluation has to stop
+        evaluation:
+        while (true) {
+            // running off the end of the code halts the machine
+            if (pc == size) {
+                this.complete = true;
+                break;
+            }
+
+            int opcode = program.opcode(pc);
+            int operand = program.operand(pc);
+            int line = program.line(pc);
+
+            if (opcode == Opcode.LABEL) {
+                pc++;
+                continue;
+            }
+
+            if (steps == this.budget)
+                break;
+
+            if (sp + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                kinds = Arrays.copyOf(kinds, 2 * kinds.length);
+            }
+
+            switch (opcode) {
+                case Opcode.HALT:
+                    residual.add(Opcode.HALT, 0, line);
+                    this.complete = true;
+                    break evaluation;
+
+                case Opcode.PUSH:
+                case Opcode.FLOAT_PUSH:
+                    stack[sp] = constants[operand];
+                    kinds[sp++] = opcode == Opcode.FLOAT_PUSH ? FLOAT : INT;
+                    break;
+
+                case Opcode.RVALUE:
+                    stack[sp] = variables[operand];
+                    kinds[sp++] = program.isRealVariable(operand) ? FLOAT : INT;
+                    break;
+
+                case Opcode.LVALUE:
+                    stack[sp] = operand;
+                    kinds[sp++] = VARIABLE;
+                    break;
+
+                case Opcode.ASSIGN:
+                    sp -= 2;
+                    variables[stack[sp]] = stack[sp + 1];
+                    break;
+
+                case Opcode.PRINT:
+                case Opcode.FLOAT_PRINT:
+                    if (assigned[operand] != variables[operand]) {
+                        assign(residual, program, operand, variables[operand], line);
+                        assigned[operand] = variables[operand];
+                    }
+
+                    residual.add(opcode, operand, line);
+                    break;
+
+                case Opcode.INT_TO_FLOAT:
+                case Opcode.FLOAT_TO_INT: {
+                    int slot = sp - 1 - operand;
+                    stack[slot] = OperandStack.convert(opcode, stack[slot]);
+                    kinds[slot] = opcode == Opcode.INT_TO_FLOAT ? FLOAT : INT;
+                    break;
+                }
+
+                case Opcode.GOTO:
+                    steps++;
+                    pc = operand;
+                    continue;
+
+                case Opcode.GOFALSE:
+                    steps++;
+                    pc = stack[--sp] == 0 ? operand : pc + 1;
+                    continue;
+
+                default: {
+                    int operator = Opcode.intVersion(opcode);
+
+                    // the division fails when the program runs
+                    if ((operator == Opcode.DIVIDE || operator == Opcode.REMAINDER) && !Opcode.isFloat(opcode)
+                            && stack[sp - 1] == 0)
+                        break evaluation;
+
+                    sp--;
+                    stack[sp - 1] = OperandStack.evaluate(opcode, stack[sp - 1], stack[sp]);
+                    kinds[sp - 1] = Opcode.isArithmetic(opcode) && Opcode.isFloat(opcode) ? FLOAT : INT;
+                }
+            }
+
+            steps++;
+            pc++;
+        }
+
+        this.steps = steps;
+
+        if (!this.complete)
+            resume(residual, program, pc, variables, assigned, stack, kinds, sp);
+
+        return clean(residual);
+    }
+
+    // Ends the residual program with the state reached and a jump to the
+    // instruction where the evaluation stopped, in a copy of the program
+    private static void resume(InstructionList residual, Program program, int pc, int[] variables, int[] assigned,
+                               int[] stack, int[] kinds, int sp) {
+        InstructionList code = InstructionList.of(program);
+        int line = program.line(pc);
+
+        for (int v = 0; v < variables.length; v++)
+            if (assigned[v] != variables[v])
+                assign(residual, program, v, variables[v], line);
+
+        for (int i = 0; i < sp; i++) {
+            if (kinds[i] == VARIABLE)
+                residual.add(Opcode.LVALUE, stack[i], line);
+            else
+                residual.add(kinds[i] == FLOAT ? Opcode.FLOAT_PUSH : Opcode.PUSH, stack[i], line);
+        }
+
+        int label = code.labelCount();
+        residual.add(Opcode.GOTO, label, line);
+
+        for (int i = 0; i < code.size(); i++) {
+            if (i == pc)
+                residual.add(Opcode.LABEL, label, line);
+
+            residual.add(code.opcode(i), code.operand(i), code.line(i));
+        }
+    }
+
+    // lvalue x, push or fpush of the bits of a value, =
+    private static void assign(InstructionList residual, Program program, int variable, int bits, int line) {
+        residual.add(Opcode.LVALUE, variable, line);
+        residual.add(program.isRealVariable(variable) ? Opcode.FLOAT_PUSH : Opcode.PUSH, bits, line);
+        residual.add(Opcode.ASSIGN, 0, line);
+    }
+
+    // removes the code that cannot be reached and optimizes the rest, until
+    // nothing changes
+    private Program clean(InstructionList code) {
+        int size = -1;
+
+        while (size != code.size()) {
+            size = code.size();
+
+            ControlFlowGraph graph = ControlFlowGraph.of(code);
+            boolean[] reachable = graph.reachable();
+            boolean[] removed = new boolean[reachable.length];
+
+            for (int block = 0; block < reachable.length; block++)
+                removed[block] = !reachable[block];
+
+            code = InstructionList.of(this.peephole.optimize(graph.without(removed).toProgram()));
+        }
+
+        return code.toProgram();
+    }
+}
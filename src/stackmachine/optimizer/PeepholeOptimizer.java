@@ -0,0 +1,328 @@
+package stackmachine.optimizer;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import stackmachine.ir.Opcode;
+import stackmachine.ir.OperandStack;
+import stackmachine.ir.Program;
+
+// Peephole optimizer for the intermediate code. The instructions are copied one
+// by one to a new list, and after each copy the last few instructions of that
+// list, the window, are matched against these patterns:
+//
+//      push a   push b   op          ->  push (a op b)         constant folding
+//      push c   i2f                  ->  fpush c               constant folding
+//      push a   push b   i2f 1       ->  fpush a  push b       constant folding
+//      push c   gofalse L            ->  goto L or nothing     constant folding
+//      <        push 0   ==          ->  >=, and so on         constant folding
+//      lvalue x rvalue x =           ->  nothing               redundant code
+//      goto L   label L              ->  label L               redundant code
+//      goto L or halt, then anything up to the next label  ->  dropped      redundant code
+//
+// Jumps to a goto are then redirected to the final target, a goto to a halt
+// becomes a halt and jumps to one of several labels in a row all go to the
+// first of them (jump threading), and labels that no jump refers to are
+// removed. Folding keeps the types of the code: the operands of a float
+// operator are fpush instructions, f2i folds like i2f, and the second push of
+// i2f 1 may be any instruction that pushes a value without popping one. The passes are repeated until nothing changes, since each of them
+// can expose more work for the others.
+public class PeepholeOptimizer {
+
+    public enum Rule {
+        CONSTANT_FOLDING,
+        REDUNDANT_CODE,
+        JUMP_THREADING,
+        UNUSED_LABELS
+    }
+
+    private final Set<Rule> rules;
+    private int eliminated;
+
+    public PeepholeOptimizer() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    public PeepholeOptimizer(Set<Rule> rules) {
+        this.rules = EnumSet.noneOf(Rule.class);
+        this.rules.addAll(rules);
+    }
+
+    // instructions removed by the last call to optimize
+    public int eliminated() {
+        return this.eliminated;
+    }
+
+    public Program optimize(Program program) {
+        InstructionList code = InstructionList.of(program);
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            if (this.rules.contains(Rule.CONSTANT_FOLDING) || this.rules.contains(Rule.REDUNDANT_CODE)) {
+                InstructionList window = window(code);
+                changed = window.size() != code.size() || changed(window, code);
+                code = window;
+            }
+
+            if (this.rules.contains(Rule.JUMP_THREADING))
+                changed |= threadJumps(code);
+
+            if (this.rules.contains(Rule.UNUSED_LABELS)) {
+                InstructionList used = removeUnusedLabels(code);
+                changed |= used.size() != code.size();
+                code = used;
+            }
+        }
+
+        this.eliminated = program.size() - code.size();
+
+        return code.toProgram();
+    }
+
+    // window patterns
+
+    private InstructionList window(InstructionList code) {
+        boolean folding = this.rules.contains(Rule.CONSTANT_FOLDING);
+        boolean redundant = this.rules.contains(Rule.REDUNDANT_CODE);
+
+        InstructionList out = code.emptyCopy();
+        boolean unreachable = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            int opcode = code.opcode(i);
+
+            if (opcode == Opcode.LABEL)
+                unreachable = false;
+            else if (unreachable && redundant)
+                continue;
+
+            out.add(opcode, code.operand(i), code.line(i));
+
+            while ((folding && fold(out)) || (redundant && removeRedundant(out)))
+                ;
+
+            if (opcode == Opcode.GOTO || opcode == Opcode.HALT)
+                unreachable = true;
+        }
+
+        return out;
+    }
+
+    private static boolean fold(InstructionList out) {
+        int n = out.size();
+
+        // a negated int comparison, the inverse comparison, which is not
+        // the case of floats, where any comparison with NaN is false
+        if (n >= 3 && out.opcode(n - 1) == Opcode.EQUALS && out.opcode(n - 2) == Opcode.PUSH
+                && out.operand(n - 2) == 0 && Opcode.isRelational(out.opcode(n - 3))
+                && !Opcode.isFloat(out.opcode(n - 3))) {
+            out.set(n - 3, inverse(out.opcode(n - 3)), 0);
+            out.truncate(n - 2);
+            return true;
+        }
+
+        if (n >= 3 && (Opcode.isArithmetic(out.opcode(n - 1)) || Opcode.isRelational(out.opcode(n - 1)))) {
+            int opcode = out.opcode(n - 1);
+            int push = Opcode.isFloat(opcode) ? Opcode.FLOAT_PUSH : Opcode.PUSH;
+
+            if (out.opcode(n - 3) != push || out.opcode(n - 2) != push)
+                return false;
+
+            // an integer division by zero fails at run time, leave it there
+            if ((opcode == Opcode.DIVIDE || opcode == Opcode.REMAINDER) && out.operand(n - 2) == 0)
+                return false;
+
+            int value = OperandStack.evaluate(opcode, out.operand(n - 3), out.operand(n - 2));
+            int result = Opcode.isArithmetic(opcode) ? push : Opcode.PUSH;
+
+            int line = out.line(n - 3);
+            out.truncate(n - 3);
+            out.add(result, value, line);
+
+            return true;
+        }
+
+        if (n >= 2 && isConversion(out, n - 1, 0)
+                && out.opcode(n - 2) == (out.opcode(n - 1) == Opcode.INT_TO_FLOAT ? Opcode.PUSH : Opcode.FLOAT_PUSH)) {
+            int opcode = out.opcode(n - 1);
+            int value = OperandStack.convert(opcode, out.operand(n - 2));
+
+            int line = out.line(n - 2);
+            out.truncate(n - 2);
+            out.add(opcode == Opcode.INT_TO_FLOAT ? Opcode.FLOAT_PUSH : Opcode.PUSH, value, line);
+
+            return true;
+        }
+
+        // the value under the top is converted, the top is pushed by the instruction before
+        if (n >= 3 && isConversion(out, n - 1, 1) && out.opcode(n - 3) == Opcode.PUSH
+                && (Opcode.isPush(out.opcode(n - 2)) || out.opcode(n - 2) == Opcode.RVALUE)) {
+            int value = OperandStack.convert(Opcode.INT_TO_FLOAT, out.operand(n - 3));
+            int opcode = out.opcode(n - 2);
+            int operand = out.operand(n - 2);
+            int line = out.line(n - 2);
+
+            out.set(n - 3, Opcode.FLOAT_PUSH, value);
+            out.truncate(n - 2);
+            out.add(opcode, operand, line);
+
+            return true;
+        }
+
+        if (n >= 2 && out.opcode(n - 2) == Opcode.PUSH && out.opcode(n - 1) == Opcode.GOFALSE) {
+            int label = out.operand(n - 1);
+            int line = out.line(n - 2);
+            boolean jumps = out.operand(n - 2) == 0;
+            out.truncate(n - 2);
+
+            if (jumps)
+                out.add(Opcode.GOTO, label, line);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static int inverse(int relational) {
+        switch (relational) {
+            case Opcode.LESS_THAN:
+                return Opcode.GREATER_EQUALS;
+            case Opcode.LESS_EQUALS:
+                return Opcode.GREATER_THAN;
+            case Opcode.GREATER_THAN:
+                return Opcode.LESS_EQUALS;
+            case Opcode.GREATER_EQUALS:
+                return Opcode.LESS_THAN;
+            case Opcode.EQUALS:
+                return Opcode.NOT_EQUALS;
+            default:
+                return Opcode.EQUALS;
+        }
+    }
+
+    // whether an instruction is i2f or f2i of the value at a depth of the stack,
+    // f2i only converts the top
+    private static boolean isConversion(InstructionList out, int i, int depth) {
+        if (out.opcode(i) == Opcode.INT_TO_FLOAT)
+            return out.operand(i) == depth;
+
+        return out.opcode(i) == Opcode.FLOAT_TO_INT && depth == 0;
+    }
+
+    private static boolean removeRedundant(InstructionList out) {
+        int n = out.size();
+
+        if (n >= 3 && out.opcode(n - 3) == Opcode.LVALUE && out.opcode(n - 2) == Opcode.RVALUE
+                && out.opcode(n - 1) == Opcode.ASSIGN && out.operand(n - 3) == out.operand(n - 2)) {
+            out.truncate(n - 3);
+            return true;
+        }
+
+        if (n >= 2 && out.opcode(n - 2) == Opcode.GOTO && out.opcode(n - 1) == Opcode.LABEL
+                && out.operand(n - 2) == out.operand(n - 1)) {
+            int label = out.operand(n - 1);
+            int line = out.line(n - 1);
+            out.truncate(n - 2);
+            out.add(Opcode.LABEL, label, line);
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean changed(InstructionList a, InstructionList b) {
+        for (int i = 0; i < a.size(); i++)
+            if (a.opcode(i) != b.opcode(i) || a.operand(i) != b.operand(i))
+                return true;
+
+        return false;
+    }
+
+    // jump threading
+
+    private static boolean threadJumps(InstructionList code) {
+        int[] labels = labelPositions(code);
+        boolean changed = false;
+
+        for (int i = 0; i < code.size(); i++) {
+            int opcode = code.opcode(i);
+
+            if (!Opcode.isJump(opcode))
+                continue;
+
+            // follow the chain of gotos, at most once around each label
+            int label = code.operand(i);
+            int target = firstInstruction(code, labels[label]);
+
+            for (int hops = 0; opcode(code, target) == Opcode.GOTO && code.operand(target) != label && hops < labels.length; hops++) {
+                label = code.operand(target);
+                target = firstInstruction(code, labels[label]);
+            }
+
+            // of several labels in a row, jump to the first one
+            int first = labels[label];
+
+            while (first > 0 && code.opcode(first - 1) == Opcode.LABEL)
+                first--;
+
+            label = code.operand(first);
+
+            if (label != code.operand(i)) {
+                code.set(i, opcode, label);
+                changed = true;
+            }
+
+            if (opcode == Opcode.GOTO && opcode(code, target) == Opcode.HALT) {
+                code.set(i, Opcode.HALT, 0);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    // index of each label in the list
+    private static int[] labelPositions(InstructionList code) {
+        int[] labels = new int[code.labelCount()];
+
+        for (int i = 0; i < code.size(); i++)
+            if (code.opcode(i) == Opcode.LABEL)
+                labels[code.operand(i)] = i;
+
+        return labels;
+    }
+
+    // first instruction at or after i that is not a label
+    private static int firstInstruction(InstructionList code, int i) {
+        while (i < code.size() && code.opcode(i) == Opcode.LABEL)
+            i++;
+
+        return i;
+    }
+
+    // running off the end of the code halts the machine
+    private static int opcode(InstructionList code, int i) {
+        return i < code.size() ? code.opcode(i) : Opcode.HALT;
+    }
+
+    // unused labels
+
+    private static InstructionList removeUnusedLabels(InstructionList code) {
+        boolean[] used = new boolean[code.labelCount()];
+
+        for (int i = 0; i < code.size(); i++)
+            if (Opcode.isJump(code.opcode(i)))
+                used[code.operand(i)] = true;
+
+        InstructionList out = code.emptyCopy();
+
+        for (int i = 0; i < code.size(); i++)
+            if (code.opcode(i) != Opcode.LABEL || used[code.operand(i)])
+                out.add(code.opcode(i), code.operand(i), code.line(i));
+
+        return out;
+    }
+}
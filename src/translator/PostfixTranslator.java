@@ -4,7 +4,7 @@ import slu.compiler.IntegerNumber;
 import slu.compiler.LexicalAnalyzer;
 import slu.compiler.Token;
 
-import java.util.Stack;
+import stackmachine.ir.OperandStack;
 
 // Ariana Jansma
 // Infix to Postfix Translator
@@ -25,21 +25,21 @@ import java.util.Stack;
 public class PostfixTranslator implements IPostfixTranslator{
     private Token token;
     private LexicalAnalyzer lexicalAnalyzer;
-    private Stack<Integer> stack;
-    private String postfix;
+    private OperandStack stack;
+    private StringBuilder postfix;
 
     public PostfixTranslator(LexicalAnalyzer lex) {
         this.lexicalAnalyzer = lex;
         this.token = this.lexicalAnalyzer.getToken();
-        this.stack = new Stack<Integer>();
-        this.postfix = "";
+        this.stack = new OperandStack();
+        this.postfix = new StringBuilder();
     }
 
     // returns the postfix token
     public String translate() {
         // returns the postfix expression
         expression();
-        return this.postfix;
+        return this.postfix.toString();
     }
 
     // factor → ( expression ) |
@@ -53,8 +53,8 @@ public class PostfixTranslator implements IPostfixTranslator{
             // add integer to token
             IntegerNumber number = (IntegerNumber) this.token;
             // add integer to stack
-            this.postfix = this.postfix + " " + number.getValue() + " ";
-            this.stack.push(number.getValue());
+            this.postfix.append(' ').append(number.getValue()).append(' ');
+            this.stack.pushInt(number.getValue());
             match("int");
         } else {
             System.out.println("\nError at line " +
@@ -72,30 +72,30 @@ public class PostfixTranslator implements IPostfixTranslator{
             match("multiply");
             factor();
             // add to token
-            this.postfix = this.postfix + " * ";
+            this.postfix.append(" * ");
             // pop off stack and perform operation
-            int num1 = this.stack.pop();
-            int num2 = this.stack.pop();
-            this.stack.push(num2 * num1);
+            int num1 = this.stack.popInt();
+            int num2 = this.stack.popInt();
+            this.stack.pushInt(num2 * num1);
             moreFactors();
         } else if (this.token.getName().equals("divide")) {
             match("divide");
             factor();
-            this.postfix = this.postfix + " / ";
+            this.postfix.append(" / ");
             // pop off the stack
-            int num1 = this.stack.pop();
-            int num2 = this.stack.pop();
+            int num1 = this.stack.popInt();
+            int num2 = this.stack.popInt();
             int newNum = num2 / num1;
-            this.stack.push(newNum);
+            this.stack.pushInt(newNum);
             moreFactors();
         } else if (this.token.getName().equals("remainder")) {
             match("remainder");
             factor();
-            this.postfix = this.postfix + " % ";
+            this.postfix.append(" % ");
             // pop off the stack
-            int num1 = this.stack.pop();
-            int num2 = this.stack.pop();
-            this.stack.push(num2 % num1);
+            int num1 = this.stack.popInt();
+            int num2 = this.stack.popInt();
+            this.stack.pushInt(num2 % num1);
             moreFactors();
         }
     }
@@ -121,22 +121,22 @@ public class PostfixTranslator implements IPostfixTranslator{
             match("add");
             term();
             // add the + to the token
-            this.postfix = this.postfix + " + ";
+            this.postfix.append(" + ");
             // pop off the stack
-            int num1 = this.stack.pop();
-            int num2 = this.stack.pop();
+            int num1 = this.stack.popInt();
+            int num2 = this.stack.popInt();
             int newNum = num2 + num1;
-            this.stack.push(newNum);
+            this.stack.pushInt(newNum);
             moreTerms();
         } else if (this.token.getName().equals("subtract")) {
             match("subtract");
             term();
             // add - to the token
-            this.postfix = this.postfix + " - ";
+            this.postfix.append(" - ");
             // pop the two top numbers off the stack
-            int num1 = this.stack.pop();
-            int num2 = this.stack.pop();
-            this.stack.push(num2 - num1);
+            int num1 = this.stack.popInt();
+            int num2 = this.stack.popInt();
+            this.stack.pushInt(num2 - num1);
             moreTerms();
         }
     }
@@ -144,7 +144,7 @@ public class PostfixTranslator implements IPostfixTranslator{
     // return the expression value
     public int evaluate() {
         // returns the expression value
-        return this.stack.pop();
+        return this.stack.popInt();
     }
 
     // Java code for the grammar rules and the semantic actions
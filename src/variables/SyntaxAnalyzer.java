@@ -36,14 +36,14 @@ public class SyntaxAnalyzer implements ISyntaxAnalyzer {
     }
 
     public String symbolTable() {
-        String symbols = "";
+        StringBuilder symbols = new StringBuilder();
 
         Set<Map.Entry<String, DataType>> s = this.symbolTable.entrySet();
 
         for(Map.Entry<String, DataType> m : s)
-            symbols = symbols + "<'" + m.getKey() + "', " + m.getValue().toString() + "> \n";
+            symbols.append("<'").append(m.getKey()).append("', ").append(m.getValue().toString()).append("> \n");
 
-        return symbols;
+        return symbols.toString();
     }
 
     public void compile() {